@@ -0,0 +1,100 @@
+package com.upgrade.islandrsvsrv.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+/**
+ * Serialization of the Flux of dates returned by /campsite/availabilities, with the same encoder
+ * as the app and the object mapper Spring Boot configures for it (dates as ISO strings), either
+ * as a json array or as ndjson.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityEncodingBenchmark {
+
+  private static final ResolvableType LOCAL_DATE = ResolvableType.forClass(LocalDate.class);
+
+  @Param({"30", "365"})
+  private int days;
+
+  @Param({MediaType.APPLICATION_JSON_VALUE, CodecConfig.APPLICATION_NDJSON_VALUE})
+  private String mediaType;
+
+  private final DefaultDataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+  private ConfigurableApplicationContext context;
+
+  private Jackson2JsonEncoder encoder;
+
+  private MediaType contentType;
+
+  private List<LocalDate> dates;
+
+  @Setup
+  public void setUp() {
+    context = new SpringApplicationBuilder(JacksonAutoConfiguration.class)
+        .web(WebApplicationType.NONE)
+        .bannerMode(Banner.Mode.OFF)
+        .logStartupInfo(false)
+        .run();
+    encoder = CodecConfig.jsonEncoder(context.getBean(ObjectMapper.class));
+    contentType = MediaType.parseMediaType(mediaType);
+    dates = new ArrayList<>(days);
+    LocalDate start = LocalDate.of(2030, 1, 1);
+    for (int i = 0; i < days; i++) {
+      dates.add(start.plusDays(i));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  /**
+   * @return the number of bytes written, once the buffers are released
+   */
+  @Benchmark
+  public int encode() {
+    return encoder
+        .encode(Flux.fromIterable(dates), bufferFactory, LOCAL_DATE, contentType,
+            Collections.emptyMap())
+        .reduce(0, (bytes, buffer) -> {
+          int written = bytes + buffer.readableByteCount();
+          DataBufferUtils.release(buffer);
+          return written;
+        })
+        .block();
+  }
+}
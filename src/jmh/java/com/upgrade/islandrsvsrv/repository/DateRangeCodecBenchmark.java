@@ -0,0 +1,70 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding of the daterange column as the DAOs receive it, one row per operation. The replace /
+ * split / LocalDate.parse version the DAO used before {@link DateRangeCodec} is kept as a
+ * baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateRangeCodecBenchmark {
+
+  private static final int ROWS = 1024;
+
+  private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter
+      .ofPattern("yyyy-MM-dd");
+
+  private final String[] dateRanges = new String[ROWS];
+
+  @Setup
+  public void setUp() {
+    LocalDate start = LocalDate.of(2030, 1, 1);
+    for (int i = 0; i < ROWS; i++) {
+      LocalDate reservationStart = start.plusDays(i * 4L);
+      dateRanges[i] = "[" + reservationStart + "," + reservationStart.plusDays(3) + ")";
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void decode(Blackhole blackhole) {
+    for (String dateRange : dateRanges) {
+      blackhole.consume(DateRangeCodec.decode(dateRange));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void replaceSplitParse(Blackhole blackhole) {
+    for (String dateRange : dateRanges) {
+      String[] stringDates = dateRange
+          .replace("[", "")
+          .replace(")", "")
+          .split(",");
+      blackhole.consume(new DateInterval(
+          LocalDate.parse(stringDates[0], DATE_TIME_FORMATTER),
+          LocalDate.parse(stringDates[1], DATE_TIME_FORMATTER)));
+    }
+  }
+}
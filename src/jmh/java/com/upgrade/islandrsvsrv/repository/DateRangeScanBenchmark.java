@@ -0,0 +1,127 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import static java.util.stream.Collectors.toList;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * The reservation dates of a site read from Postgres, one row per operation, as getReservationDates
+ * does with {@link DateRangeCodec}, or mapped with the replace / split / LocalDate.parse chain
+ * and Optional stream the DAO had before. Like {@link FreeRangesBenchmark} it needs a database,
+ * island_bench by default, or the one in -Djdbc.url, filled with 100k back to back three-day
+ * reservations on the default site, all of them read by every operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DateRangeScanBenchmark {
+
+  private static final LocalDate START = LocalDate.of(2030, 1, 1);
+
+  private static final int ROWS = 100_000;
+
+  private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter
+      .ofPattern("yyyy-MM-dd");
+
+  private static final LocalDate END = START.plusDays((long) ROWS * Reservation.MAX_NIGHTS);
+
+  private SingleConnectionDataSource dataSource;
+
+  private JdbcTemplate jdbc;
+
+  private ReservationDAO reservationDAO;
+
+  @Setup
+  public void setUp() {
+    // without a logback config everything logs at debug, a line per query
+    ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+    dataSource = new SingleConnectionDataSource(
+        System.getProperty("jdbc.url", "jdbc:postgresql://localhost:5432/island_bench"),
+        System.getProperty("jdbc.username", "upgrade"),
+        System.getProperty("jdbc.password", "upgrade"), true);
+    Flyway.configure().dataSource(dataSource).load().migrate();
+    jdbc = new JdbcTemplate(dataSource);
+    jdbc.execute("TRUNCATE camping_reservation");
+    jdbc.execute("ALTER TABLE camping_reservation DISABLE TRIGGER USER");
+    try {
+      jdbc.update("INSERT INTO camping_reservation(site_id, user_name, user_email, "
+              + "reservation_dates) SELECT ?, 'name', 'email', daterange(?::date + d * ?, "
+              + "?::date + (d + 1) * ?) FROM generate_series(0, ? - 1) d",
+          Campsite.DEFAULT_ID, START, Reservation.MAX_NIGHTS, START, Reservation.MAX_NIGHTS,
+          ROWS);
+    } finally {
+      jdbc.execute("ALTER TABLE camping_reservation ENABLE TRIGGER USER");
+    }
+    jdbc.execute("ANALYZE camping_reservation");
+    reservationDAO = new ReservationDAO(jdbc, new SimpleMeterRegistry());
+  }
+
+  @TearDown
+  public void tearDown() {
+    jdbc.execute("TRUNCATE camping_reservation");
+    dataSource.destroy();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public List<DateInterval> decode() {
+    return reservationDAO.getReservationDates(Campsite.DEFAULT_ID, START, END);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public List<DateInterval> replaceSplitParse() {
+    return jdbc.query(ReservationDAO.GET_AVAILABILITIES_QUERY,
+        (rs, num) -> {
+          String dateRange = rs.getString(1);
+          if (dateRange == null || dateRange.equals("empty")) {
+            return Optional.<DateInterval>empty();
+          }
+          String[] stringDates = dateRange
+              .replace("[", "")
+              .replace(")", "")
+              .split(",");
+          return Optional.of(new DateInterval(
+              LocalDate.parse(stringDates[0], DATE_TIME_FORMATTER),
+              LocalDate.parse(stringDates[1], DATE_TIME_FORMATTER)));
+        },
+        Campsite.DEFAULT_ID,
+        Date.valueOf(START),
+        Date.valueOf(END),
+        Date.valueOf(END),
+        Date.valueOf(START.minusDays(Reservation.MAX_NIGHTS)))
+        .stream()
+        .flatMap(Optional::stream)
+        .collect(toList());
+  }
+}
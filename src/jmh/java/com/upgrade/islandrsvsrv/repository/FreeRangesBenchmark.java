@@ -0,0 +1,126 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.services.AvailabilityService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * The free ranges of a site, either computed here from its reservation dates like the service
+ * does, or computed by get_available_periods in Postgres. Unlike the other benchmarks this one
+ * needs a database, island_bench by default, or the one in -Djdbc.url. It is migrated and filled
+ * with ten years of three-day reservations on every site, back to back or a day apart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FreeRangesBenchmark {
+
+  private static final LocalDate START = LocalDate.of(2030, 1, 1);
+
+  private static final int SEEDED_DAYS = 3650;
+
+  private static final int RESERVATION_DAYS = 3;
+
+  private static final int SITES = 100;
+
+  @Param({"30", "365", "3650"})
+  private int windowDays;
+
+  /**
+   * Days left free between two reservations of a site: with none the window has a single gap at
+   * most, with one it has a gap per reservation.
+   */
+  @Param({"0", "1"})
+  private int gapDays;
+
+  private final AvailabilityService availabilityService =
+      new AvailabilityService(new SimpleMeterRegistry());
+
+  private SingleConnectionDataSource dataSource;
+
+  private ReservationDAO reservationDAO;
+
+  private DateInterval requestedInterval;
+
+  private long siteId;
+
+  @Setup
+  public void setUp() {
+    // without a logback config everything logs at debug, a line per query
+    ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+    dataSource = new SingleConnectionDataSource(
+        System.getProperty("jdbc.url", "jdbc:postgresql://localhost:5432/island_bench"),
+        System.getProperty("jdbc.username", "upgrade"),
+        System.getProperty("jdbc.password", "upgrade"), true);
+    Flyway.configure().dataSource(dataSource).load().migrate();
+    JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+    jdbc.execute("TRUNCATE camping_reservation");
+    jdbc.execute("ALTER TABLE camping_reservation DISABLE TRIGGER USER");
+    try {
+      jdbc.update("INSERT INTO campsite(id, name) SELECT s, 'site ' || s "
+          + "FROM generate_series(1, ?) s ON CONFLICT DO NOTHING", SITES);
+      jdbc.update("INSERT INTO camping_reservation(site_id, user_name, user_email, "
+              + "reservation_dates) SELECT s, 'name', 'email', daterange(?::date + d, "
+              + "?::date + d + ?) FROM generate_series(1, ?) s, generate_series(0, ?, ?) d",
+          START, START, RESERVATION_DAYS, SITES, SEEDED_DAYS, RESERVATION_DAYS + gapDays);
+    } finally {
+      jdbc.execute("ALTER TABLE camping_reservation ENABLE TRIGGER USER");
+    }
+    jdbc.execute("ANALYZE camping_reservation");
+
+    reservationDAO = new ReservationDAO(jdbc, new SimpleMeterRegistry());
+    LocalDate start = START.plusDays(1);
+    requestedInterval = new DateInterval(start, start.plusDays(windowDays));
+  }
+
+  @TearDown
+  public void tearDown() {
+    dataSource.destroy();
+  }
+
+  @Benchmark
+  public void reservationDatesThenGaps(Blackhole blackhole) {
+    List<DateInterval> reservationDates = reservationDAO.getReservationDates(nextSite(),
+        requestedInterval.getStart(), requestedInterval.getEnd());
+    for (DateInterval interval : availabilityService
+        .availableIntervals(requestedInterval, reservationDates)) {
+      blackhole.consume(interval);
+    }
+  }
+
+  @Benchmark
+  public List<DateInterval> availableIntervals() {
+    return reservationDAO.getAvailableIntervals(nextSite(), requestedInterval.getStart(),
+        requestedInterval.getEnd());
+  }
+
+  private long nextSite() {
+    siteId = siteId % SITES + 1;
+    return siteId;
+  }
+}
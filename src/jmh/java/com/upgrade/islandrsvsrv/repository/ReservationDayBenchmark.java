@@ -0,0 +1,134 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Booking and reading the reservation dates of a site, with the range scans of
+ * camping_reservation alone or with reservation_day kept by its trigger and read instead. Like
+ * the {@link FreeRangesBenchmark}, it needs a database, island_bench by default, or the one in
+ * -Djdbc.url. It is filled with a year of three-day reservations on every site, a day apart, and
+ * the bookings go in those free days and are cancelled right away.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReservationDayBenchmark {
+
+  private static final LocalDate START = LocalDate.of(2030, 1, 1);
+
+  private static final int SEEDED_DAYS = 365;
+
+  private static final int RESERVATION_DAYS = 3;
+
+  private static final int SITES = 100;
+
+  @Param({"false", "true"})
+  private boolean dayTable;
+
+  @Param({"30", "365"})
+  private int windowDays;
+
+  private SingleConnectionDataSource dataSource;
+
+  private ReservationDAO reservationDAO;
+
+  private long siteId;
+
+  private int gap;
+
+  @Setup
+  public void setUp() {
+    // without a logback config everything logs at debug, a line per query
+    ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+    dataSource = new SingleConnectionDataSource(
+        System.getProperty("jdbc.url", "jdbc:postgresql://localhost:5432/island_bench"),
+        System.getProperty("jdbc.username", "upgrade"),
+        System.getProperty("jdbc.password", "upgrade"), true);
+    Flyway.configure().dataSource(dataSource).load().migrate();
+    JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+    jdbc.queryForObject("SELECT disable_reservation_days()", Boolean.class);
+    jdbc.execute("TRUNCATE camping_reservation");
+    jdbc.execute("ALTER TABLE camping_reservation DISABLE TRIGGER USER");
+    try {
+      jdbc.update("INSERT INTO campsite(id, name) SELECT s, 'site ' || s "
+          + "FROM generate_series(1, ?) s ON CONFLICT DO NOTHING", SITES);
+      jdbc.update("INSERT INTO camping_reservation(site_id, user_name, user_email, "
+              + "reservation_dates) SELECT s, 'name', 'email', daterange(?::date + d, "
+              + "?::date + d + ?) FROM generate_series(1, ?) s, generate_series(0, ?, ?) d",
+          START, START, RESERVATION_DAYS, SITES, SEEDED_DAYS, RESERVATION_DAYS + 1);
+    } finally {
+      jdbc.execute("ALTER TABLE camping_reservation ENABLE TRIGGER USER");
+    }
+    reservationDAO = new ReservationDAO(jdbc, new SimpleMeterRegistry());
+    ReflectionTestUtils.setField(reservationDAO, "dayTable", dayTable);
+    //with the day table, fills it in and installs its trigger
+    reservationDAO.syncDayTable();
+    // vacuumed as autovacuum would have, the reads of the days can then skip the table
+    jdbc.execute("VACUUM ANALYZE camping_reservation");
+    jdbc.execute("VACUUM ANALYZE reservation_day");
+  }
+
+  @TearDown
+  public void tearDown() {
+    new JdbcTemplate(dataSource)
+        .queryForObject("SELECT disable_reservation_days()", Boolean.class);
+    dataSource.destroy();
+  }
+
+  @Benchmark
+  public Long bookThenCancel() {
+    LocalDate freeDay = START.plusDays(nextGap() * (RESERVATION_DAYS + 1) + RESERVATION_DAYS);
+    Long reservationId = reservationDAO.insertReservation(ReservationRequest.builder()
+        .siteId(nextSite())
+        .userName("name")
+        .userEmail("email")
+        .start(freeDay)
+        .end(freeDay.plusDays(1))
+        .build());
+    reservationDAO.deleteReservation(reservationId);
+    return reservationId;
+  }
+
+  @Benchmark
+  public List<DateInterval> reservationDates() {
+    LocalDate start = START.plusDays(1);
+    return reservationDAO.getReservationDates(nextSite(), start, start.plusDays(windowDays));
+  }
+
+  private long nextSite() {
+    siteId = siteId % SITES + 1;
+    return siteId;
+  }
+
+  private int nextGap() {
+    gap = (gap + 1) % (SEEDED_DAYS / (RESERVATION_DAYS + 1));
+    return gap;
+  }
+}
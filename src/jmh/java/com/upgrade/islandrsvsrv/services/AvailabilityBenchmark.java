@@ -0,0 +1,92 @@
+package com.upgrade.islandrsvsrv.services;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Availabilities over windows of different lengths, with more or less reservations in them. The
+ * reservations are either packed at the start of the window, which leaves a single gap, or spread
+ * evenly over it, which cuts the window into as many gaps as there are reservations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AvailabilityBenchmark {
+
+  private static final int RESERVATION_DAYS = 3;
+
+  @Param({"30", "365", "3650"})
+  private int windowDays;
+
+  /**
+   * Capped to what fits in the window, e.g. 10 three-day reservations for a 30 day window.
+   */
+  @Param({"0", "10", "100", "1000"})
+  private int occupiedIntervals;
+
+  @Param({"packed", "spread"})
+  private String fragmentation;
+
+  private final AvailabilityService availabilityService =
+      new AvailabilityService(new SimpleMeterRegistry());
+
+  private DateInterval requestedInterval;
+
+  private List<DateInterval> sortedOccupiedIntervals;
+
+  @Setup
+  public void setUp() {
+    LocalDate start = LocalDate.of(2030, 1, 1);
+    requestedInterval = new DateInterval(start, start.plusDays(windowDays));
+
+    int count = Math.min(occupiedIntervals, windowDays / RESERVATION_DAYS);
+    int spacing = "packed".equals(fragmentation) || count == 0
+        ? RESERVATION_DAYS : windowDays / count;
+    sortedOccupiedIntervals = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      LocalDate reservationStart = start.plusDays((long) i * spacing);
+      sortedOccupiedIntervals.add(
+          new DateInterval(reservationStart, reservationStart.plusDays(RESERVATION_DAYS)));
+    }
+  }
+
+  @Benchmark
+  public List<LocalDate> findAvailabilities() {
+    return availabilityService.findAvailabilities(requestedInterval, sortedOccupiedIntervals);
+  }
+
+  @Benchmark
+  public void availableDates(Blackhole blackhole) {
+    for (LocalDate date : availabilityService
+        .availableDates(requestedInterval, sortedOccupiedIntervals)) {
+      blackhole.consume(date);
+    }
+  }
+
+  @Benchmark
+  public void availableIntervals(Blackhole blackhole) {
+    for (DateInterval interval : availabilityService
+        .availableIntervals(requestedInterval, sortedOccupiedIntervals)) {
+      blackhole.consume(interval);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.upgrade.islandrsvsrv.services;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.repository.CampsiteDAO;
+import com.upgrade.islandrsvsrv.repository.ReservationDAO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * "Which sites are free for these dates" over an inventory where every site is booked about half
+ * of the time with three-day stays, for stays of a few days up to a couple of months.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SiteOccupancyIndexBenchmark {
+
+  private static final int HORIZON_DAYS = 366;
+
+  private static final int RESERVATION_DAYS = 3;
+
+  @Param({"100", "1000", "10000"})
+  private int sites;
+
+  @Param({"3", "60"})
+  private int stayDays;
+
+  private SiteOccupancyIndex siteOccupancyIndex;
+
+  private DateInterval requestedInterval;
+
+  @Setup
+  public void setUp() {
+    LocalDate today = LocalDate.now();
+    List<Campsite> campsites = new ArrayList<>(sites);
+    List<Reservation> reservations = new ArrayList<>();
+    Random random = new Random(42);
+    long reservationId = 0;
+    for (long siteId = 1; siteId <= sites; siteId++) {
+      campsites.add(Campsite.builder().id(siteId).name("site " + siteId).build());
+      for (int day = 0; day < HORIZON_DAYS; day += RESERVATION_DAYS) {
+        if (random.nextBoolean()) {
+          LocalDate start = today.plusDays(day);
+          reservations.add(Reservation.builder()
+              .id(++reservationId)
+              .siteId(siteId)
+              .dateInterval(new DateInterval(start, start.plusDays(RESERVATION_DAYS)))
+              .build());
+        }
+      }
+    }
+    siteOccupancyIndex = new SiteOccupancyIndex(
+        new ReservationDAO(null, new SimpleMeterRegistry()) {
+          @Override
+          public List<Reservation> getReservations(LocalDate start, LocalDate end) {
+            return reservations;
+          }
+        },
+        new CampsiteDAO(null) {
+          @Override
+          public List<Campsite> getCampsites() {
+            return campsites;
+          }
+        },
+        new AvailabilityChangeFeed(16), HORIZON_DAYS);
+    siteOccupancyIndex.start();
+    LocalDate start = today.plusDays(100);
+    requestedInterval = new DateInterval(start, start.plusDays(stayDays));
+  }
+
+  @TearDown
+  public void tearDown() {
+    siteOccupancyIndex.stop();
+  }
+
+  @Benchmark
+  public Optional<List<Long>> getFreeSites() {
+    return siteOccupancyIndex.getFreeSites(requestedInterval);
+  }
+}
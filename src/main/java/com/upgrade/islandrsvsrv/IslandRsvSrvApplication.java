@@ -2,8 +2,10 @@ package com.upgrade.islandrsvsrv;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class IslandRsvSrvApplication {
 
   public static void main(String[] args) {
@@ -0,0 +1,41 @@
+package com.upgrade.islandrsvsrv.config;
+
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_STREAM_JSON;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+
+/**
+ * Spring doesn't know about newline delimited json yet, so we teach the jackson encoder to write
+ * it the same way as application/stream+json: one element per line, flushed as soon as it's
+ * produced instead of collecting the whole Flux into an array first.
+ */
+@Configuration
+public class CodecConfig {
+
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  public static final MediaType APPLICATION_NDJSON = MediaType
+      .parseMediaType(APPLICATION_NDJSON_VALUE);
+
+  @Bean
+  @Order(Ordered.LOWEST_PRECEDENCE)
+  public CodecCustomizer ndjsonCodecCustomizer(ObjectMapper objectMapper) {
+    return configurer -> configurer.defaultCodecs().jackson2JsonEncoder(jsonEncoder(objectMapper));
+  }
+
+  static Jackson2JsonEncoder jsonEncoder(ObjectMapper objectMapper) {
+    Jackson2JsonEncoder encoder = new Jackson2JsonEncoder(objectMapper, APPLICATION_JSON,
+        new MediaType("application", "*+json"), APPLICATION_NDJSON);
+    encoder.setStreamingMediaTypes(List.of(APPLICATION_STREAM_JSON, APPLICATION_NDJSON));
+    return encoder;
+  }
+}
@@ -0,0 +1,33 @@
+package com.upgrade.islandrsvsrv.config;
+
+import static io.r2dbc.spi.ConnectionFactoryOptions.PASSWORD;
+import static io.r2dbc.spi.ConnectionFactoryOptions.USER;
+
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Only active with the r2dbc profile. The url is something like
+ * 'r2dbc:pool:postgresql://host:port/db?maxSize=20' so the connection pool comes from r2dbc-pool.
+ * Flyway still runs the migrations through the regular jdbc datasource.
+ */
+@Configuration
+@Profile("r2dbc")
+public class R2dbcConfig {
+
+  @Bean
+  public ConnectionFactory connectionFactory(@Value("${r2dbc.url}") String url,
+      @Value("${r2dbc.username}") String username,
+      @Value("${r2dbc.password:}") String password) {
+    return ConnectionFactories.get(ConnectionFactoryOptions.parse(url)
+        .mutate()
+        .option(USER, username)
+        .option(PASSWORD, password)
+        .build());
+  }
+}
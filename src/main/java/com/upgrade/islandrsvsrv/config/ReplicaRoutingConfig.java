@@ -0,0 +1,59 @@
+package com.upgrade.islandrsvsrv.config;
+
+import static java.util.stream.Collectors.toList;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Only active with the replica profile. The spring.datasource settings are the primary, where
+ * every write and the migrations go, and replica.urls lists the jdbc urls of its streaming
+ * replicas, which share the same credentials unless replica.username/password say otherwise.
+ */
+@Configuration
+@Profile("replica")
+public class ReplicaRoutingConfig {
+
+  @Bean
+  public ReplicaRoutingDataSource dataSource(DataSourceProperties properties,
+      @Value("${replica.urls}") String[] urls,
+      @Value("${replica.username:${spring.datasource.username:}}") String username,
+      @Value("${replica.password:${spring.datasource.password:}}") String password,
+      @Value("${replica.connection-timeout:PT1S}") Duration connectionTimeout,
+      @Value("${replica.check-interval:PT1S}") Duration checkInterval,
+      MeterRegistry meterRegistry) {
+    //the pools are not beans, their metrics have to be hooked up here
+    HikariDataSource primary = properties.initializeDataSourceBuilder()
+        .type(HikariDataSource.class)
+        .build();
+    primary.setPoolName("primary");
+    primary.setMetricRegistry(meterRegistry);
+    AtomicInteger replicaCount = new AtomicInteger();
+    List<DataSource> replicas = Arrays.stream(urls)
+        .map(url -> {
+          HikariDataSource replica = new HikariDataSource();
+          replica.setPoolName("replica-" + replicaCount.getAndIncrement());
+          replica.setMetricRegistry(meterRegistry);
+          replica.setDriverClassName(properties.determineDriverClassName());
+          replica.setJdbcUrl(url.trim());
+          replica.setUsername(username);
+          replica.setPassword(password);
+          replica.setReadOnly(true);
+          //don't hold the check of the replica for long when it is down
+          replica.setConnectionTimeout(connectionTimeout.toMillis());
+          return replica;
+        })
+        .collect(toList());
+    return new ReplicaRoutingDataSource(primary, replicas, checkInterval);
+  }
+}
@@ -0,0 +1,153 @@
+package com.upgrade.islandrsvsrv.config;
+
+import static java.util.stream.Collectors.toList;
+
+import com.upgrade.islandrsvsrv.repository.ReadRouting;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Sends the reads {@link ReadRouting} marks for a replica to one that has replayed the write of
+ * their consistency token, taking turns, and everything else to the primary. So does a read no
+ * replica can serve.
+ *
+ * <p>How far each replica got is checked every replica.check-interval, so a replica may look a
+ * bit further behind than it is but never ahead. One that can't be reached, or that is not in
+ * recovery anymore, is left out until the next check finds it streaming again. The checks have
+ * threads of their own, a replica per thread, so replicas that are down don't hold up each other
+ * or the scheduled jobs of the app.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements
+    DisposableBean {
+
+  private static final String PRIMARY = "primary";
+
+  private static final String REPLAYED_LSN = "SELECT pg_last_wal_replay_lsn()::text";
+
+  private static final long UNAVAILABLE = -1;
+
+  private final List<JdbcTemplate> replicas;
+
+  private final AtomicLongArray replayedLsns;
+
+  private final AtomicInteger nextReplica = new AtomicInteger();
+
+  private final Duration checkInterval;
+
+  private final ScheduledExecutorService checkScheduler;
+
+  private final ExecutorService checkExecutor;
+
+  public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas,
+      Duration checkInterval) {
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(PRIMARY, primary);
+    for (int i = 0; i < replicas.size(); i++) {
+      targets.put(i, replicas.get(i));
+    }
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+    this.replicas = replicas.stream().map(JdbcTemplate::new).collect(toList());
+    long[] unavailable = new long[replicas.size()];
+    Arrays.fill(unavailable, UNAVAILABLE);
+    replayedLsns = new AtomicLongArray(unavailable);
+    this.checkInterval = checkInterval;
+    checkScheduler = Executors.newSingleThreadScheduledExecutor(threadFactory("replica-check-"));
+    checkExecutor = Executors.newFixedThreadPool(Math.max(replicas.size(), 1),
+        threadFactory("replica-probe-"));
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    super.afterPropertiesSet();
+    checkReplicas();
+    checkScheduler.scheduleWithFixedDelay(this::checkReplicas, checkInterval.toMillis(),
+        checkInterval.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void destroy() {
+    checkScheduler.shutdownNow();
+    checkExecutor.shutdownNow();
+  }
+
+  /**
+   * Checks all the replicas at once, and returns when they all answered or timed out.
+   */
+  public void checkReplicas() {
+    CompletableFuture.allOf(IntStream.range(0, replicas.size())
+        .mapToObj(i -> CompletableFuture.runAsync(() -> checkReplica(i), checkExecutor))
+        .toArray(CompletableFuture[]::new))
+        .exceptionally(e -> {
+          log.warn("Could not check the replicas", e);
+          return null;
+        })
+        .join();
+  }
+
+  private void checkReplica(int i) {
+    long replayedLsn;
+    try {
+      String lsn = replicas.get(i).queryForObject(REPLAYED_LSN, String.class);
+      replayedLsn = lsn == null ? UNAVAILABLE : ReadRouting.parseLsn(lsn);
+    } catch (DataAccessException e) {
+      replayedLsn = UNAVAILABLE;
+    }
+    long previousLsn = replayedLsns.getAndSet(i, replayedLsn);
+    if (replayedLsn == UNAVAILABLE && previousLsn != UNAVAILABLE) {
+      log.warn("Replica {} is unavailable, its reads go to the primary", i);
+    } else if (replayedLsn != UNAVAILABLE && previousLsn == UNAVAILABLE) {
+      log.info("Replica {} is streaming, at {}", i, ReadRouting.formatLsn(replayedLsn));
+    }
+  }
+
+  /**
+   * @return the position the replica has replayed up to, as of the last check, or -1 if it can't
+   * serve reads
+   */
+  public long getReplayedLsn(int replica) {
+    return replayedLsns.get(replica);
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (!ReadRouting.isReplicaRead() || replicas.isEmpty()) {
+      return PRIMARY;
+    }
+    long minimumLsn = ReadRouting.minimumLsn();
+    int first = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+    for (int i = 0; i < replicas.size(); i++) {
+      int replica = (first + i) % replicas.size();
+      long replayedLsn = replayedLsns.get(replica);
+      if (replayedLsn != UNAVAILABLE && replayedLsn >= minimumLsn) {
+        return replica;
+      }
+    }
+    return PRIMARY;
+  }
+
+  private static CustomizableThreadFactory threadFactory(String threadNamePrefix) {
+    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+    threadFactory.setDaemon(true);
+    return threadFactory;
+  }
+}
@@ -0,0 +1,33 @@
+package com.upgrade.islandrsvsrv.controllers;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.upgrade.islandrsvsrv.services.AvailabilityCache;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposed as /actuator/availabilitycache, mostly to check how many db queries the cache saves.
+ */
+@Component
+@Endpoint(id = "availabilitycache")
+@ConditionalOnProperty(name = "island.availability.cache.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class AvailabilityCacheEndpoint {
+
+  private final AvailabilityCache availabilityCache;
+
+  @ReadOperation
+  public Map<String, Long> stats() {
+    CacheStats stats = availabilityCache.stats();
+    return Map.of(
+        "size", availabilityCache.size(),
+        "hits", stats.hitCount(),
+        "misses", stats.missCount(),
+        "evictions", stats.evictionCount(),
+        "invalidations", availabilityCache.invalidationCount());
+  }
+}
@@ -1,44 +1,160 @@
 package com.upgrade.islandrsvsrv.controllers;
 
+import static com.upgrade.islandrsvsrv.config.CodecConfig.APPLICATION_NDJSON_VALUE;
 import static com.upgrade.islandrsvsrv.validation.ReservationDateValidation.validateDates;
 import static java.time.LocalDate.now;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.MONTHS;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
 
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.services.AvailabilityChangeFeed;
+import com.upgrade.islandrsvsrv.services.CampsiteService;
 import com.upgrade.islandrsvsrv.services.ReservationService;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/campsite")
 @RequiredArgsConstructor
 public class CampsiteController {
 
+  public static final String APPLICATION_INTERVALS_JSON_VALUE =
+      "application/vnd.island.availability-intervals+json";
+
   private static final int DEFAULT_AVAILABILITY_WINDOW_MONTHS = 1;
 
+  private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+
   private final ReservationService reservationService;
 
-  @GetMapping("/availabilities")
+  private final AvailabilityChangeFeed availabilityChangeFeed;
+
+  private final CampsiteService campsiteService;
+
+  @GetMapping("/sites")
+  public Mono<List<Campsite>> getCampsites() {
+    return campsiteService.getCampsites();
+  }
+
+  /**
+   * The ids of the sites free for the whole [startDate,endDate) interval.
+   */
+  @GetMapping(value = "/sites/available", produces = {APPLICATION_JSON_VALUE,
+      APPLICATION_NDJSON_VALUE})
+  public Flux<Long> getAvailableCampsites(
+      @RequestParam("startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+      @RequestParam("endDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+    validateDates(startDate, endDate);
+    return campsiteService.getFreeCampsites(startDate, endDate)
+        .flatMapIterable(siteIds -> siteIds);
+  }
+
+  /**
+   * Availabilities of the given site, or of the default one without a site in the path. Returns a
+   * json array by default. Clients asking for application/x-ndjson get one date per line
+   * as they are computed, which keeps memory flat no matter how wide the requested window is.
+   */
+  @GetMapping(value = {"/availabilities", "/{siteId}/availabilities"},
+      produces = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
   public Flux<LocalDate> getAvailabilities(
+      @PathVariable(value = "siteId", required = false) Long siteId,
+      @RequestParam(value = "startDate", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+      @RequestParam(value = "endDate", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+
+    DateInterval requestedInterval = requestedInterval(startDate, endDate);
+    return campsiteId(siteId).flatMapMany(campsiteId -> reservationService
+        .getAvailabilities(campsiteId, requestedInterval.getStart(), requestedInterval.getEnd()));
+  }
+
+  /**
+   * Same availabilities, but as [start,end) intervals instead of one entry per free day. Asked for
+   * with ?format=intervals, or with the {@link #APPLICATION_INTERVALS_JSON_VALUE} accept header.
+   */
+  @GetMapping(value = {"/availabilities", "/{siteId}/availabilities"},
+      params = "format=intervals", produces = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+  public Flux<DateInterval> getAvailabilityIntervals(
+      @PathVariable(value = "siteId", required = false) Long siteId,
       @RequestParam(value = "startDate", required = false)
       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
       @RequestParam(value = "endDate", required = false)
       @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
 
+    DateInterval requestedInterval = requestedInterval(startDate, endDate);
+    return campsiteId(siteId).flatMapMany(campsiteId -> reservationService
+        .getAvailabilityIntervals(campsiteId, requestedInterval.getStart(),
+            requestedInterval.getEnd()));
+  }
+
+  @GetMapping(value = {"/availabilities", "/{siteId}/availabilities"},
+      produces = APPLICATION_INTERVALS_JSON_VALUE)
+  public Flux<DateInterval> getAvailabilityIntervalsByMediaType(
+      @PathVariable(value = "siteId", required = false) Long siteId,
+      @RequestParam(value = "startDate", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+      @RequestParam(value = "endDate", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+    return getAvailabilityIntervals(siteId, startDate, endDate);
+  }
+
+  /**
+   * Pushes the date ranges touched by every reservation change on the site, from any node, so
+   * clients don't have to poll the availabilities. A comment is sent right away, so the response
+   * starts without waiting for the first change, and then every now and then to keep idle
+   * connections open through proxies.
+   */
+  @GetMapping(value = {"/availabilities/changes", "/{siteId}/availabilities/changes"},
+      produces = TEXT_EVENT_STREAM_VALUE)
+  public Flux<ServerSentEvent<List<DateInterval>>> getAvailabilityChanges(
+      @PathVariable(value = "siteId", required = false) Long siteId) {
+    return campsiteId(siteId).flatMapMany(campsiteId -> Flux.merge(
+        availabilityChangeFeed.changes(campsiteId)
+            .map(changedDates -> ServerSentEvent.builder(changedDates)
+                .event("availability-changed")
+                .build()),
+        Flux.interval(Duration.ZERO, HEARTBEAT_INTERVAL)
+            .map(tick -> ServerSentEvent.<List<DateInterval>>builder()
+                .comment("heartbeat")
+                .build())));
+  }
+
+  /**
+   * @return the id of the site, or a 404 error if there is none, checked off the event loop
+   */
+  private Mono<Long> campsiteId(Long siteId) {
+    if (siteId == null) {
+      return Mono.just(Campsite.DEFAULT_ID);
+    }
+    return campsiteService.exists(siteId)
+        .flatMap(exists -> exists ? Mono.just(siteId) : Mono.error(new ResponseStatusException(
+            HttpStatus.NOT_FOUND, "There is no campsite " + siteId + ".")));
+  }
+
+  private DateInterval requestedInterval(LocalDate startDate, LocalDate endDate) {
     if (startDate == null || endDate == null) {
       LocalDate tomorrow = now().plus(1, DAYS);
       startDate = tomorrow;
       endDate = tomorrow.plus(DEFAULT_AVAILABILITY_WINDOW_MONTHS, MONTHS);
     }
     validateDates(startDate, endDate);
-
-    return reservationService.getAvailabilities(startDate, endDate);
+    return new DateInterval(startDate, endDate);
   }
 
 }
@@ -0,0 +1,76 @@
+package com.upgrade.islandrsvsrv.controllers;
+
+import com.upgrade.islandrsvsrv.repository.ReadRouting;
+import com.upgrade.islandrsvsrv.repository.ReservationDAO;
+import com.upgrade.islandrsvsrv.services.BlockingScheduler;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+/**
+ * Read-your-writes on top of the replicas. A successful write answers with the position of the
+ * primary in the X-Consistency-Token header, and a read that sends it back only goes to a replica
+ * that has replayed that far, or to the primary.
+ *
+ * <p>The position is read once the write has committed, the one of its own transaction would come
+ * before the commit, and like every db call on the {@link BlockingScheduler}.
+ */
+@Slf4j
+@Component
+@Profile("replica")
+@RequiredArgsConstructor
+public class ConsistencyTokenFilter implements WebFilter {
+
+  public static final String CONSISTENCY_TOKEN_HEADER = "X-Consistency-Token";
+
+  private final ReservationDAO reservationDAO;
+
+  private final BlockingScheduler blockingScheduler;
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    HttpMethod method = exchange.getRequest().getMethod();
+    if (method == HttpMethod.GET || method == HttpMethod.HEAD) {
+      String consistencyToken = exchange.getRequest().getHeaders()
+          .getFirst(CONSISTENCY_TOKEN_HEADER);
+      if (consistencyToken == null) {
+        return chain.filter(exchange);
+      }
+      try {
+        ReadRouting.parseLsn(consistencyToken);
+      } catch (IllegalArgumentException e) {
+        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+            "Invalid consistency token " + consistencyToken + "."));
+      }
+      return chain.filter(exchange)
+          .subscriberContext(Context.of(ReadRouting.CONSISTENCY_TOKEN, consistencyToken));
+    }
+
+    ServerHttpResponse response = exchange.getResponse();
+    response.beforeCommit(() -> {
+      HttpStatus status = response.getStatusCode();
+      if (status != null && !status.is2xxSuccessful()) {
+        return Mono.empty();
+      }
+      //the write went through, better answer without a token than fail it
+      return blockingScheduler.call("consistency-token", reservationDAO::getCurrentLsn)
+          .doOnNext(lsn -> response.getHeaders().set(CONSISTENCY_TOKEN_HEADER, lsn))
+          .onErrorResume(e -> {
+            log.warn("Could not read the position of the primary for the consistency token", e);
+            return Mono.empty();
+          })
+          .then();
+    });
+    return chain.filter(exchange);
+  }
+}
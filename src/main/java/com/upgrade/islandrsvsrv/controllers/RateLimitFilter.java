@@ -0,0 +1,173 @@
+package com.upgrade.islandrsvsrv.controllers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Gives every client a token bucket for its reads (GET and HEAD) and another one for its writes,
+ * and answers 429 with a Retry-After once it is empty, before anything else of the request runs.
+ * A client is its island.rate-limit.api-key-header if it sends one of island.rate-limit.api-keys,
+ * or else its remote address: any other key would let a client get a fresh bucket on every request,
+ * and push the buckets of the others out of the cache.
+ *
+ * <p>The buckets sit in a cache bounded by island.rate-limit.maximum-clients. One left alone long
+ * enough to fill up again is dropped, it would be created full anyway.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "island.rate-limit.enabled", havingValue = "true")
+public class RateLimitFilter implements WebFilter {
+
+  private final String apiKeyHeader;
+
+  private final Set<String> apiKeys;
+
+  private final RateLimit readLimit;
+
+  private final RateLimit writeLimit;
+
+  private final LongSupplier nanoClock;
+
+  @Autowired
+  public RateLimitFilter(MeterRegistry meterRegistry,
+      @Value("${island.rate-limit.api-key-header:X-Api-Key}") String apiKeyHeader,
+      @Value("${island.rate-limit.api-keys:}") Set<String> apiKeys,
+      @Value("${island.rate-limit.maximum-clients:100000}") long maximumClients,
+      @Value("${island.rate-limit.read.capacity:50}") int readCapacity,
+      @Value("${island.rate-limit.read.refill-per-second:20}") double readRefillPerSecond,
+      @Value("${island.rate-limit.write.capacity:10}") int writeCapacity,
+      @Value("${island.rate-limit.write.refill-per-second:1}") double writeRefillPerSecond) {
+    this(meterRegistry, apiKeyHeader, apiKeys, maximumClients, readCapacity, readRefillPerSecond,
+        writeCapacity, writeRefillPerSecond, System::nanoTime);
+  }
+
+  RateLimitFilter(MeterRegistry meterRegistry, String apiKeyHeader, Set<String> apiKeys,
+      long maximumClients, int readCapacity, double readRefillPerSecond, int writeCapacity,
+      double writeRefillPerSecond, LongSupplier nanoClock) {
+    this.apiKeyHeader = apiKeyHeader;
+    this.apiKeys = Set.copyOf(apiKeys);
+    this.readLimit = new RateLimit(meterRegistry, "read", maximumClients, readCapacity,
+        readRefillPerSecond);
+    this.writeLimit = new RateLimit(meterRegistry, "write", maximumClients, writeCapacity,
+        writeRefillPerSecond);
+    this.nanoClock = nanoClock;
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    ServerHttpRequest request = exchange.getRequest();
+    //the scrapes and health checks are not the clients we are after
+    if (request.getPath().pathWithinApplication().value().startsWith("/actuator")) {
+      return chain.filter(exchange);
+    }
+    HttpMethod method = request.getMethod();
+    RateLimit limit = method == HttpMethod.GET || method == HttpMethod.HEAD
+        ? readLimit : writeLimit;
+    long waitNanos = limit.tryAcquire(clientOf(request), nanoClock.getAsLong());
+    if (waitNanos == 0) {
+      return chain.filter(exchange);
+    }
+    ServerHttpResponse response = exchange.getResponse();
+    response.setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+    //in whole seconds, rounded up
+    response.getHeaders().set(HttpHeaders.RETRY_AFTER,
+        Long.toString(TimeUnit.NANOSECONDS.toSeconds(waitNanos - 1) + 1));
+    return response.setComplete();
+  }
+
+  private String clientOf(ServerHttpRequest request) {
+    String apiKey = request.getHeaders().getFirst(apiKeyHeader);
+    if (apiKey != null && apiKeys.contains(apiKey)) {
+      return "key:" + apiKey;
+    }
+    InetSocketAddress remoteAddress = request.getRemoteAddress();
+    return remoteAddress == null ? "unknown" : "address:" + remoteAddress.getHostString();
+  }
+
+  private static class RateLimit {
+
+    private final int capacity;
+    private final long refillNanos;
+    private final Cache<String, TokenBucket> buckets;
+    private final Counter rejected;
+
+    RateLimit(MeterRegistry meterRegistry, String route, long maximumClients, int capacity,
+        double refillPerSecond) {
+      this.capacity = capacity;
+      this.refillNanos = (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond);
+      this.buckets = Caffeine.newBuilder()
+          .maximumSize(maximumClients)
+          .expireAfterAccess(Duration.ofNanos(refillNanos * capacity))
+          .build();
+      this.rejected = meterRegistry.counter("island.rate-limit.rejected", "route", route);
+    }
+
+    long tryAcquire(String client, long now) {
+      long waitNanos = buckets.get(client, key -> new TokenBucket(capacity, refillNanos, now))
+          .tryAcquire(now);
+      if (waitNanos > 0) {
+        rejected.increment();
+      }
+      return waitNanos;
+    }
+  }
+
+  /**
+   * Holds capacity tokens and gets one back every refillNanos. Rather than the tokens and the time
+   * of the last refill, it keeps the time at which it is full again, one CAS away from taking a
+   * token without a lock: a token missing is refillNanos more to wait.
+   */
+  static class TokenBucket {
+
+    private final long refillNanos;
+    private final long fullRefillNanos;
+    private final AtomicLong fullAt;
+
+    TokenBucket(int capacity, long refillNanos, long now) {
+      this.refillNanos = refillNanos;
+      this.fullRefillNanos = refillNanos * capacity;
+      this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @return 0 if a token was taken, or else how long until there is one again
+     */
+    long tryAcquire(long now) {
+      while (true) {
+        long current = fullAt.get();
+        //full already if it was due in the past, nanoTime values are only compared by difference
+        long next = (current - now < 0 ? now : current) + refillNanos;
+        long overdraft = next - now - fullRefillNanos;
+        if (overdraft > 0) {
+          return overdraft;
+        }
+        if (fullAt.compareAndSet(current, next)) {
+          return 0;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.upgrade.islandrsvsrv.controllers;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import java.time.LocalDate;
+import java.util.List;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A booking or a move turned down as its dates are taken. It is expected to happen a lot when
+ * everybody goes for the same dates, so it doesn't bother filling in a stack trace.
+ */
+public class ReservationConflictException extends ResponseStatusException {
+
+  /**
+   * Free stays to try instead, added to the error response by {@link ReservationErrorAttributes}.
+   */
+  private final List<DateInterval> alternatives;
+
+  public ReservationConflictException(LocalDate start, LocalDate end) {
+    this(start, end, List.of());
+  }
+
+  public ReservationConflictException(LocalDate start, LocalDate end,
+      List<DateInterval> alternatives) {
+    super(HttpStatus.BAD_REQUEST, "Sorry it looks like the island is booked " +
+        "somewhere between " + start + " and " + end + ". Please try another time slot.");
+    this.alternatives = alternatives;
+  }
+
+  public List<DateInterval> getAlternatives() {
+    return alternatives;
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
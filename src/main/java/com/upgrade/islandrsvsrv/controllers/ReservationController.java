@@ -1,73 +1,333 @@
 package com.upgrade.islandrsvsrv.controllers;
 
+import static com.upgrade.islandrsvsrv.config.CodecConfig.APPLICATION_NDJSON_VALUE;
 import static com.upgrade.islandrsvsrv.validation.ReservationDateValidation.validateDates;
 import static java.time.LocalDate.now;
+import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.MONTHS;
+import static java.util.stream.Collectors.toList;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.IdempotencyRecord;
+import com.upgrade.islandrsvsrv.domain.Reservation;
 import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation.Type;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
 import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import com.upgrade.islandrsvsrv.services.BlockingScheduler;
+import com.upgrade.islandrsvsrv.services.CampsiteService;
+import com.upgrade.islandrsvsrv.services.IdempotencyService;
 import com.upgrade.islandrsvsrv.services.ReservationService;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
 import lombok.RequiredArgsConstructor;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/reservation")
 @RequiredArgsConstructor
 public class ReservationController {
 
+  public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+  private static final int MAX_BATCH_SIZE = 1000;
+
+  private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+  private static final int MAX_PAGE_SIZE = 100;
+
+  private static final String CONFLICTS = "island.reservation.conflicts";
+
   private final ReservationService reservationService;
 
+  private final CampsiteService campsiteService;
+
+  private final IdempotencyService idempotencyService;
+
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * Every write runs there, checks included, rather than on the event loop.
+   */
+  private final BlockingScheduler blockingScheduler;
+
+  /**
+   * Has a booking conflict suggest the closest free stays of the same length, see
+   * {@link #withAlternatives}.
+   */
+  @Value("${island.reservation.conflict-alternatives.enabled:true}")
+  private boolean conflictAlternatives;
+
+  @GetMapping("/{id}")
+  public Mono<Reservation> getReservation(@PathVariable("id") long reservationId) {
+    return reservationService.getReservation(reservationId)
+        .map(reservation -> reservation.orElseThrow(() -> new ResponseStatusException(
+            HttpStatus.NOT_FOUND, "There is no reservation " + reservationId + ".")));
+  }
+
+  /**
+   * The reservations made with the email, by stay start, limit at a time. The next page is asked
+   * for with the start and id of the last reservation of the previous one. Returns a json array,
+   * or one reservation per line to clients asking for application/x-ndjson.
+   */
+  @GetMapping(params = "email", produces = {APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+  public Flux<Reservation> getReservationsOfUser(@RequestParam("email") String userEmail,
+      @RequestParam(value = "afterStart", required = false)
+      @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate afterStart,
+      @RequestParam(value = "afterId", required = false) Long afterId,
+      @RequestParam(value = "limit", defaultValue = "20") int limit) {
+    if ((afterStart == null) != (afterId == null)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "The afterStart and afterId of the last reservation of the previous page go together.");
+    }
+    if (limit < 1 || limit > MAX_PAGE_SIZE) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "The limit must be between 1 and " + MAX_PAGE_SIZE + ".");
+    }
+    return reservationService.getReservationsOfUser(userEmail, afterStart, afterId, limit);
+  }
+
+  /**
+   * Books the site given in the request, or the default one. Retries sent with the same
+   * Idempotency-Key get the outcome of the first request instead, see {@link #idempotent}, which
+   * doesn't keep the alternatives of a conflict.
+   */
   @PostMapping
-  public Long newReservation(@RequestBody ReservationRequest reservationRequest) {
+  public Mono<Long> newReservation(@RequestBody ReservationRequest reservationRequest,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
 
-    validateDates(reservationRequest.getStart(), reservationRequest.getEnd());
-    validateReservationDates(reservationRequest.getStart(), reservationRequest.getEnd());
-    try {
-      return reservationService.insertReservation(reservationRequest);
-    } catch (DataIntegrityViolationException e) {
+    return blockingScheduler.call("create", () -> idempotent(idempotencyKey,
+        "POST /reservation " + reservationRequest, () -> {
+          validateCampsite(reservationRequest.getSiteId());
+          validateDates(reservationRequest.getStart(), reservationRequest.getEnd());
+          validateReservationDates(reservationRequest.getStart(), reservationRequest.getEnd());
+          return outcome("create", reservationService.insertReservation(reservationRequest),
+              reservationRequest.getStart(), reservationRequest.getEnd());
+        }))
+        .onErrorResume(ReservationConflictException.class,
+            conflict -> conflictAlternatives ? withAlternatives(reservationRequest)
+                : Mono.error(conflict));
+  }
+
+  @PutMapping("/{id}")
+  public Mono<Void> modifyReservation(@RequestBody ReservationModification modification,
+      @PathVariable("id") long reservationId,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+    return blockingScheduler.call("modify", () -> idempotent(idempotencyKey,
+        "PUT /reservation/" + reservationId + " " + modification, () -> {
+          validateDates(modification.getStart(), modification.getEnd());
+          validateReservationDates(modification.getStart(), modification.getEnd());
+          outcome("modify", reservationService.updateReservation(reservationId, modification),
+              modification.getStart(), modification.getEnd());
+          return null;
+        })).then();
+  }
+
+  /**
+   * Creates, moves and cancels reservations in bulk. Every operation goes through the same checks
+   * as its single counterpart and gets its own result, in the same order: one invalid or
+   * conflicting operation doesn't prevent the others.
+   */
+  @PostMapping("/batch")
+  public Mono<List<ReservationOperationResult>> applyOperations(
+      @RequestBody List<ReservationOperation> operations) {
+    if (operations.size() > MAX_BATCH_SIZE) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-          "Sorry it looks like the island is booked " +
-              "somewhere between " + reservationRequest.getStart() + " and " + reservationRequest
-              .getEnd() +
-              ". Please try another time slot.");
+          "A batch can hold at most " + MAX_BATCH_SIZE + " operations.");
+    }
+    return blockingScheduler.call("batch", () -> validateAndApply(operations));
+  }
+
+  @DeleteMapping("/{id}")
+  public Mono<Void> deleteReservation(@PathVariable("id") Long reservationId) {
+    return blockingScheduler.call("cancel", () -> {
+      reservationService.deleteReservation(reservationId);
+      return null;
+    }).then();
+  }
 
+  private List<ReservationOperationResult> validateAndApply(
+      List<ReservationOperation> operations) {
+    ReservationOperationResult[] results = new ReservationOperationResult[operations.size()];
+    List<Integer> validIndexes = new ArrayList<>();
+    for (int i = 0; i < operations.size(); i++) {
+      ReservationOperation operation = operations.get(i);
+      try {
+        validateOperation(operation);
+        validIndexes.add(i);
+      } catch (ResponseStatusException e) {
+        results[i] = ReservationOperationResult.builder()
+            .status(Status.INVALID)
+            .id(operation.getId())
+            .message(e.getReason())
+            .build();
+      }
     }
+    if (!validIndexes.isEmpty()) {
+      List<ReservationOperationResult> applied = reservationService.applyOperations(
+          validIndexes.stream().map(operations::get).collect(toList()));
+      for (int i = 0; i < validIndexes.size(); i++) {
+        results[validIndexes.get(i)] = applied.get(i);
+      }
+      countConflicts("batch", applied.stream()
+          .filter(result -> result.getStatus() == Status.CONFLICT)
+          .count());
+    }
+    return Arrays.asList(results);
   }
 
-  @PutMapping("/{id}")
-  public void modifyReservation(@RequestBody ReservationModification modification,
-      @PathVariable("id") long reservationId) {
-    validateDates(modification.getStart(), modification.getEnd());
-    validateReservationDates(modification.getStart(), modification.getEnd());
-    try {
-      reservationService.updateReservation(reservationId, modification);
-    } catch (DataIntegrityViolationException e) {
+  /**
+   * Runs the write once per idempotency key: the first request with a key goes through and its
+   * outcome, the id or the error, is kept and replayed to the retries, which don't run anything.
+   * A write that fails without an outcome gives the key up so a retry can go ahead.
+   */
+  private Long idempotent(String idempotencyKey, String request, Supplier<Long> write) {
+    if (idempotencyKey == null) {
+      return write.get();
+    }
+    if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-          "Sorry it looks like the island is booked " +
-              "somewhere between " + modification.getStart() + " and " + modification.getEnd() +
-              ". Please try another time slot.");
+          "The Idempotency-Key must have 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters.");
+    }
+    String requestHash = DigestUtils.md5DigestAsHex(request.getBytes(StandardCharsets.UTF_8));
+    Optional<IdempotencyRecord> first = idempotencyService.claim(idempotencyKey, requestHash);
+    if (first.isPresent()) {
+      return replay(first.get(), requestHash);
+    }
+    Long result;
+    try {
+      result = write.get();
+    } catch (ResponseStatusException e) {
+      idempotencyService.complete(idempotencyKey, requestHash, e.getStatus().value(),
+          e.getReason());
+      throw e;
+    } catch (RuntimeException e) {
+      idempotencyService.release(idempotencyKey);
+      throw e;
+    }
+    idempotencyService.complete(idempotencyKey, requestHash, HttpStatus.OK.value(),
+        result == null ? null : result.toString());
+    return result;
+  }
 
+  private static Long replay(IdempotencyRecord first, String requestHash) {
+    if (!first.getRequestHash().equals(requestHash)) {
+      throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+          "The Idempotency-Key was already used for another request.");
+    }
+    if (!first.isCompleted()) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+          "A request with the same Idempotency-Key is still in progress.");
     }
+    if (first.getStatus() != HttpStatus.OK.value()) {
+      throw new ResponseStatusException(HttpStatus.valueOf(first.getStatus()), first.getBody());
+    }
+    return first.getBody() == null ? null : Long.valueOf(first.getBody());
   }
 
-  @DeleteMapping("/{id}")
-  public void deleteReservation(@PathVariable("id") Long reservationId) {
-    reservationService.deleteReservation(reservationId);
+  /**
+   * The conflict of the booking, with the free stays as long as the requested one starting the
+   * closest before and after it, among the ones that could be booked today. The availabilities
+   * are read as for GET /campsite/availabilities, and without them if that fails.
+   */
+  private Mono<Long> withAlternatives(ReservationRequest reservationRequest) {
+    LocalDate start = reservationRequest.getStart();
+    LocalDate end = reservationRequest.getEnd();
+    long nights = DAYS.between(start, end);
+    DateInterval searchInterval = new DateInterval(now().plus(1, DAYS),
+        now().plus(1, MONTHS).plus(nights, DAYS));
+    return reservationService.getNearestFreeStays(
+        Campsite.idOrDefault(reservationRequest.getSiteId()), new DateInterval(start, end),
+        searchInterval)
+        .onErrorReturn(List.of())
+        .flatMap(alternatives -> Mono.error(
+            new ReservationConflictException(start, end, alternatives)));
+  }
+
+  /**
+   * Maps the result of a single write to its response: the id of the reservation, or the error
+   * of a conflict or a missing reservation.
+   */
+  private Long outcome(String operation, ReservationOperationResult result, LocalDate start,
+      LocalDate end) {
+    switch (result.getStatus()) {
+      case CONFLICT:
+        countConflicts(operation, 1);
+        throw new ReservationConflictException(start, end);
+      case NOT_FOUND:
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, result.getMessage());
+      default:
+        return result.getId();
+    }
+  }
+
+  /**
+   * Counted under island.reservation.conflicts, whether the exclusion constraint or the conflict
+   * index turned them down.
+   */
+  private void countConflicts(String operation, long conflicts) {
+    if (conflicts > 0) {
+      meterRegistry.counter(CONFLICTS, "operation", operation).increment(conflicts);
+    }
+  }
+
+  private void validateOperation(ReservationOperation operation) {
+    if (operation.getType() == null) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "The operation type must be one of " + Arrays.toString(Type.values()) + ".");
+    }
+    if (operation.getType() != Type.CREATE && operation.getId() == null) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+          "The id of the reservation is required.");
+    }
+    if (operation.getType() == Type.CREATE) {
+      validateCampsite(operation.getSiteId());
+    }
+    if (operation.getType() != Type.CANCEL) {
+      if (operation.getStart() == null || operation.getEnd() == null) {
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+            "The start and end dates are required.");
+      }
+      validateDates(operation.getStart(), operation.getEnd());
+      validateReservationDates(operation.getStart(), operation.getEnd());
+    }
+  }
+
+  private void validateCampsite(Long siteId) {
+    if (siteId != null && !campsiteService.existsBlocking(siteId)) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+          "There is no campsite " + siteId + ".");
+    }
   }
 
   private void validateReservationDates(LocalDate start, LocalDate end) {
-    if (Period.between(start, end).getDays() > 3) {
+    if (DAYS.between(start, end) > Reservation.MAX_NIGHTS) {
       throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
           "Reservation can only be for 3 days at a time.");
     } else if (start.isAfter(now().plus(1, MONTHS))) {
@@ -0,0 +1,24 @@
+package com.upgrade.islandrsvsrv.controllers;
+
+import java.util.Map;
+import org.springframework.boot.web.reactive.error.DefaultErrorAttributes;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+
+/**
+ * The usual error response, with the free stays to try instead when a booking conflicts.
+ */
+@Component
+public class ReservationErrorAttributes extends DefaultErrorAttributes {
+
+  @Override
+  public Map<String, Object> getErrorAttributes(ServerRequest request,
+      boolean includeStackTrace) {
+    Map<String, Object> errorAttributes = super.getErrorAttributes(request, includeStackTrace);
+    Throwable error = getError(request);
+    if (error instanceof ReservationConflictException) {
+      errorAttributes.put("alternatives", ((ReservationConflictException) error).getAlternatives());
+    }
+    return errorAttributes;
+  }
+}
@@ -0,0 +1,26 @@
+package com.upgrade.islandrsvsrv.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class Campsite {
+
+  /**
+   * The site the island had before there were several, where reservations go when no site is
+   * given.
+   */
+  public static final long DEFAULT_ID = 1;
+
+  private Long id;
+  private String name;
+
+  public static long idOrDefault(Long siteId) {
+    return siteId == null ? DEFAULT_ID : siteId;
+  }
+}
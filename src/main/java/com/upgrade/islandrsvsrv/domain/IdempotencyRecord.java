@@ -0,0 +1,33 @@
+package com.upgrade.islandrsvsrv.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * What the first request sent with an idempotency key got back, for its retries.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotencyRecord {
+
+  /**
+   * Tells a retry from another request reusing the key.
+   */
+  private String requestHash;
+  /**
+   * The http status of the response, null while the first request is in progress.
+   */
+  private Integer status;
+  /**
+   * The body of a successful response or the reason of an error.
+   */
+  private String body;
+
+  public boolean isCompleted() {
+    return status != null;
+  }
+}
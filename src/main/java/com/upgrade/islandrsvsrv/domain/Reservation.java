@@ -4,10 +4,18 @@ import lombok.Builder;
 import lombok.Data;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class Reservation {
 
+  /**
+   * The longest stay that can be booked, which also bounds how long before a period the stays
+   * overlapping it can start. The camping_reservation_max_nights check holds the stored ones to
+   * it too, see V1_13__reservation_max_nights.sql.
+   */
+  public static final int MAX_NIGHTS = 3;
+
   private Long id;
+  private Long siteId;
   private DateInterval dateInterval;
   private String userName;
   private String userEmail;
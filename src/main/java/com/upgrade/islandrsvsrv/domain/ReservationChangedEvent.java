@@ -0,0 +1,35 @@
+package com.upgrade.islandrsvsrv.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Published once a reservation write has gone through. A new reservation has no previous dates
+ * and a cancelled one has no new dates.
+ */
+@Data
+@Builder
+public class ReservationChangedEvent {
+
+  private Long reservationId;
+  @Builder.Default
+  private long siteId = Campsite.DEFAULT_ID;
+  private DateInterval previousDates;
+  private DateInterval newDates;
+
+  /**
+   * @return the previous and/or new dates, the ones whose availability changed
+   */
+  public List<DateInterval> getChangedDates() {
+    List<DateInterval> changedDates = new ArrayList<>(2);
+    if (previousDates != null) {
+      changedDates.add(previousDates);
+    }
+    if (newDates != null) {
+      changedDates.add(newDates);
+    }
+    return changedDates;
+  }
+}
@@ -0,0 +1,50 @@
+package com.upgrade.islandrsvsrv.domain.api;
+
+import java.time.LocalDate;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One item of a batch: a new reservation (no id), or a change of dates or a cancellation of an
+ * existing one (no user details).
+ */
+@Data
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+public class ReservationOperation {
+
+  public enum Type {
+    CREATE, MODIFY, CANCEL
+  }
+
+  private Type type;
+  private Long id;
+  /**
+   * Only used to create a reservation, the default campsite when not given.
+   */
+  private Long siteId;
+  private LocalDate start;
+  private LocalDate end;
+  private String userName;
+  private String userEmail;
+
+  public ReservationRequest toReservationRequest() {
+    return ReservationRequest.builder()
+        .siteId(siteId)
+        .userName(userName)
+        .userEmail(userEmail)
+        .start(start)
+        .end(end)
+        .build();
+  }
+
+  public ReservationModification toReservationModification() {
+    return ReservationModification.builder()
+        .start(start)
+        .end(end)
+        .build();
+  }
+}
@@ -0,0 +1,38 @@
+package com.upgrade.islandrsvsrv.domain.api;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(Include.NON_NULL)
+public class ReservationOperationResult {
+
+  public enum Status {
+    CREATED, MODIFIED, CANCELLED, CONFLICT, NOT_FOUND, INVALID
+  }
+
+  private Status status;
+  private Long id;
+  private Long siteId;
+  private String message;
+
+  /**
+   * The dates a modified or cancelled reservation had, only kept to publish the change.
+   */
+  @JsonIgnore
+  private DateInterval previousDates;
+
+  @JsonIgnore
+  public boolean isApplied() {
+    return status == Status.CREATED || status == Status.MODIFIED || status == Status.CANCELLED;
+  }
+}
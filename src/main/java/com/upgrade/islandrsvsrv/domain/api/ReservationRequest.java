@@ -8,11 +8,15 @@ import lombok.NoArgsConstructor;
 
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 public class ReservationRequest {
 
+  /**
+   * The campsite to book, the default one when not given.
+   */
+  private Long siteId;
   private LocalDate start;
   private LocalDate end;
   private String userName;
@@ -0,0 +1,47 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+@RequiredArgsConstructor
+@Service
+@Profile("!memory")
+public class CampsiteDAO implements CampsiteStore {
+
+  private static final String GET_CAMPSITES = "SELECT id, name FROM campsite ORDER BY id";
+
+  private static final String CAMPSITE_EXISTS =
+      "SELECT EXISTS (SELECT 1 FROM campsite WHERE id = ?)";
+
+  private static final String GET_FREE_CAMPSITES = "SELECT id FROM campsite WHERE NOT EXISTS" +
+      " (SELECT 1 FROM camping_reservation WHERE site_id = campsite.id" +
+      " AND reservation_dates && daterange(?, ?) AND lower(reservation_dates) < ?) ORDER BY id";
+
+  private final JdbcTemplate jdbc;
+
+  @Override
+  public List<Campsite> getCampsites() {
+    return jdbc.query(GET_CAMPSITES,
+        (rs, num) -> Campsite.builder()
+            .id(rs.getLong(1))
+            .name(rs.getString(2))
+            .build());
+  }
+
+  @Override
+  public List<Long> getFreeCampsites(LocalDate start, LocalDate end) {
+    return jdbc.queryForList(GET_FREE_CAMPSITES, Long.class, Date.valueOf(start),
+        Date.valueOf(end), Date.valueOf(end));
+  }
+
+  @Override
+  public boolean exists(long siteId) {
+    return Boolean.TRUE.equals(jdbc.queryForObject(CAMPSITE_EXISTS, Boolean.class, siteId));
+  }
+}
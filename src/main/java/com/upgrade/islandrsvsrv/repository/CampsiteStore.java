@@ -0,0 +1,21 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The campsites, in Postgres with the {@link CampsiteDAO} or in memory with the
+ * {@link InMemoryReservationStore}, which has the reservations to tell the free ones.
+ */
+public interface CampsiteStore {
+
+  List<Campsite> getCampsites();
+
+  /**
+   * @return the ids of the sites without any reservation overlapping [start,end)
+   */
+  List<Long> getFreeCampsites(LocalDate start, LocalDate end);
+
+  boolean exists(long siteId);
+}
@@ -0,0 +1,89 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import java.time.LocalDate;
+
+/**
+ * There's no support in jdbc (nor r2dbc) for something like resultset.getDateRange(column), so the
+ * daterange comes back in its text form, e.g. '[2019-10-01,2019-10-04)'. This reads the bounds
+ * straight from the characters in one pass, without the temporary strings and arrays that
+ * replace/split/LocalDate.parse would create for every row.
+ */
+final class DateRangeCodec {
+
+  private static final String EMPTY = "empty";
+
+  // '[yyyy-MM-dd,yyyy-MM-dd)'
+  private static final int RANGE_LENGTH = 23;
+  private static final int LOWER_DATE = 1;
+  private static final int SEPARATOR = 11;
+  private static final int UPPER_DATE = 12;
+  private static final int UPPER_BOUND = 22;
+
+  private DateRangeCodec() {
+  }
+
+  /**
+   * @param dateRange daterange as postgres prints it. It always canonicalizes dateranges to an
+   *                  inclusive start and an exclusive end, but the other bound markers are
+   *                  handled as well.
+   * @return the [start,end) interval of the range, or null for the 'empty' range
+   * @throws IllegalArgumentException for unbounded ranges, which have no DateInterval
+   *                                  counterpart, or anything that isn't a daterange
+   */
+  static DateInterval decode(CharSequence dateRange) {
+    if (EMPTY.contentEquals(dateRange)) {
+      return null;
+    }
+    if (dateRange.length() != RANGE_LENGTH || dateRange.charAt(SEPARATOR) != ',') {
+      throw malformed(dateRange);
+    }
+    LocalDate start = date(dateRange, LOWER_DATE);
+    switch (dateRange.charAt(0)) {
+      case '[':
+        break;
+      case '(':
+        start = start.plusDays(1);
+        break;
+      default:
+        throw malformed(dateRange);
+    }
+    LocalDate end = date(dateRange, UPPER_DATE);
+    switch (dateRange.charAt(UPPER_BOUND)) {
+      case ')':
+        break;
+      case ']':
+        end = end.plusDays(1);
+        break;
+      default:
+        throw malformed(dateRange);
+    }
+    return new DateInterval(start, end);
+  }
+
+  private static LocalDate date(CharSequence dateRange, int offset) {
+    if (dateRange.charAt(offset + 4) != '-' || dateRange.charAt(offset + 7) != '-') {
+      throw malformed(dateRange);
+    }
+    return LocalDate.of(
+        number(dateRange, offset, 4),
+        number(dateRange, offset + 5, 2),
+        number(dateRange, offset + 8, 2));
+  }
+
+  private static int number(CharSequence dateRange, int offset, int digits) {
+    int number = 0;
+    for (int i = offset; i < offset + digits; i++) {
+      int digit = dateRange.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        throw malformed(dateRange);
+      }
+      number = number * 10 + digit;
+    }
+    return number;
+  }
+
+  private static IllegalArgumentException malformed(CharSequence dateRange) {
+    return new IllegalArgumentException("Not a bounded daterange: " + dateRange);
+  }
+}
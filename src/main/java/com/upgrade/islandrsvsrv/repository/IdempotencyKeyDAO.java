@@ -0,0 +1,69 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.IdempotencyRecord;
+import java.time.Duration;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+@RequiredArgsConstructor
+@Service
+@Profile("!memory")
+public class IdempotencyKeyDAO implements IdempotencyKeyStore {
+
+  private static final String CLAIM_KEY = "INSERT INTO idempotency_key(idempotency_key," +
+      " request_hash) VALUES (?, ?) ON CONFLICT (idempotency_key) DO UPDATE" +
+      " SET request_hash = excluded.request_hash, status = NULL, body = NULL, created_at = now()" +
+      " WHERE idempotency_key.created_at < now() - ? * interval '1 millisecond'" +
+      " OR (idempotency_key.status IS NULL" +
+      " AND idempotency_key.created_at < now() - ? * interval '1 millisecond')";
+
+  private static final String GET_KEY = "SELECT request_hash, status, body FROM idempotency_key" +
+      " WHERE idempotency_key = ?";
+
+  private static final String COMPLETE_KEY = "UPDATE idempotency_key SET status = ?, body = ?" +
+      " WHERE idempotency_key = ?";
+
+  private static final String RELEASE_KEY = "DELETE FROM idempotency_key" +
+      " WHERE idempotency_key = ? AND status IS NULL";
+
+  private static final String DELETE_EXPIRED_KEYS = "DELETE FROM idempotency_key" +
+      " WHERE created_at < now() - ? * interval '1 millisecond'";
+
+  private final JdbcTemplate jdbc;
+
+  @Override
+  public boolean claim(String key, String requestHash, Duration ttl, Duration lockTimeout) {
+    return jdbc.update(CLAIM_KEY, key, requestHash, ttl.toMillis(), lockTimeout.toMillis()) > 0;
+  }
+
+  @Override
+  public Optional<IdempotencyRecord> getRecord(String key) {
+    return jdbc.query(GET_KEY,
+        (rs, num) -> IdempotencyRecord.builder()
+            .requestHash(rs.getString(1))
+            .status((Integer) rs.getObject(2))
+            .body(rs.getString(3))
+            .build(),
+        key)
+        .stream()
+        .findFirst();
+  }
+
+  @Override
+  public void complete(String key, int status, String body) {
+    jdbc.update(COMPLETE_KEY, status, body, key);
+  }
+
+  @Override
+  public void release(String key) {
+    jdbc.update(RELEASE_KEY, key);
+  }
+
+  @Override
+  public int deleteExpired(Duration ttl) {
+    return jdbc.update(DELETE_EXPIRED_KEYS, ttl.toMillis());
+  }
+}
@@ -0,0 +1,34 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.IdempotencyRecord;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The idempotency keys, in Postgres with the {@link IdempotencyKeyDAO} so every node sees them,
+ * or in memory with the {@link InMemoryIdempotencyKeyStore}.
+ */
+public interface IdempotencyKeyStore {
+
+  /**
+   * Takes the key for a request, unless another request holds it: one that completed less than
+   * ttl ago or one still in progress for less than lockTimeout.
+   *
+   * @return true if the request got the key and can go ahead
+   */
+  boolean claim(String key, String requestHash, Duration ttl, Duration lockTimeout);
+
+  Optional<IdempotencyRecord> getRecord(String key);
+
+  void complete(String key, int status, String body);
+
+  /**
+   * Gives up the key of a request that didn't get to an outcome, so that a retry can go ahead.
+   */
+  void release(String key);
+
+  /**
+   * @return the number of keys deleted
+   */
+  int deleteExpired(Duration ttl);
+}
@@ -0,0 +1,72 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.IdempotencyRecord;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+/**
+ * The idempotency keys of the memory profile, only seen by this node. Every change of a key goes
+ * through a compute of the map, which makes the claims atomic like the upsert in Postgres.
+ */
+@Service
+@Profile("memory")
+public class InMemoryIdempotencyKeyStore implements IdempotencyKeyStore {
+
+  private final Map<String, StoredKey> keys = new ConcurrentHashMap<>();
+
+  @Override
+  public boolean claim(String key, String requestHash, Duration ttl, Duration lockTimeout) {
+    Instant now = Instant.now();
+    StoredKey claimed = new StoredKey(IdempotencyRecord.builder()
+        .requestHash(requestHash)
+        .build(), now);
+    return keys.compute(key, (k, held) -> held == null
+        || held.createdAt.isBefore(now.minus(ttl))
+        || (!held.record.isCompleted() && held.createdAt.isBefore(now.minus(lockTimeout)))
+        ? claimed : held) == claimed;
+  }
+
+  @Override
+  public Optional<IdempotencyRecord> getRecord(String key) {
+    return Optional.ofNullable(keys.get(key)).map(stored -> stored.record);
+  }
+
+  @Override
+  public void complete(String key, int status, String body) {
+    keys.computeIfPresent(key, (k, held) -> new StoredKey(IdempotencyRecord.builder()
+        .requestHash(held.record.getRequestHash())
+        .status(status)
+        .body(body)
+        .build(), held.createdAt));
+  }
+
+  @Override
+  public void release(String key) {
+    keys.computeIfPresent(key, (k, held) -> held.record.isCompleted() ? held : null);
+  }
+
+  @Override
+  public int deleteExpired(Duration ttl) {
+    Instant expiry = Instant.now().minus(ttl);
+    int[] deleted = new int[1];
+    keys.forEach((key, stored) -> {
+      if (stored.createdAt.isBefore(expiry) && keys.remove(key, stored)) {
+        deleted[0]++;
+      }
+    });
+    return deleted[0];
+  }
+
+  @AllArgsConstructor
+  private static class StoredKey {
+
+    private final IdempotencyRecord record;
+    private final Instant createdAt;
+  }
+}
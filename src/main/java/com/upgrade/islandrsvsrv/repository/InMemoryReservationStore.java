@@ -0,0 +1,463 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
+import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import com.upgrade.islandrsvsrv.services.AvailabilityChangeFeed;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.stereotype.Service;
+
+/**
+ * The reservations and campsites of the memory profile, gone with the app. Each site keeps its
+ * reservations sorted by arrival behind a read-write lock, and a write checks for an overlap and
+ * makes its change under the write lock, so the check of the exclusion constraint and the write
+ * are atomic as in Postgres. The sites are the ones of island.memory.campsites, numbered from 1.
+ *
+ * <p>A batch is applied one operation at a time, each one atomic but not the batch as a whole.
+ */
+@Service
+@Profile("memory")
+public class InMemoryReservationStore implements ReservationStore, CampsiteStore {
+
+  private final Map<Long, Site> sites = new TreeMap<>();
+
+  private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+
+  private final AtomicLong nextReservationId = new AtomicLong(1);
+
+  private final AvailabilityChangeFeed availabilityChangeFeed;
+
+  private final boolean feedEnabled;
+
+  public InMemoryReservationStore(
+      @Value("${island.memory.campsites:The island}") String[] campsiteNames,
+      AvailabilityChangeFeed availabilityChangeFeed,
+      @Value("${island.availability.feed.enabled:true}") boolean feedEnabled) {
+    for (int i = 0; i < campsiteNames.length; i++) {
+      long siteId = i + 1;
+      sites.put(siteId, new Site(Campsite.builder()
+          .id(siteId)
+          .name(campsiteNames[i].trim())
+          .build()));
+    }
+    this.availabilityChangeFeed = availabilityChangeFeed;
+    this.feedEnabled = feedEnabled;
+  }
+
+  @Override
+  public List<DateInterval> getReservationDates(long siteId, LocalDate start, LocalDate end) {
+    Site site = sites.get(siteId);
+    if (site == null) {
+      return new ArrayList<>();
+    }
+    return site.read(() -> {
+      List<DateInterval> reservationDates = new ArrayList<>();
+      site.overlapping(start, end, true)
+          .forEach(reservation -> reservationDates.add(reservation.getDateInterval()));
+      return reservationDates;
+    });
+  }
+
+  @Override
+  public List<DateInterval> getAvailableIntervals(long siteId, LocalDate start, LocalDate end) {
+    Site site = sites.get(siteId);
+    if (site == null) {
+      return gaps(start, end, List.of());
+    }
+    return site.read(() -> gaps(start, end, site.overlapping(start, end, false)));
+  }
+
+  @Override
+  public List<Reservation> getReservations(LocalDate start, LocalDate end) {
+    List<Reservation> overlapping = new ArrayList<>();
+    for (Site site : sites.values()) {
+      site.read(() -> {
+        site.overlapping(start, end, false).forEach(reservation -> overlapping.add(
+            Reservation.builder()
+                .id(reservation.getId())
+                .siteId(reservation.getSiteId())
+                .dateInterval(reservation.getDateInterval())
+                .build()));
+        return null;
+      });
+    }
+    return overlapping;
+  }
+
+  /**
+   * Goes through every reservation, there is no index by email in memory.
+   */
+  @Override
+  public void forEachReservationOfUser(String userEmail, LocalDate afterStart, Long afterId,
+      int limit, Consumer<Reservation> action) {
+    reservations.values().stream()
+        .filter(reservation -> userEmail.equals(reservation.getUserEmail()))
+        .filter(reservation -> afterStart == null ||
+            reservation.getDateInterval().getStart().isAfter(afterStart) ||
+            reservation.getDateInterval().getStart().equals(afterStart) &&
+                reservation.getId() > afterId)
+        .sorted(Comparator.comparing((Reservation reservation) ->
+            reservation.getDateInterval().getStart()).thenComparing(Reservation::getId))
+        .limit(limit)
+        .forEach(action);
+  }
+
+  @Override
+  public Long insertReservation(ReservationRequest reservation)
+      throws DataIntegrityViolationException {
+    long siteId = Campsite.idOrDefault(reservation.getSiteId());
+    Site site = sites.get(siteId);
+    if (site == null) {
+      throw new DataIntegrityViolationException("There is no campsite " + siteId + ".");
+    }
+    DateInterval dates = new DateInterval(reservation.getStart(), reservation.getEnd());
+    return site.write(() -> {
+      site.checkFree(dates);
+      long reservationId = nextReservationId.getAndIncrement();
+      Reservation inserted = Reservation.builder()
+          .id(reservationId)
+          .siteId(siteId)
+          .dateInterval(dates)
+          .userName(reservation.getUserName())
+          .userEmail(reservation.getUserEmail())
+          .build();
+      site.add(inserted);
+      reservations.put(reservationId, inserted);
+      return reservationId;
+    });
+  }
+
+  @Override
+  public Optional<Reservation> updateReservation(long reservationId,
+      ReservationModification modification) throws DataIntegrityViolationException {
+    DateInterval dates = new DateInterval(modification.getStart(), modification.getEnd());
+    return change(reservationId, (site, current) -> {
+      site.remove(current);
+      try {
+        site.checkFree(dates);
+      } catch (DataIntegrityViolationException e) {
+        site.add(current);
+        throw e;
+      }
+      Reservation updated = current.toBuilder()
+          .dateInterval(dates)
+          .build();
+      site.add(updated);
+      reservations.put(reservationId, updated);
+    });
+  }
+
+  @Override
+  public ReservationOperationResult insertReservationIfFree(ReservationRequest reservation) {
+    long siteId = Campsite.idOrDefault(reservation.getSiteId());
+    Site site = sites.get(siteId);
+    if (site == null) {
+      throw new DataIntegrityViolationException("There is no campsite " + siteId + ".");
+    }
+    DateInterval dates = new DateInterval(reservation.getStart(), reservation.getEnd());
+    return site.write(() -> {
+      if (!site.isFree(dates)) {
+        return conflict(null, dates);
+      }
+      long reservationId = nextReservationId.getAndIncrement();
+      Reservation inserted = Reservation.builder()
+          .id(reservationId)
+          .siteId(siteId)
+          .dateInterval(dates)
+          .userName(reservation.getUserName())
+          .userEmail(reservation.getUserEmail())
+          .build();
+      site.add(inserted);
+      reservations.put(reservationId, inserted);
+      return ReservationOperationResult.builder()
+          .status(Status.CREATED)
+          .id(reservationId)
+          .siteId(siteId)
+          .build();
+    });
+  }
+
+  @Override
+  public ReservationOperationResult updateReservationIfFree(long reservationId,
+      ReservationModification modification) {
+    DateInterval dates = new DateInterval(modification.getStart(), modification.getEnd());
+    Reservation found = reservations.get(reservationId);
+    if (found == null) {
+      return notFound(reservationId);
+    }
+    Site site = sites.get(found.getSiteId());
+    return site.write(() -> {
+      Reservation current = reservations.get(reservationId);
+      if (current == null) {
+        return notFound(reservationId);
+      }
+      site.remove(current);
+      if (!site.isFree(dates)) {
+        site.add(current);
+        return conflict(reservationId, dates);
+      }
+      Reservation updated = current.toBuilder()
+          .dateInterval(dates)
+          .build();
+      site.add(updated);
+      reservations.put(reservationId, updated);
+      return ReservationOperationResult.builder()
+          .status(Status.MODIFIED)
+          .id(reservationId)
+          .siteId(current.getSiteId())
+          .previousDates(current.getDateInterval())
+          .build();
+    });
+  }
+
+  @Override
+  public Optional<Reservation> deleteReservation(long reservationId) {
+    return change(reservationId, (site, current) -> {
+      site.remove(current);
+      reservations.remove(reservationId);
+    });
+  }
+
+  @Override
+  public List<ReservationOperationResult> applyOperations(List<ReservationOperation> operations) {
+    List<ReservationOperationResult> results = new ArrayList<>(operations.size());
+    for (ReservationOperation operation : operations) {
+      results.add(applyOperation(operation));
+    }
+    return results;
+  }
+
+  @Override
+  public Reservation getReservation(Long reservationId) {
+    Reservation reservation = reservations.get(reservationId);
+    if (reservation == null) {
+      throw new EmptyResultDataAccessException(1);
+    }
+    return reservation;
+  }
+
+  @Override
+  public List<Campsite> getCampsites() {
+    List<Campsite> campsites = new ArrayList<>(sites.size());
+    sites.values().forEach(site -> campsites.add(site.campsite));
+    return campsites;
+  }
+
+  @Override
+  public List<Long> getFreeCampsites(LocalDate start, LocalDate end) {
+    List<Long> freeSites = new ArrayList<>();
+    for (Site site : sites.values()) {
+      if (site.read(() -> site.overlapping(start, end, false).isEmpty())) {
+        freeSites.add(site.campsite.getId());
+      }
+    }
+    return freeSites;
+  }
+
+  @Override
+  public boolean exists(long siteId) {
+    return sites.containsKey(siteId);
+  }
+
+  /**
+   * Stands in for the trigger notifying the changes in Postgres: with a single node, the changes
+   * of the feed are the ones made here.
+   */
+  @EventListener
+  public void onReservationChanged(ReservationChangedEvent event) {
+    if (feedEnabled) {
+      availabilityChangeFeed.publish(event);
+    }
+  }
+
+  /**
+   * Runs the change on the reservation under the write lock of its site. The site of a
+   * reservation never changes, only whether it still exists has to be checked again once locked.
+   *
+   * @return the site and the dates the reservation had, or nothing if there is no such reservation
+   */
+  private Optional<Reservation> change(long reservationId, Change change) {
+    Reservation found = reservations.get(reservationId);
+    if (found == null) {
+      return Optional.empty();
+    }
+    Site site = sites.get(found.getSiteId());
+    return site.write(() -> {
+      Reservation current = reservations.get(reservationId);
+      if (current == null) {
+        return Optional.empty();
+      }
+      change.apply(site, current);
+      return Optional.of(Reservation.builder()
+          .id(reservationId)
+          .siteId(current.getSiteId())
+          .dateInterval(current.getDateInterval())
+          .build());
+    });
+  }
+
+  private static List<DateInterval> gaps(LocalDate start, LocalDate end,
+      Collection<Reservation> sortedOverlapping) {
+    List<DateInterval> gaps = new ArrayList<>();
+    LocalDate gapStart = start;
+    for (Reservation reservation : sortedOverlapping) {
+      DateInterval dates = reservation.getDateInterval();
+      if (gapStart.isBefore(dates.getStart())) {
+        gaps.add(new DateInterval(gapStart, dates.getStart()));
+      }
+      gapStart = dates.getEnd();
+    }
+    if (gapStart.isBefore(end)) {
+      gaps.add(new DateInterval(gapStart, end));
+    }
+    return gaps;
+  }
+
+  /**
+   * The IfFree writes report the conflicts, only a booking on a site that doesn't exist throws.
+   */
+  private ReservationOperationResult applyOperation(ReservationOperation operation) {
+    try {
+      switch (operation.getType()) {
+        case CREATE:
+          return insertReservationIfFree(operation.toReservationRequest());
+        case MODIFY:
+          return updateReservationIfFree(operation.getId(),
+              operation.toReservationModification());
+        case CANCEL:
+          return deleteReservation(operation.getId())
+              .map(reservation -> ReservationOperationResult.builder()
+                  .status(Status.CANCELLED)
+                  .id(operation.getId())
+                  .siteId(reservation.getSiteId())
+                  .previousDates(reservation.getDateInterval())
+                  .build())
+              .orElseGet(() -> notFound(operation.getId()));
+        default:
+          throw new IllegalArgumentException("Unknown operation " + operation.getType());
+      }
+    } catch (DataIntegrityViolationException e) {
+      return conflict(operation.getId(),
+          new DateInterval(operation.getStart(), operation.getEnd()));
+    }
+  }
+
+  private static ReservationOperationResult conflict(Long reservationId, DateInterval dates) {
+    return ReservationOperationResult.builder()
+        .status(Status.CONFLICT)
+        .id(reservationId)
+        .message("The island is already booked somewhere between " + dates.getStart() +
+            " and " + dates.getEnd() + ".")
+        .build();
+  }
+
+  private static ReservationOperationResult notFound(Long reservationId) {
+    return ReservationOperationResult.builder()
+        .status(Status.NOT_FOUND)
+        .id(reservationId)
+        .message("There is no reservation " + reservationId + ".")
+        .build();
+  }
+
+  private interface Change {
+
+    void apply(Site site, Reservation current);
+  }
+
+  /**
+   * The reservations of a site by arrival date, which is enough to find the overlaps as they
+   * never overlap each other.
+   */
+  private static class Site {
+
+    private final Campsite campsite;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<LocalDate, Reservation> reservationsByStart = new TreeMap<>();
+
+    Site(Campsite campsite) {
+      this.campsite = campsite;
+    }
+
+    <T> T read(Supplier<T> read) {
+      return locked(lock.readLock(), read);
+    }
+
+    <T> T write(Supplier<T> write) {
+      return locked(lock.writeLock(), write);
+    }
+
+    private static <T> T locked(Lock lock, Supplier<T> call) {
+      lock.lock();
+      try {
+        return call.get();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * @return the reservations overlapping [start,end), or [start,end] if endInclusive, in order
+     */
+    Collection<Reservation> overlapping(LocalDate start, LocalDate end, boolean endInclusive) {
+      List<Reservation> overlapping = new ArrayList<>();
+      if (endInclusive ? start.isAfter(end) : !start.isBefore(end)) {
+        return overlapping;
+      }
+      Map.Entry<LocalDate, Reservation> before = reservationsByStart.lowerEntry(start);
+      if (before != null && before.getValue().getDateInterval().getEnd().isAfter(start)) {
+        overlapping.add(before.getValue());
+      }
+      overlapping.addAll(reservationsByStart.subMap(start, true, end, endInclusive).values());
+      return overlapping;
+    }
+
+    /**
+     * Only the last reservation arriving before the end can overlap, the earlier ones leave
+     * before it arrives.
+     */
+    boolean isFree(DateInterval dates) {
+      Map.Entry<LocalDate, Reservation> last = reservationsByStart.lowerEntry(dates.getEnd());
+      return last == null || !last.getValue().getDateInterval().getEnd().isAfter(dates.getStart());
+    }
+
+    void checkFree(DateInterval dates) {
+      if (!isFree(dates)) {
+        throw new DataIntegrityViolationException("The site " + campsite.getId() +
+            " is already booked somewhere in " + dates + ".");
+      }
+    }
+
+    void add(Reservation reservation) {
+      reservationsByStart.put(reservation.getDateInterval().getStart(), reservation);
+    }
+
+    void remove(Reservation reservation) {
+      reservationsByStart.remove(reservation.getDateInterval().getStart());
+    }
+  }
+}
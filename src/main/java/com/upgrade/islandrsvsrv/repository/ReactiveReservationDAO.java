@@ -0,0 +1,53 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import java.time.LocalDate;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import org.reactivestreams.Publisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+/**
+ * The availability read of the {@link ReservationDAO} going through r2dbc, so nothing here ever
+ * blocks a netty event loop thread. The writes stay with the jdbc DAO, which checks the overlaps
+ * and publishes the changes. The daterange column is cast to text since the r2dbc driver has no
+ * codec for range types, which lets us reuse the same parsing as the jdbc DAO.
+ */
+@RequiredArgsConstructor
+@Service
+@Profile("r2dbc")
+public class ReactiveReservationDAO {
+
+  private static final String GET_AVAILABILITIES_QUERY =
+      "SELECT reservation_dates::text from camping_reservation where site_id = $1 and " +
+          "reservation_dates && daterange($2, $3, '[]') and lower(reservation_dates) <= $3" +
+          " and lower(reservation_dates) >= $4 ORDER BY reservation_dates";
+
+  private final ConnectionFactory connectionFactory;
+
+  public Flux<DateInterval> getReservationDates(long siteId, LocalDate start, LocalDate end) {
+    return withConnection(connection -> Flux
+        .from(connection.createStatement(GET_AVAILABILITIES_QUERY)
+            .bind(0, siteId)
+            .bind(1, start)
+            .bind(2, end)
+            .bind(3, start.minusDays(Reservation.MAX_NIGHTS))
+            .execute())
+        .flatMap(result -> result.map((row, metadata) -> row.get(0, String.class)))
+        .handle((dateRange, sink) -> {
+          DateInterval dates = DateRangeCodec.decode(dateRange);
+          if (dates != null) {
+            sink.next(dates);
+          }
+        }));
+  }
+
+  private <T> Flux<T> withConnection(Function<Connection, Publisher<T>> work) {
+    return Flux.usingWhen(connectionFactory.create(), work, Connection::close);
+  }
+}
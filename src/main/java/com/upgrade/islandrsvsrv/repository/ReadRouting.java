@@ -0,0 +1,104 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * What the current thread is about to read, for the routing datasource of the replica profile to
+ * pick a connection: the DAO marks the queries a replica can answer and the caller can ask for a
+ * replica that has replayed at least up to some write. Nothing changes without that profile.
+ *
+ * <p>Consistency tokens are the WAL position (LSN) of the primary after a write, in the
+ * usual 'X/Y' hex format of postgres.
+ */
+public final class ReadRouting {
+
+  /**
+   * The key of the consistency token in the reactor context of a request.
+   */
+  public static final String CONSISTENCY_TOKEN = "island.consistency-token";
+
+  private static final ThreadLocal<Boolean> REPLICA_READ = new ThreadLocal<>();
+
+  private static final ThreadLocal<Long> MINIMUM_LSN = new ThreadLocal<>();
+
+  private ReadRouting() {
+  }
+
+  /**
+   * Runs a query that may go to a replica.
+   */
+  public static <T> T onReplica(Supplier<T> query) {
+    Boolean previous = REPLICA_READ.get();
+    REPLICA_READ.set(Boolean.TRUE);
+    try {
+      return query.get();
+    } finally {
+      REPLICA_READ.set(previous);
+    }
+  }
+
+  /**
+   * Runs the reads so they only go to a replica that has replayed the write of the token, or to
+   * the primary if none has yet. A null token doesn't restrict anything.
+   *
+   * @throws IllegalArgumentException if the token is not an LSN
+   */
+  public static <T> T readingAfter(String consistencyToken, Callable<T> reads) throws Exception {
+    if (consistencyToken == null) {
+      return reads.call();
+    }
+    return readingAfter(parseLsn(consistencyToken), reads);
+  }
+
+  private static <T> T readingAfter(long minimumLsn, Callable<T> reads) throws Exception {
+    Long previous = MINIMUM_LSN.get();
+    MINIMUM_LSN.set(minimumLsn);
+    try {
+      return reads.call();
+    } finally {
+      MINIMUM_LSN.set(previous);
+    }
+  }
+
+  /**
+   * Runs the reads on the primary, for results that have to be at least as recent as the last
+   * write whatever its token.
+   */
+  public static <T> T onPrimary(Callable<T> reads) throws Exception {
+    return readingAfter(Long.MAX_VALUE, reads);
+  }
+
+  public static boolean isReplicaRead() {
+    return Boolean.TRUE.equals(REPLICA_READ.get());
+  }
+
+  /**
+   * @return the position a replica must have replayed to serve the current read, 0 if any will do
+   */
+  public static long minimumLsn() {
+    Long lsn = MINIMUM_LSN.get();
+    return lsn == null ? 0 : lsn;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the text is not an LSN
+   */
+  public static long parseLsn(String lsn) {
+    int slash = lsn.indexOf('/');
+    if (slash < 1 || slash > 8 || lsn.length() - slash - 1 < 1 || lsn.length() - slash - 1 > 8) {
+      throw new IllegalArgumentException("Invalid LSN " + lsn);
+    }
+    try {
+      return Long.parseUnsignedLong(lsn.substring(0, slash), 16) << 32 |
+          Long.parseUnsignedLong(lsn.substring(slash + 1), 16);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid LSN " + lsn, e);
+    }
+  }
+
+  public static String formatLsn(long lsn) {
+    return Long.toHexString(lsn >>> 32).toUpperCase() + "/" +
+        Long.toHexString(lsn & 0xFFFFFFFFL).toUpperCase();
+  }
+}
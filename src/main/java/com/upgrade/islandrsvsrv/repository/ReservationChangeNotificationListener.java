@@ -0,0 +1,134 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.services.AvailabilityChangeFeed;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+/**
+ * Holds one LISTEN connection per node on the channel the camping_reservation trigger notifies,
+ * and hands every change to the {@link AvailabilityChangeFeed}. The connection is opened outside
+ * of the pool since it is held for the whole life of the app.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "island.availability.feed.enabled", havingValue = "true",
+    matchIfMissing = true)
+@Profile("!memory")
+@RequiredArgsConstructor
+public class ReservationChangeNotificationListener {
+
+  private static final String CHANNEL = "reservation_changes";
+
+  private static final int POLL_TIMEOUT_MILLIS = 500;
+
+  private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+  private final DataSourceProperties dataSourceProperties;
+
+  private final AvailabilityChangeFeed availabilityChangeFeed;
+
+  private final ObjectMapper objectMapper;
+
+  private volatile boolean running;
+
+  private Thread listenerThread;
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    listenerThread = new Thread(this::listen, "reservation-change-listener");
+    listenerThread.setDaemon(true);
+    listenerThread.start();
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    listenerThread.join(RECONNECT_DELAY_MILLIS);
+  }
+
+  private void listen() {
+    while (running) {
+      try (Connection connection = DriverManager.getConnection(
+          dataSourceProperties.determineUrl(),
+          dataSourceProperties.determineUsername(),
+          dataSourceProperties.determinePassword())) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("LISTEN " + CHANNEL);
+        }
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        while (running) {
+          PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+          if (notifications != null) {
+            for (PGNotification notification : notifications) {
+              publish(notification.getParameter());
+            }
+          }
+        }
+      } catch (SQLException e) {
+        log.warn("Lost the reservation change notifications, reconnecting", e);
+        pause();
+      }
+    }
+  }
+
+  /**
+   * A change that can't be read, or that a subscriber fails on, is logged and skipped: it must not
+   * end the listener, or the feed and everything following it would quietly go stale.
+   */
+  void publish(String payload) {
+    try {
+      availabilityChangeFeed.publish(parseChange(payload));
+    } catch (IOException | RuntimeException e) {
+      log.error("Skipped the reservation change {}", payload, e);
+    }
+  }
+
+  /**
+   * @param payload json built by the notify_reservation_change trigger, with the 'id' and 'site'
+   *                and the 'previous' and/or 'current' dateranges of the reservation
+   */
+  ReservationChangedEvent parseChange(String payload) throws IOException {
+    JsonNode change = objectMapper.readTree(payload);
+    JsonNode reservationId = change.get("id");
+    JsonNode siteId = change.get("site");
+    return ReservationChangedEvent.builder()
+        .reservationId(reservationId == null ? null : reservationId.asLong())
+        .siteId(siteId == null ? Campsite.DEFAULT_ID : siteId.asLong())
+        .previousDates(dateRange(change.get("previous")))
+        .newDates(dateRange(change.get("current")))
+        .build();
+  }
+
+  private static DateInterval dateRange(JsonNode dateRange) {
+    return dateRange == null || dateRange.isNull() ? null
+        : DateRangeCodec.decode(dateRange.asText());
+  }
+
+  private void pause() {
+    try {
+      Thread.sleep(RECONNECT_DELAY_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      running = false;
+    }
+  }
+}
@@ -3,142 +3,629 @@ package com.upgrade.islandrsvsrv.repository;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toList;
 
+import com.upgrade.islandrsvsrv.domain.Campsite;
 import com.upgrade.islandrsvsrv.domain.DateInterval;
 import com.upgrade.islandrsvsrv.domain.Reservation;
 import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation.Type;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
 import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-
+/**
+ * The reservations in Postgres, where the exclusion constraints of the monthly partitions and the
+ * reservation_check_across_months trigger keep the reservations of a site from overlapping. The
+ * primary key of reservation_day does too while a trigger keeps it in step with every write, see
+ * {@link #syncDayTable}.
+ */
+@Slf4j
 @RequiredArgsConstructor
 @Service
-public class ReservationDAO {
+@Profile("!memory")
+public class ReservationDAO implements ReservationStore {
+
+  static final String GET_AVAILABILITIES_QUERY =
+      "SELECT reservation_dates from camping_reservation where site_id = ? and " +
+          "reservation_dates && daterange(?, ?, '[]') and lower(reservation_dates) <= ?" +
+          " and lower(reservation_dates) >= ? ORDER BY reservation_dates";
 
-  private static final String EMPTY_SEARCH_RESULT_STRING = "empty";
+  private static final String GET_RESERVATION_DAYS_QUERY = "SELECT day FROM reservation_day" +
+      " WHERE site_id = ? AND day BETWEEN ? AND ? ORDER BY day";
 
-  private static final String GET_AVAILABILITIES_QUERY =
-      "SELECT reservation_dates from camping_reservation where " +
-          "reservation_dates && daterange(?, ?, '[]') ORDER BY reservation_dates";
+  private static final String GET_AVAILABLE_PERIODS_QUERY =
+      "SELECT available_dates FROM get_available_periods(?, daterange(?, ?))";
 
-  private static final String INSERT_RESERVATION = "INSERT INTO camping_reservation(user_name, " +
-      "user_email, reservation_dates) VALUES (?, ?, daterange(?, ?));";
+  static final String GET_RESERVATIONS_QUERY = "SELECT id, site_id, reservation_dates" +
+      " FROM camping_reservation WHERE reservation_dates && daterange(?, ?)" +
+      " AND lower(reservation_dates) < ? AND lower(reservation_dates) >= ?";
+
+  private static final String INSERT_RESERVATION = "INSERT INTO camping_reservation(site_id, " +
+      "user_name, user_email, reservation_dates) VALUES (?, ?, ?, daterange(?, ?));";
 
   private static final String UPDATE_RESERVATION =
       "UPDATE camping_reservation SET reservation_dates = daterange(?, ?)" +
-          " WHERE id = ?;";
+          " FROM camping_reservation previous WHERE camping_reservation.id = previous.id" +
+          " AND camping_reservation.id = ? RETURNING previous.site_id, previous.reservation_dates;";
+
+  private static final String GET_RESERVATION = "SELECT id, user_name, user_email," +
+      " reservation_dates, site_id FROM camping_reservation WHERE id = ?";
+
+  private static final String GET_USER_RESERVATIONS = "SELECT id, user_name, user_email," +
+      " reservation_dates, site_id FROM camping_reservation WHERE user_email = ?" +
+      " ORDER BY lower(reservation_dates), id LIMIT ?";
+
+  private static final String GET_USER_RESERVATIONS_AFTER = "SELECT id, user_name, user_email," +
+      " reservation_dates, site_id FROM camping_reservation WHERE user_email = ?" +
+      " AND (lower(reservation_dates), id) > (?, ?) AND lower(reservation_dates) >= ?" +
+      " ORDER BY lower(reservation_dates), id LIMIT ?";
+
+  private static final String DELETE_RESERVATION = "DELETE FROM camping_reservation where id = ?" +
+      " RETURNING site_id, reservation_dates";
+
+  private static final String LOCK_RESERVATIONS = "SELECT id, site_id, reservation_dates" +
+      " FROM camping_reservation WHERE id = ANY (?) FOR UPDATE";
+
+  private static final String NEXT_RESERVATION_IDS =
+      "SELECT nextval(pg_get_serial_sequence('camping_reservation', 'id'))" +
+          " FROM generate_series(1, ?)";
+
+  private static final String INSERT_RESERVATION_IF_FREE = "INSERT INTO camping_reservation(id," +
+      " site_id, user_name, user_email, reservation_dates) VALUES (?, ?, ?, ?, daterange(?, ?))" +
+      " ON CONFLICT DO NOTHING";
+
+  private static final String UPDATE_RESERVATION_IF_FREE =
+      "UPDATE camping_reservation SET reservation_dates = daterange(?, ?) WHERE id = ?" +
+          " AND NOT EXISTS (SELECT 1 FROM camping_reservation other WHERE other.id <> ?" +
+          " AND other.site_id = camping_reservation.site_id" +
+          " AND other.reservation_dates && daterange(?, ?)" +
+          " AND lower(other.reservation_dates) < ? AND lower(other.reservation_dates) >= ?)";
+
+  private static final String INSERT_RESERVATION_UNLESS_BOOKED = "INSERT INTO" +
+      " camping_reservation(site_id, user_name, user_email, reservation_dates)" +
+      " SELECT ?, ?, ?, daterange(?, ?) WHERE NOT EXISTS (SELECT 1 FROM camping_reservation" +
+      " WHERE site_id = ? AND reservation_dates && daterange(?, ?)" +
+      " AND lower(reservation_dates) < ? AND lower(reservation_dates) >= ?)" +
+      " ON CONFLICT DO NOTHING RETURNING id";
+
+  private static final String UPDATE_RESERVATION_UNLESS_BOOKED = "WITH previous AS" +
+      " (SELECT id, site_id, reservation_dates FROM camping_reservation WHERE id = ? FOR UPDATE)," +
+      " moved AS (UPDATE camping_reservation SET reservation_dates = daterange(?, ?)" +
+      " FROM previous WHERE camping_reservation.id = previous.id" +
+      " AND NOT EXISTS (SELECT 1 FROM camping_reservation other WHERE other.id <> previous.id" +
+      " AND other.site_id = previous.site_id AND other.reservation_dates && daterange(?, ?)" +
+      " AND lower(other.reservation_dates) < ? AND lower(other.reservation_dates) >= ?)" +
+      " RETURNING camping_reservation.id)" +
+      " SELECT site_id, reservation_dates, EXISTS (SELECT 1 FROM moved) FROM previous";
+
+  private static final String DELETE_RESERVATION_BY_ID =
+      "DELETE FROM camping_reservation WHERE id = ?";
 
-  private static final String GET_RESERVATION = "SELECT user_name, user_email, reservation_dates" +
-      " FROM camping_reservation WHERE id = ?";
+  private static final String CURRENT_LSN = "SELECT pg_current_wal_lsn()::text";
 
-  private static final String DELETE_RESERVATION = "DELETE FROM camping_reservation where id = ?";
+  private static final String ENABLE_RESERVATION_DAYS = "SELECT enable_reservation_days()";
 
+  private static final String RESERVATION_DAYS_ENABLED = "SELECT reservation_days_enabled()";
 
-  private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter
-      .ofPattern("yyyy-MM-dd");
+  private static final String QUERY_TIMER = "island.db.query";
 
   private final JdbcTemplate jdbc;
 
-  public List<DateInterval> getReservationDates(LocalDate start, LocalDate end) {
-    return jdbc.query(GET_AVAILABILITIES_QUERY,
-        (rs, num) -> reservtionDatesFromResultSet(rs),
+  private final MeterRegistry meterRegistry;
+
+  @Value("${island.reservation.day-table.enabled:false}")
+  private boolean dayTable;
+
+  /**
+   * Has the trigger keep reservation_day from now on if the days are read, filling it in with the
+   * reservations so far the first time. Turning the flag off leaves the trigger, other nodes may
+   * still read the days: SELECT disable_reservation_days() drops it once none does.
+   */
+  @PostConstruct
+  public void syncDayTable() {
+    if (dayTable) {
+      if (Boolean.TRUE.equals(jdbc.queryForObject(ENABLE_RESERVATION_DAYS, Boolean.class))) {
+        log.info("Filled in reservation_day, every write keeps it up to date from now on");
+      }
+    } else if (Boolean.TRUE.equals(jdbc.queryForObject(RESERVATION_DAYS_ENABLED, Boolean.class))) {
+      log.warn("reservation_day is still kept up to date on every write but not read here,"
+          + " SELECT disable_reservation_days() once no node reads it");
+    }
+  }
+
+  /**
+   * Can be answered by a replica, see {@link ReadRouting}. With the day table the booked days
+   * come back as the stretches they make within [start,end], which is all the availabilities
+   * need.
+   */
+  @Override
+  public List<DateInterval> getReservationDates(long siteId, LocalDate start, LocalDate end) {
+    if (dayTable) {
+      return timed("getReservationDays", () -> ReadRouting.onReplica(
+          () -> getReservationDays(siteId, start, end)));
+    }
+    return timed("getReservationDates", () -> ReadRouting.onReplica(() -> {
+      List<DateInterval> reservationDates = new ArrayList<>();
+      jdbc.query(GET_AVAILABILITIES_QUERY,
+          rs -> {
+            DateInterval dates = DateRangeCodec.decode(rs.getString(1));
+            if (dates != null) {
+              reservationDates.add(dates);
+            }
+          },
+          siteId,
+          Date.valueOf(start),
+          Date.valueOf(end),
+          Date.valueOf(end),
+          earliestOverlappingStart(start));
+      return reservationDates;
+    }));
+  }
+
+  private List<DateInterval> getReservationDays(long siteId, LocalDate start, LocalDate end) {
+    List<DateInterval> reservationDates = new ArrayList<>();
+    LocalDate[] stretch = new LocalDate[2];
+    jdbc.query(GET_RESERVATION_DAYS_QUERY,
+        rs -> {
+          LocalDate day = rs.getDate(1).toLocalDate();
+          if (stretch[0] != null && !day.equals(stretch[1])) {
+            reservationDates.add(new DateInterval(stretch[0], stretch[1]));
+            stretch[0] = null;
+          }
+          if (stretch[0] == null) {
+            stretch[0] = day;
+          }
+          stretch[1] = day.plusDays(1);
+        },
+        siteId,
         Date.valueOf(start),
-        Date.valueOf(end))
-        .stream()
-        .flatMap(Optional::stream)
-        .collect(toList());
+        Date.valueOf(end));
+    if (stretch[0] != null) {
+      reservationDates.add(new DateInterval(stretch[0], stretch[1]));
+    }
+    return reservationDates;
+  }
+
+  /**
+   * Only the gaps come back from the db, see V1_7__available_periods.sql. Can be answered by a
+   * replica, see {@link ReadRouting}.
+   */
+  @Override
+  public List<DateInterval> getAvailableIntervals(long siteId, LocalDate start, LocalDate end) {
+    return timed("getAvailableIntervals", () -> ReadRouting.onReplica(() -> jdbc.query(
+        GET_AVAILABLE_PERIODS_QUERY,
+        (rs, num) -> DateRangeCodec.decode(rs.getString(1)),
+        siteId,
+        Date.valueOf(start),
+        Date.valueOf(end))));
+  }
+
+  @Override
+  public List<Reservation> getReservations(LocalDate start, LocalDate end) {
+    return timed("getReservations", () -> jdbc.query(GET_RESERVATIONS_QUERY,
+        (rs, num) -> Reservation.builder()
+            .id(rs.getLong(1))
+            .siteId(rs.getLong(2))
+            .dateInterval(DateRangeCodec.decode(rs.getString(3)))
+            .build(),
+        Date.valueOf(start),
+        Date.valueOf(end),
+        Date.valueOf(end),
+        earliestOverlappingStart(start)));
+  }
+
+  /**
+   * Seeks to the end of the previous page in camping_reservation_user_email_idx rather than
+   * skipping rows, so every page costs the same, and leaves out the partitions of the months
+   * before it. Can be answered by a replica, see {@link ReadRouting}.
+   */
+  @Override
+  public void forEachReservationOfUser(String userEmail, LocalDate afterStart, Long afterId,
+      int limit, Consumer<Reservation> action) {
+    RowCallbackHandler handler = rs -> action.accept(mapReservationFromResultSet(rs));
+    timed("getUserReservations", () -> ReadRouting.onReplica(() -> {
+      if (afterStart == null) {
+        jdbc.query(GET_USER_RESERVATIONS, handler, userEmail, limit);
+      } else {
+        jdbc.query(GET_USER_RESERVATIONS_AFTER, handler, userEmail, Date.valueOf(afterStart),
+            afterId, Date.valueOf(afterStart), limit);
+      }
+      return null;
+    }));
   }
 
+  @Override
   public Long insertReservation(ReservationRequest reservation)
       throws DataIntegrityViolationException {
     KeyHolder keyHolder = new GeneratedKeyHolder();
-    jdbc.update(connection -> {
+    timed("insertReservation", () -> jdbc.update(connection -> {
           PreparedStatement ps = connection.prepareStatement(INSERT_RESERVATION, new String[]{"id"});
-          ps.setString(1, reservation.getUserName());
-          ps.setString(2, reservation.getUserEmail());
-          ps.setDate(3, Date.valueOf(reservation.getStart()));
-          ps.setDate(4, Date.valueOf(reservation.getEnd()));
+          ps.setLong(1, Campsite.idOrDefault(reservation.getSiteId()));
+          ps.setString(2, reservation.getUserName());
+          ps.setString(3, reservation.getUserEmail());
+          ps.setDate(4, Date.valueOf(reservation.getStart()));
+          ps.setDate(5, Date.valueOf(reservation.getEnd()));
           return ps;
         },
-        keyHolder);
+        keyHolder));
     return requireNonNull(keyHolder.getKey()).longValue();
   }
 
-  public void updateReservation(long reservationId, ReservationModification modification) {
-    jdbc.update(connection -> {
-      PreparedStatement ps = connection.prepareStatement(UPDATE_RESERVATION);
-      ps.setDate(1, Date.valueOf(modification.getStart()));
-      ps.setDate(2, Date.valueOf(modification.getEnd()));
-      ps.setLong(3, reservationId);
-      return ps;
-    });
+  @Override
+  public Optional<Reservation> updateReservation(long reservationId,
+      ReservationModification modification) {
+    return timed("updateReservation", () -> jdbc.query(UPDATE_RESERVATION,
+        (rs, num) -> previousReservation(reservationId, rs),
+        Date.valueOf(modification.getStart()),
+        Date.valueOf(modification.getEnd()),
+        reservationId))
+        .stream()
+        .findFirst();
+  }
+
+  /**
+   * Checks the site is free in the same statement, and the exclusion constraints don't throw with
+   * ON CONFLICT DO NOTHING, so a taken stay is only an insert of no row. A stay crossing into
+   * another month booked concurrently can still get past the check, the
+   * reservation_check_across_months trigger then throws as for a plain insert.
+   */
+  @Override
+  public ReservationOperationResult insertReservationIfFree(ReservationRequest reservation) {
+    long siteId = Campsite.idOrDefault(reservation.getSiteId());
+    Date start = Date.valueOf(reservation.getStart());
+    Date end = Date.valueOf(reservation.getEnd());
+    return timed("insertReservationIfFree", () -> jdbc.query(INSERT_RESERVATION_UNLESS_BOOKED,
+        (rs, num) -> rs.getLong(1),
+        siteId, reservation.getUserName(), reservation.getUserEmail(), start, end,
+        siteId, start, end, end, earliestOverlappingStart(reservation.getStart())))
+        .stream()
+        .findFirst()
+        .map(reservationId -> ReservationOperationResult.builder()
+            .status(Status.CREATED)
+            .id(reservationId)
+            .siteId(siteId)
+            .build())
+        .orElseGet(() -> conflict(null, reservation.getStart(), reservation.getEnd()));
+  }
+
+  /**
+   * Locks the reservation, then only moves it when nothing else overlaps, so the statement tells
+   * a missing reservation from a taken stay. A stay written concurrently can still get past the
+   * check, the exclusion constraint then throws as for a plain update.
+   */
+  @Override
+  public ReservationOperationResult updateReservationIfFree(long reservationId,
+      ReservationModification modification) {
+    Date start = Date.valueOf(modification.getStart());
+    Date end = Date.valueOf(modification.getEnd());
+    return timed("updateReservationIfFree", () -> jdbc.query(UPDATE_RESERVATION_UNLESS_BOOKED,
+        (rs, num) -> rs.getBoolean(3)
+            ? ReservationOperationResult.builder()
+            .status(Status.MODIFIED)
+            .id(reservationId)
+            .siteId(rs.getLong(1))
+            .previousDates(DateRangeCodec.decode(rs.getString(2)))
+            .build()
+            : conflict(reservationId, modification.getStart(), modification.getEnd()),
+        reservationId, start, end, start, end, end,
+        earliestOverlappingStart(modification.getStart())))
+        .stream()
+        .findFirst()
+        .orElseGet(() -> notFound(reservationId));
+  }
+
+  @Override
+  public Optional<Reservation> deleteReservation(long reservationId) {
+    return timed("deleteReservation", () -> jdbc.query(DELETE_RESERVATION,
+        (rs, num) -> previousReservation(reservationId, rs),
+        reservationId))
+        .stream()
+        .findFirst();
+  }
+
+  /**
+   * Applies the operations in a single transaction, every run of consecutive operations of the
+   * same type going to the database as one jdbc batch. A conflicting operation doesn't fail the
+   * whole batch: new reservations are inserted with ON CONFLICT DO NOTHING and modifications only
+   * go through when nothing else overlaps, so an update count of 0 tells which ones were refused.
+   * <p>
+   * A reservation written concurrently by someone else can still slip in between the overlap
+   * check and the update of a modification. The transaction is rolled back in that case and the
+   * DataIntegrityViolationException thrown, as for a single update.
+   *
+   * @return the result of each operation, in the same order
+   */
+  @Override
+  @Transactional
+  public List<ReservationOperationResult> applyOperations(List<ReservationOperation> operations)
+      throws DataIntegrityViolationException {
+    Map<Long, Reservation> current = lockReservations(operations.stream()
+        .filter(operation -> operation.getType() != Type.CREATE)
+        .map(ReservationOperation::getId)
+        .distinct()
+        .toArray(Long[]::new));
+    Iterator<Long> newIds = nextReservationIds((int) operations.stream()
+        .filter(operation -> operation.getType() == Type.CREATE)
+        .count()).iterator();
+
+    List<ReservationOperationResult> results = new ArrayList<>(operations.size());
+    int runStart = 0;
+    while (runStart < operations.size()) {
+      Type type = operations.get(runStart).getType();
+      int runEnd = runStart + 1;
+      while (runEnd < operations.size() && operations.get(runEnd).getType() == type) {
+        runEnd++;
+      }
+      List<ReservationOperation> run = operations.subList(runStart, runEnd);
+      switch (type) {
+        case CREATE:
+          results.addAll(insertReservations(run, newIds));
+          break;
+        case MODIFY:
+          results.addAll(updateReservations(run, current));
+          break;
+        case CANCEL:
+          results.addAll(deleteReservations(run, current));
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown operation " + type);
+      }
+      runStart = runEnd;
+    }
+    return results;
+  }
+
+  private Map<Long, Reservation> lockReservations(Long[] reservationIds) {
+    Map<Long, Reservation> reservations = new HashMap<>();
+    if (reservationIds.length > 0) {
+      timed("lockReservations", () -> jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(LOCK_RESERVATIONS);
+            ps.setArray(1, connection.createArrayOf("bigint", reservationIds));
+            return ps;
+          },
+          rs -> {
+            reservations.put(rs.getLong(1), Reservation.builder()
+                .id(rs.getLong(1))
+                .siteId(rs.getLong(2))
+                .dateInterval(DateRangeCodec.decode(rs.getString(3)))
+                .build());
+          }));
+    }
+    return reservations;
+  }
+
+  private List<Long> nextReservationIds(int count) {
+    return count == 0 ? List.of() : timed("nextReservationIds",
+        () -> jdbc.queryForList(NEXT_RESERVATION_IDS, Long.class, count));
+  }
+
+  private List<ReservationOperationResult> insertReservations(List<ReservationOperation> run,
+      Iterator<Long> newIds) {
+    long[] ids = new long[run.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = newIds.next();
+    }
+    int[] updateCounts = timed("insertReservations",
+        () -> jdbc.batchUpdate(INSERT_RESERVATION_IF_FREE,
+        new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement ps, int i) throws SQLException {
+            ReservationOperation operation = run.get(i);
+            ps.setLong(1, ids[i]);
+            ps.setLong(2, Campsite.idOrDefault(operation.getSiteId()));
+            ps.setString(3, operation.getUserName());
+            ps.setString(4, operation.getUserEmail());
+            ps.setDate(5, Date.valueOf(operation.getStart()));
+            ps.setDate(6, Date.valueOf(operation.getEnd()));
+          }
+
+          @Override
+          public int getBatchSize() {
+            return ids.length;
+          }
+        }));
+    List<ReservationOperationResult> results = new ArrayList<>(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      results.add(updateCounts[i] > 0
+          ? ReservationOperationResult.builder()
+          .status(Status.CREATED)
+          .id(ids[i])
+          .siteId(Campsite.idOrDefault(run.get(i).getSiteId()))
+          .build()
+          : conflict(run.get(i)));
+    }
+    return results;
+  }
+
+  private List<ReservationOperationResult> updateReservations(List<ReservationOperation> run,
+      Map<Long, Reservation> current) {
+    List<ReservationOperation> existing = run.stream()
+        .filter(operation -> current.containsKey(operation.getId()))
+        .collect(toList());
+    int[] updateCounts = timed("updateReservations",
+        () -> jdbc.batchUpdate(UPDATE_RESERVATION_IF_FREE,
+        new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement ps, int i) throws SQLException {
+            ReservationOperation operation = existing.get(i);
+            ps.setDate(1, Date.valueOf(operation.getStart()));
+            ps.setDate(2, Date.valueOf(operation.getEnd()));
+            ps.setLong(3, operation.getId());
+            ps.setLong(4, operation.getId());
+            ps.setDate(5, Date.valueOf(operation.getStart()));
+            ps.setDate(6, Date.valueOf(operation.getEnd()));
+            ps.setDate(7, Date.valueOf(operation.getEnd()));
+            ps.setDate(8, earliestOverlappingStart(operation.getStart()));
+          }
+
+          @Override
+          public int getBatchSize() {
+            return existing.size();
+          }
+        }));
+    List<ReservationOperationResult> results = new ArrayList<>(run.size());
+    int updated = 0;
+    for (ReservationOperation operation : run) {
+      Reservation reservation = current.get(operation.getId());
+      if (reservation == null) {
+        results.add(notFound(operation));
+      } else if (updateCounts[updated++] > 0) {
+        results.add(ReservationOperationResult.builder()
+            .status(Status.MODIFIED)
+            .id(operation.getId())
+            .siteId(reservation.getSiteId())
+            .previousDates(reservation.getDateInterval())
+            .build());
+        //a later operation of the batch on the same reservation starts from the new dates
+        current.put(operation.getId(), reservation.toBuilder()
+            .dateInterval(new DateInterval(operation.getStart(), operation.getEnd()))
+            .build());
+      } else {
+        results.add(conflict(operation));
+      }
+    }
+    return results;
+  }
+
+  private List<ReservationOperationResult> deleteReservations(List<ReservationOperation> run,
+      Map<Long, Reservation> current) {
+    int[] updateCounts = timed("deleteReservations",
+        () -> jdbc.batchUpdate(DELETE_RESERVATION_BY_ID,
+        new BatchPreparedStatementSetter() {
+          @Override
+          public void setValues(PreparedStatement ps, int i) throws SQLException {
+            ps.setLong(1, run.get(i).getId());
+          }
+
+          @Override
+          public int getBatchSize() {
+            return run.size();
+          }
+        }));
+    List<ReservationOperationResult> results = new ArrayList<>(run.size());
+    for (int i = 0; i < run.size(); i++) {
+      Long reservationId = run.get(i).getId();
+      Reservation reservation = updateCounts[i] > 0 ? current.remove(reservationId) : null;
+      results.add(reservation != null
+          ? ReservationOperationResult.builder()
+          .status(Status.CANCELLED)
+          .id(reservationId)
+          .siteId(reservation.getSiteId())
+          .previousDates(reservation.getDateInterval())
+          .build()
+          : notFound(run.get(i)));
+    }
+    return results;
   }
 
-  public void deleteReservation(long reservationId) {
-    jdbc.update(connection -> {
-      PreparedStatement ps = connection.prepareStatement(DELETE_RESERVATION);
-      ps.setLong(1, reservationId);
-      return ps;
-    });
+  private static ReservationOperationResult conflict(ReservationOperation operation) {
+    return conflict(operation.getId(), operation.getStart(), operation.getEnd());
   }
 
+  private static ReservationOperationResult conflict(Long reservationId, LocalDate start,
+      LocalDate end) {
+    return ReservationOperationResult.builder()
+        .status(Status.CONFLICT)
+        .id(reservationId)
+        .message("The island is already booked somewhere between " + start + " and " + end + ".")
+        .build();
+  }
+
+  private static ReservationOperationResult notFound(ReservationOperation operation) {
+    return notFound(operation.getId());
+  }
+
+  private static ReservationOperationResult notFound(Long reservationId) {
+    return ReservationOperationResult.builder()
+        .status(Status.NOT_FOUND)
+        .id(reservationId)
+        .message("There is no reservation " + reservationId + ".")
+        .build();
+  }
+
+  /**
+   * Can be answered by a replica, see {@link ReadRouting}.
+   */
+  @Override
   public Reservation getReservation(Long reservationId) {
-    return jdbc.queryForObject(GET_RESERVATION,
+    return timed("getReservation", () -> ReadRouting.onReplica(() -> jdbc.queryForObject(
+        GET_RESERVATION,
         (rs, num) -> mapReservationFromResultSet(rs),
-        reservationId);
+        reservationId)));
   }
 
-  private Reservation mapReservationFromResultSet(ResultSet rs) throws SQLException {
-    return Reservation.builder()
-        .userName(rs.getString(1))
-        .userEmail(rs.getString(2))
-        .dateInterval(dateIntervalFromDateRange(rs.getString(3)))
-        .build();
+  /**
+   * @return the current WAL position of the primary, which the replicas have to replay to see
+   * every write committed so far
+   */
+  public String getCurrentLsn() {
+    return jdbc.queryForObject(CURRENT_LSN, String.class);
   }
 
-  private Optional<DateInterval> reservtionDatesFromResultSet(ResultSet rs) throws SQLException {
-    String dateRangeString = rs.getString(1);
-    return parsePeriodFromDateRangeString(dateRangeString);
+  /**
+   * The camping_reservation_max_nights check keeps every stay within {@link
+   * Reservation#MAX_NIGHTS}, so the ones overlapping a period start at the earliest that many days
+   * before it. Bounding lower(reservation_dates), the partition
+   * key, on both sides lets the planner leave out the partitions of the months before.
+   */
+  private static Date earliestOverlappingStart(LocalDate start) {
+    return Date.valueOf(start.minusDays(Reservation.MAX_NIGHTS));
   }
 
   /**
-   * It seems like there's no support for jdbc to resultset.getDateRange(column), so I am forced to
-   * parse the range as a string. It's no big deal I guess but adds some complexity.
-   *
-   * @param dateRange the daterange is of this format : '[yyyy-MM-dd,yyyy-MM-dd)' since we are
-   *                  dealing with exclusive end dates. Alternatively, it is possible that there are
-   *                  _no_ available dates for the requested dates so the dateRange input will be
-   *                  'empty'.
-   * @return a Period parsed from daterange passed as a string
+   * Times the query under island.db.query, tagged with its name.
    */
-  private Optional<DateInterval> parsePeriodFromDateRangeString(String dateRange) {
-    if (dateRange.equals(EMPTY_SEARCH_RESULT_STRING)) {
-      return Optional.empty();
-    }
-    return Optional.of(dateIntervalFromDateRange(dateRange));
+  private <T> T timed(String query, Supplier<T> call) {
+    return meterRegistry.timer(QUERY_TIMER, "query", query).record(call);
   }
 
-  private DateInterval dateIntervalFromDateRange(String dateRange) {
-    String[] stringDates = dateRange
-        .replace("[", "")
-        .replace(")", "")
-        .split(",");
+  private void timed(String query, Runnable call) {
+    meterRegistry.timer(QUERY_TIMER, "query", query).record(call);
+  }
 
-    LocalDate start = LocalDate.parse(stringDates[0], DATE_TIME_FORMATTER);
-    //remove 1 day from the end since we have exclusive end dates
-    LocalDate end = LocalDate.parse(stringDates[1], DATE_TIME_FORMATTER);
-    return new DateInterval(start, end);
+  private Reservation mapReservationFromResultSet(ResultSet rs) throws SQLException {
+    return Reservation.builder()
+        .id(rs.getLong(1))
+        .userName(rs.getString(2))
+        .userEmail(rs.getString(3))
+        .dateInterval(DateRangeCodec.decode(rs.getString(4)))
+        .siteId(rs.getLong(5))
+        .build();
+  }
+
+  private static Reservation previousReservation(long reservationId, ResultSet rs)
+      throws SQLException {
+    return Reservation.builder()
+        .id(reservationId)
+        .siteId(rs.getLong(1))
+        .dateInterval(DateRangeCodec.decode(rs.getString(2)))
+        .build();
   }
 }
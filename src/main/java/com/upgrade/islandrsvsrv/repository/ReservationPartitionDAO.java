@@ -0,0 +1,44 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * The monthly partitions of camping_reservation, see V1_8__reservation_partitions.sql.
+ */
+@RequiredArgsConstructor
+@Service
+@Profile("!memory")
+public class ReservationPartitionDAO {
+
+  private static final String CREATE_PARTITIONS = "SELECT create_reservation_partitions(?, ?)";
+
+  private static final String ARCHIVE_PARTITIONS = "SELECT archive_reservation_partitions(?)";
+
+  private final JdbcTemplate jdbc;
+
+  /**
+   * Creates the partitions missing from the month of since through the one of through, and moves
+   * there the bookings made for them until then.
+   *
+   * @return the number of partitions created
+   */
+  public int createPartitions(LocalDate since, LocalDate through) {
+    return jdbc.queryForObject(CREATE_PARTITIONS, Integer.class, Date.valueOf(since),
+        Date.valueOf(through));
+  }
+
+  /**
+   * Moves the months whose stays all ended before the date to camping_reservation_archive, oldest
+   * first, stopping at the first month with a stay still going on.
+   *
+   * @return the number of partitions archived
+   */
+  public int archivePartitions(LocalDate before) {
+    return jdbc.queryForObject(ARCHIVE_PARTITIONS, Integer.class, Date.valueOf(before));
+  }
+}
@@ -0,0 +1,91 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.springframework.dao.DataIntegrityViolationException;
+
+/**
+ * Where the reservations are kept: Postgres with the {@link ReservationDAO}, or the memory of this
+ * node with the {@link InMemoryReservationStore} and the memory profile. Either way, two
+ * reservations of a site never overlap and a write that would make them throws a
+ * DataIntegrityViolationException, or is reported as a CONFLICT by the IfFree writes.
+ */
+public interface ReservationStore {
+
+  /**
+   * @return the dates of the reservations of the site overlapping [start,end], in order
+   */
+  List<DateInterval> getReservationDates(long siteId, LocalDate start, LocalDate end);
+
+  /**
+   * @return the free ranges of the site within [start,end), as [start,end) intervals in order
+   */
+  List<DateInterval> getAvailableIntervals(long siteId, LocalDate start, LocalDate end);
+
+  /**
+   * @return the id, site and dates, without user details, of the reservations overlapping
+   * [start,end) on every site
+   */
+  List<Reservation> getReservations(LocalDate start, LocalDate end);
+
+  /**
+   * Hands the reservations made with the email to the action one at a time, by stay start then
+   * id, at most limit of them. Given afterStart and afterId, the start and id of the last one of
+   * the previous page, only the ones coming after it.
+   */
+  void forEachReservationOfUser(String userEmail, LocalDate afterStart, Long afterId, int limit,
+      Consumer<Reservation> action);
+
+  Long insertReservation(ReservationRequest reservation) throws DataIntegrityViolationException;
+
+  /**
+   * @return the site and the dates the reservation had before the update, or nothing if there is
+   * no such reservation
+   */
+  Optional<Reservation> updateReservation(long reservationId,
+      ReservationModification modification) throws DataIntegrityViolationException;
+
+  /**
+   * Books the reservation unless its dates are taken, without throwing in that case.
+   *
+   * @return CREATED with the id and site of the new reservation, or CONFLICT
+   */
+  ReservationOperationResult insertReservationIfFree(ReservationRequest reservation);
+
+  /**
+   * Moves the reservation unless its new dates are taken, without throwing in that case.
+   *
+   * @return MODIFIED with the site and the dates the reservation had before, CONFLICT or NOT_FOUND
+   */
+  ReservationOperationResult updateReservationIfFree(long reservationId,
+      ReservationModification modification);
+
+  /**
+   * @return the site and the dates the deleted reservation had, or nothing if there is no such
+   * reservation
+   */
+  Optional<Reservation> deleteReservation(long reservationId);
+
+  /**
+   * Applies the operations in order, a later one seeing what the earlier ones did. A conflicting
+   * operation or one on a missing reservation gets its own result without failing the others.
+   *
+   * @return the result of each operation, in the same order
+   */
+  List<ReservationOperationResult> applyOperations(List<ReservationOperation> operations)
+      throws DataIntegrityViolationException;
+
+  /**
+   * @throws org.springframework.dao.EmptyResultDataAccessException if there is no such
+   * reservation
+   */
+  Reservation getReservation(Long reservationId);
+}
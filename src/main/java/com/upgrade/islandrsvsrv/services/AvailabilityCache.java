@@ -0,0 +1,130 @@
+package com.upgrade.islandrsvsrv.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caches the occupied intervals of a requested date range on a site. Every reservation write
+ * evicts the cached ranges of its site it overlaps, before or after the change, whether it was
+ * made on this node or, through the change feed, on another one.
+ *
+ * <p>A load that was already running when a write came in may have read the old dates, so it is
+ * not kept around: the write generation is checked again once the result is in the cache, and
+ * any write in the meantime evicts it.
+ */
+@Service
+@ConditionalOnProperty(name = "island.availability.cache.enabled", havingValue = "true")
+public class AvailabilityCache {
+
+  private final Cache<SiteInterval, List<DateInterval>> cache;
+
+  private final AtomicLong writeGeneration = new AtomicLong();
+
+  private final AtomicLong invalidationCount = new AtomicLong();
+
+  private final AvailabilityChangeFeed availabilityChangeFeed;
+
+  private Disposable feedSubscription;
+
+  public AvailabilityCache(
+      @Value("${island.availability.cache.maximum-size:1000}") long maximumSize,
+      @Value("${island.availability.cache.ttl:PT30S}") Duration ttl,
+      AvailabilityChangeFeed availabilityChangeFeed) {
+    cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttl)
+        .recordStats()
+        .build();
+    this.availabilityChangeFeed = availabilityChangeFeed;
+  }
+
+  @PostConstruct
+  public void start() {
+    feedSubscription = availabilityChangeFeed.subscribe("availability cache", this::evict);
+  }
+
+  @PreDestroy
+  public void stop() {
+    feedSubscription.dispose();
+  }
+
+  public Mono<List<DateInterval>> getOccupiedIntervals(long siteId,
+      DateInterval requestedInterval, Supplier<Mono<List<DateInterval>>> loader) {
+    SiteInterval key = new SiteInterval(siteId, requestedInterval);
+    return Mono.defer(() -> {
+      List<DateInterval> cached = cache.getIfPresent(key);
+      if (cached != null) {
+        return Mono.just(cached);
+      }
+      long generation = writeGeneration.get();
+      return loader.get()
+          .doOnNext(occupiedIntervals -> {
+            cache.put(key, occupiedIntervals);
+            if (writeGeneration.get() != generation) {
+              cache.invalidate(key);
+            }
+          });
+    });
+  }
+
+  @EventListener
+  public void onReservationChanged(ReservationChangedEvent event) {
+    evict(event);
+  }
+
+  private void evict(ReservationChangedEvent event) {
+    writeGeneration.incrementAndGet();
+    cache.asMap().keySet().removeIf(cached -> {
+      boolean stale = cached.siteId == event.getSiteId() &&
+          (overlaps(cached.interval, event.getPreviousDates()) ||
+              overlaps(cached.interval, event.getNewDates()));
+      if (stale) {
+        invalidationCount.incrementAndGet();
+      }
+      return stale;
+    });
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long invalidationCount() {
+    return invalidationCount.get();
+  }
+
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  private boolean overlaps(DateInterval cachedInterval, DateInterval changedDates) {
+    return changedDates != null &&
+        changedDates.getStart().isBefore(cachedInterval.getEnd()) &&
+        cachedInterval.getStart().isBefore(changedDates.getEnd());
+  }
+
+  @EqualsAndHashCode
+  @AllArgsConstructor
+  private static class SiteInterval {
+
+    private final long siteId;
+    private final DateInterval interval;
+  }
+}
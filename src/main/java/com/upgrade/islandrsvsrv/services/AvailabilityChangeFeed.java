@@ -0,0 +1,72 @@
+package com.upgrade.islandrsvsrv.services;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import java.util.List;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+/**
+ * Fans out the reservation changes made on any node to every subscriber. Clients get the date
+ * ranges touched by each change, with their own bounded buffer: a client that doesn't keep up
+ * loses its oldest changes instead of holding back everybody else.
+ */
+@Slf4j
+@Service
+public class AvailabilityChangeFeed {
+
+  private final DirectProcessor<ReservationChangedEvent> changes = DirectProcessor.create();
+
+  private final FluxSink<ReservationChangedEvent> sink = changes.sink();
+
+  private final int subscriberBufferSize;
+
+  public AvailabilityChangeFeed(
+      @Value("${island.availability.feed.subscriber-buffer-size:256}") int subscriberBufferSize) {
+    this.subscriberBufferSize = subscriberBufferSize;
+  }
+
+  public void publish(ReservationChangedEvent change) {
+    sink.next(change);
+  }
+
+  /**
+   * @return the date ranges touched on that site
+   */
+  public Flux<List<DateInterval>> changes(long siteId) {
+    return changes
+        .filter(change -> change.getSiteId() == siteId)
+        .map(ReservationChangedEvent::getChangedDates)
+        .onBackpressureBuffer(subscriberBufferSize, dropped -> {
+        }, BufferOverflowStrategy.DROP_OLDEST);
+  }
+
+  /**
+   * The changes themselves, buffered without bound rather than dropped. Only meant for
+   * subscribers of this node that keep up with the feed and can't afford to miss a change.
+   */
+  public Flux<ReservationChangedEvent> reservationChanges() {
+    return changes.onBackpressureBuffer();
+  }
+
+  /**
+   * Hands the changes to a subscriber of this node, see {@link #reservationChanges}. A change the
+   * subscriber fails on is logged and skipped, so that neither the subscriber nor the ones after
+   * it are cut off from the rest of the feed.
+   */
+  public Disposable subscribe(String subscriber, Consumer<ReservationChangedEvent> consumer) {
+    return reservationChanges()
+        .doOnNext(consumer)
+        .onErrorContinue((error, change) ->
+            log.error("The {} failed to apply the change {}", subscriber, change, error))
+        .subscribe(null, error ->
+            log.error("The {} no longer gets the reservation changes", subscriber, error));
+  }
+}
@@ -1,51 +1,260 @@
 package com.upgrade.islandrsvsrv.services;
 
-import static java.util.stream.Collectors.toList;
+import static java.time.temporal.ChronoUnit.DAYS;
 
 import com.upgrade.islandrsvsrv.domain.DateInterval;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import org.springframework.stereotype.Service;
 
+/**
+ * Records how many occupied intervals each availability request goes through under
+ * island.availability.occupied.intervals, and how many dates or intervals it comes up with under
+ * island.availability.results once they have all been consumed.
+ */
 @Service
 public class AvailabilityService {
 
+  private final DistributionSummary occupiedIntervals;
+
+  private final DistributionSummary availableDates;
+
+  private final DistributionSummary availableIntervals;
+
+  public AvailabilityService(MeterRegistry meterRegistry) {
+    occupiedIntervals = DistributionSummary.builder("island.availability.occupied.intervals")
+        .description("Occupied intervals an availability request goes through")
+        .register(meterRegistry);
+    availableDates = DistributionSummary.builder("island.availability.results")
+        .description("Available dates or intervals found by an availability request")
+        .tag("result", "dates")
+        .register(meterRegistry);
+    availableIntervals = DistributionSummary.builder("island.availability.results")
+        .description("Available dates or intervals found by an availability request")
+        .tag("result", "intervals")
+        .register(meterRegistry);
+  }
+
   public List<LocalDate> findAvailabilities(DateInterval requestedInterval,
       List<DateInterval> sortedOccupiedIntervals) {
-
-    LocalDate currentStart = requestedInterval.getStart();
     List<LocalDate> availableDates = new ArrayList<>();
+    availableDates(requestedInterval, sortedOccupiedIntervals).forEach(availableDates::add);
+    return availableDates;
+  }
+
+  /**
+   * Same as {@link #findAvailabilities(DateInterval, List)} but nothing is computed up front, the
+   * dates are produced one at a time while walking the gaps between the occupied intervals. That
+   * way a wide requested interval costs nothing until someone actually consumes it.
+   */
+  public Iterable<LocalDate> availableDates(DateInterval requestedInterval,
+      List<DateInterval> sortedOccupiedIntervals) {
+    return () -> new AvailableDates(
+        new AvailableIntervals(requestedInterval, sortedOccupiedIntervals.iterator(),
+            ResultCount.NONE),
+        new ResultCount(availableDates, occupiedIntervals, sortedOccupiedIntervals.size()));
+  }
+
+  /**
+   * The gaps themselves, as [start,end) intervals, rather than every single date in them.
+   */
+  public Iterable<DateInterval> availableIntervals(DateInterval requestedInterval,
+      List<DateInterval> sortedOccupiedIntervals) {
+    return () -> new AvailableIntervals(requestedInterval, sortedOccupiedIntervals.iterator(),
+        new ResultCount(availableIntervals, occupiedIntervals, sortedOccupiedIntervals.size()));
+  }
+
+  /**
+   * The dates of gaps the store already found, see ReservationStore#getAvailableIntervals.
+   */
+  public Iterable<LocalDate> datesOf(List<DateInterval> sortedAvailableIntervals) {
+    return () -> new AvailableDates(sortedAvailableIntervals.iterator(),
+        new ResultCount(availableDates, null, 0));
+  }
+
+  /**
+   * The free stays as long as the requested one starting the closest before it and the closest
+   * after it, both within the search interval. Either may be missing if there is no room.
+   *
+   * @return at most two stays, the earlier one first
+   */
+  public List<DateInterval> nearestFreeStays(DateInterval requestedStay,
+      DateInterval searchInterval, List<DateInterval> sortedOccupiedIntervals) {
+    long nights = DAYS.between(requestedStay.getStart(), requestedStay.getEnd());
+    LocalDate requestedStart = requestedStay.getStart();
+    LocalDate before = null;
+    LocalDate after = null;
+    Iterator<DateInterval> gaps = new AvailableIntervals(searchInterval,
+        sortedOccupiedIntervals.iterator(), ResultCount.NONE);
+    while (after == null && gaps.hasNext()) {
+      DateInterval gap = gaps.next();
+      LocalDate lastStart = gap.getEnd().minusDays(nights);
+      if (lastStart.isBefore(gap.getStart())) {
+        continue;
+      }
+      if (gap.getStart().isBefore(requestedStart)) {
+        before = minimum(lastStart, requestedStart.minusDays(1));
+      }
+      if (lastStart.isAfter(requestedStart)) {
+        after = maximum(gap.getStart(), requestedStart.plusDays(1));
+      }
+    }
+    List<DateInterval> stays = new ArrayList<>(2);
+    if (before != null) {
+      stays.add(new DateInterval(before, before.plusDays(nights)));
+    }
+    if (after != null) {
+      stays.add(new DateInterval(after, after.plusDays(nights)));
+    }
+    return stays;
+  }
+
+  private static LocalDate minimum(LocalDate date1, LocalDate date2) {
+    return date1.isBefore(date2) ? date1 : date2;
+  }
+
+  private static LocalDate maximum(LocalDate date1, LocalDate date2) {
+    return date1.isAfter(date2) ? date1 : date2;
+  }
+
+  private static class AvailableIntervals implements Iterator<DateInterval> {
+
+    private final DateInterval requestedInterval;
+    private final Iterator<DateInterval> sortedOccupiedIntervals;
+    private final ResultCount resultCount;
 
-    List<DateInterval> filteredReservations = sortedOccupiedIntervals.stream()
-        .filter(reservation -> reservation.getStart().isBefore(requestedInterval.getEnd()) &&
-            requestedInterval.getStart().isBefore(reservation.getEnd()))
-        .collect(toList());
+    // where the next gap starts, or null once the end of the requested interval is reached
+    private LocalDate gapStart;
+    private DateInterval next;
 
-    if (filteredReservations.isEmpty()) {
-      return requestedInterval.getStart()
-          .datesUntil(requestedInterval.getEnd())
-          .collect(toList());
+    AvailableIntervals(DateInterval requestedInterval,
+        Iterator<DateInterval> sortedOccupiedIntervals, ResultCount resultCount) {
+      this.requestedInterval = requestedInterval;
+      this.sortedOccupiedIntervals = sortedOccupiedIntervals;
+      this.resultCount = resultCount;
+      this.gapStart = requestedInterval.getStart();
     }
 
-    for (DateInterval reservationDate : filteredReservations) {
-      availableDates.addAll(currentStart
-          .datesUntil(maximum(requestedInterval.getStart(), reservationDate.getStart()))
-          .collect(toList()));
-      currentStart = minimum(requestedInterval.getEnd(), reservationDate.getEnd());
+    @Override
+    public boolean hasNext() {
+      while (next == null && gapStart != null) {
+        next = nextGap();
+      }
+      return resultCount.hasNext(next != null);
     }
 
-    //get the last stretch of availabilities between the last reservation end and the requested interval end
-    availableDates.addAll(currentStart.datesUntil(requestedInterval.getEnd()).collect(toList()));
+    @Override
+    public DateInterval next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      DateInterval gap = next;
+      next = null;
+      resultCount.increment();
+      return gap;
+    }
 
-    return availableDates;
+    /**
+     * @return the gap before the next occupied interval, or null if that gap is empty.
+     */
+    private DateInterval nextGap() {
+      LocalDate start = gapStart;
+      LocalDate end = requestedInterval.getEnd();
+      gapStart = null;
+      while (sortedOccupiedIntervals.hasNext()) {
+        DateInterval reservation = sortedOccupiedIntervals.next();
+        if (reservation.getStart().isBefore(requestedInterval.getEnd()) &&
+            requestedInterval.getStart().isBefore(reservation.getEnd())) {
+          end = maximum(requestedInterval.getStart(), reservation.getStart());
+          gapStart = minimum(requestedInterval.getEnd(), reservation.getEnd());
+          break;
+        }
+      }
+      //without any reservation left, this is the last stretch up to the requested interval end
+      return start.isBefore(end) ? new DateInterval(start, end) : null;
+    }
   }
 
-  private LocalDate minimum(LocalDate date1, LocalDate date2) {
-    return date1.isBefore(date2) ? date1 : date2;
+  private static class AvailableDates implements Iterator<LocalDate> {
+
+    private final Iterator<DateInterval> availableIntervals;
+    private final ResultCount resultCount;
+
+    private LocalDate current;
+    private LocalDate end;
+
+    AvailableDates(Iterator<DateInterval> availableIntervals, ResultCount resultCount) {
+      this.availableIntervals = availableIntervals;
+      this.resultCount = resultCount;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (current == null || !current.isBefore(end)) {
+        if (!availableIntervals.hasNext()) {
+          return resultCount.hasNext(false);
+        }
+        DateInterval interval = availableIntervals.next();
+        current = interval.getStart();
+        end = interval.getEnd();
+      }
+      return true;
+    }
+
+    @Override
+    public LocalDate next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      LocalDate next = current;
+      current = current.plusDays(1);
+      resultCount.increment();
+      return next;
+    }
   }
 
-  private LocalDate maximum(LocalDate date1, LocalDate date2) {
-    return date1.isAfter(date2) ? date1 : date2;
+  /**
+   * Counts the results handed out and records them, with the occupied intervals gone through, once
+   * the iteration is over. Reactor asks an iterable for an iterator it never consumes just to see
+   * if it is finite, so recording any earlier would count those requests twice.
+   */
+  private static class ResultCount {
+
+    static final ResultCount NONE = new ResultCount(null, null, 0);
+
+    private final DistributionSummary results;
+    private final DistributionSummary occupiedIntervals;
+    private final int occupied;
+    private int count;
+    private boolean recorded;
+
+    ResultCount(DistributionSummary results, DistributionSummary occupiedIntervals,
+        int occupied) {
+      this.results = results;
+      this.occupiedIntervals = occupiedIntervals;
+      this.occupied = occupied;
+    }
+
+    void increment() {
+      if (results != null) {
+        count++;
+      }
+    }
+
+    boolean hasNext(boolean hasNext) {
+      if (!hasNext && !recorded && results != null) {
+        recorded = true;
+        results.record(count);
+        if (occupiedIntervals != null) {
+          occupiedIntervals.record(occupied);
+        }
+      }
+      return hasNext;
+    }
   }
 }
@@ -0,0 +1,173 @@
+package com.upgrade.islandrsvsrv.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Where the blocking db calls run, instead of the event loop threads every other request is
+ * multiplexed on. There are as many threads as connections in the pool by default, and at most
+ * island.blocking.queue-capacity calls wait for one of them: past that a call is turned down right
+ * away with a 503 instead of piling up behind a slow db. So is a call that takes longer than
+ * island.blocking.timeout.[operation], or island.blocking.timeout.default.
+ *
+ * <p>With island.blocking.virtual-threads, on a JDK that has them, every call gets its own virtual
+ * thread instead, still no more than island.blocking.threads of them at once.
+ */
+@Slf4j
+@Component
+public class BlockingScheduler implements DisposableBean {
+
+  private static final String REJECTED = "island.blocking.rejected";
+
+  private static final String TIMEOUTS = "island.blocking.timeouts";
+
+  private static final int QUEUED = 0;
+
+  private static final int STARTED = 1;
+
+  private static final int ABANDONED = 2;
+
+  private final int threads;
+
+  private final int capacity;
+
+  /**
+   * A permit per call running or waiting to.
+   */
+  private final Semaphore admitted;
+
+  private final Semaphore running;
+
+  private final Scheduler scheduler;
+
+  private final Duration defaultTimeout;
+
+  private final Environment environment;
+
+  private final Map<String, Duration> timeouts = new ConcurrentHashMap<>();
+
+  private final MeterRegistry meterRegistry;
+
+  public BlockingScheduler(
+      @Value("${island.blocking.threads:${spring.datasource.hikari.maximum-pool-size:10}}")
+          int threads,
+      @Value("${island.blocking.queue-capacity:100}") int queueCapacity,
+      @Value("${island.blocking.timeout.default:PT5S}") Duration defaultTimeout,
+      @Value("${island.blocking.virtual-threads:false}") boolean virtualThreads,
+      Environment environment, MeterRegistry meterRegistry) {
+    this.threads = threads;
+    capacity = threads + queueCapacity;
+    admitted = new Semaphore(capacity);
+    running = new Semaphore(threads);
+    this.defaultTimeout = defaultTimeout;
+    this.environment = environment;
+    this.meterRegistry = meterRegistry;
+    ExecutorService executor = virtualThreads ? virtualThreadExecutor() : null;
+    if (executor == null) {
+      CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("island-blocking-");
+      threadFactory.setDaemon(true);
+      executor = Executors.newFixedThreadPool(threads, threadFactory);
+    }
+    scheduler = Schedulers.fromExecutorService(executor, "island-blocking");
+    Gauge.builder("island.blocking.queued", this, BlockingScheduler::queued)
+        .description("Blocking calls waiting for a thread")
+        .register(meterRegistry);
+    Gauge.builder("island.blocking.active", this, BlockingScheduler::active)
+        .description("Blocking calls running")
+        .register(meterRegistry);
+  }
+
+  /**
+   * @param operation what the call does, for its timeout and in the metrics
+   * @return the result of the call, or a {@link DatabaseBusyException} if there was no room for
+   * it or it timed out
+   */
+  public <T> Mono<T> call(String operation, Callable<T> call) {
+    return Mono.defer(() -> {
+      if (!admitted.tryAcquire()) {
+        meterRegistry.counter(REJECTED, "operation", operation).increment();
+        return Mono.error(new DatabaseBusyException(
+            "Too many requests are waiting on the database, please try again shortly."));
+      }
+      AtomicInteger state = new AtomicInteger(QUEUED);
+      return Mono.fromCallable(() -> {
+        running.acquire();
+        //the caller may have timed out or gone away while this was queued
+        boolean started = state.compareAndSet(QUEUED, STARTED);
+        try {
+          return started ? call.call() : null;
+        } finally {
+          running.release();
+          if (started) {
+            admitted.release();
+          }
+        }
+      })
+          .subscribeOn(scheduler)
+          .doFinally(signal -> {
+            if (state.compareAndSet(QUEUED, ABANDONED)) {
+              admitted.release();
+            }
+          })
+          .timeout(timeout(operation))
+          .onErrorMap(TimeoutException.class, e -> {
+            meterRegistry.counter(TIMEOUTS, "operation", operation).increment();
+            return new DatabaseBusyException(
+                "The database took too long to answer, please try again shortly.");
+          });
+    });
+  }
+
+  @Override
+  public void destroy() {
+    scheduler.dispose();
+  }
+
+  private Duration timeout(String operation) {
+    return timeouts.computeIfAbsent(operation, key -> Optional
+        .ofNullable(environment.getProperty("island.blocking.timeout." + key))
+        .map(DurationStyle::detectAndParse)
+        .orElse(defaultTimeout));
+  }
+
+  private double queued() {
+    return capacity - admitted.availablePermits() - active();
+  }
+
+  private double active() {
+    return threads - running.availablePermits();
+  }
+
+  /**
+   * @return an executor starting a virtual thread per call, or nothing on a JDK without them
+   */
+  private static ExecutorService virtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+          .invoke(null);
+    } catch (ReflectiveOperationException e) {
+      log.warn("Virtual threads are not available on this JDK, using platform threads");
+      return null;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.upgrade.islandrsvsrv.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.repository.CampsiteStore;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+@Service
+public class CampsiteService {
+
+  private static final int MAXIMUM_UNKNOWN_SITES = 10000;
+
+  private final CampsiteStore campsiteStore;
+
+  /**
+   * Only present when island.availability.site-index.enabled is set.
+   */
+  private final Optional<SiteOccupancyIndex> siteOccupancyIndex;
+
+  private final BlockingScheduler blockingScheduler;
+
+  /**
+   * Sites aren't taken out of service while they have reservations, so once a site is known to
+   * exist there is no need to ask the db again on every request.
+   */
+  private final Set<Long> knownSites = ConcurrentHashMap.newKeySet();
+
+  /**
+   * The ids found missing, kept island.campsite.unknown-ttl only since a site may be added any
+   * time, so that a client asking again and again for one doesn't reach the db every time.
+   */
+  private final Cache<Long, Boolean> unknownSites;
+
+  public CampsiteService(CampsiteStore campsiteStore,
+      Optional<SiteOccupancyIndex> siteOccupancyIndex, BlockingScheduler blockingScheduler,
+      @Value("${island.campsite.unknown-ttl:PT5S}") Duration unknownTtl) {
+    this.campsiteStore = campsiteStore;
+    this.siteOccupancyIndex = siteOccupancyIndex;
+    this.blockingScheduler = blockingScheduler;
+    unknownSites = Caffeine.newBuilder()
+        .maximumSize(MAXIMUM_UNKNOWN_SITES)
+        .expireAfterWrite(unknownTtl)
+        .build();
+  }
+
+  public Mono<List<Campsite>> getCampsites() {
+    return blockingScheduler.call("campsites", () -> {
+      List<Campsite> campsites = campsiteStore.getCampsites();
+      campsites.forEach(campsite -> {
+        knownSites.add(campsite.getId());
+        unknownSites.invalidate(campsite.getId());
+      });
+      return campsites;
+    });
+  }
+
+  /**
+   * @return the ids of the sites free for the whole interval, from memory when the site index
+   * covers it, otherwise with a single query for all sites
+   */
+  public Mono<List<Long>> getFreeCampsites(LocalDate dateStart, LocalDate dateEnd) {
+    Optional<List<Long>> indexedSites = siteOccupancyIndex
+        .flatMap(index -> index.getFreeSites(new DateInterval(dateStart, dateEnd)));
+    return indexedSites
+        .map(Mono::just)
+        .orElseGet(() -> blockingScheduler.call("free-campsites",
+            () -> campsiteStore.getFreeCampsites(dateStart, dateEnd)));
+  }
+
+  /**
+   * @return whether the site exists, right away when it was already looked up, otherwise from the
+   * db on the {@link BlockingScheduler}
+   */
+  public Mono<Boolean> exists(long siteId) {
+    return Mono.defer(() -> {
+      Boolean known = known(siteId);
+      return known != null ? Mono.just(known)
+          : blockingScheduler.call("campsite", () -> existsBlocking(siteId));
+    });
+  }
+
+  /**
+   * Same as {@link #exists}, for the callers already off the event loop.
+   */
+  public boolean existsBlocking(long siteId) {
+    Boolean known = known(siteId);
+    if (known != null) {
+      return known;
+    }
+    boolean exists = campsiteStore.exists(siteId);
+    if (exists) {
+      knownSites.add(siteId);
+    } else {
+      unknownSites.put(siteId, false);
+    }
+    return exists;
+  }
+
+  private Boolean known(long siteId) {
+    return knownSites.contains(siteId) ? Boolean.TRUE : unknownSites.getIfPresent(siteId);
+  }
+}
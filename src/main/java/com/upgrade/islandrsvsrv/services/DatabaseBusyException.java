@@ -0,0 +1,20 @@
+package com.upgrade.islandrsvsrv.services;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * A blocking call the {@link BlockingScheduler} turned down or gave up on. Like the conflicts, it
+ * is expected to come in bursts under load, so it doesn't bother filling in a stack trace.
+ */
+public class DatabaseBusyException extends ResponseStatusException {
+
+  public DatabaseBusyException(String reason) {
+    super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+}
@@ -0,0 +1,88 @@
+package com.upgrade.islandrsvsrv.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.upgrade.islandrsvsrv.domain.IdempotencyRecord;
+import com.upgrade.islandrsvsrv.repository.IdempotencyKeyStore;
+import java.time.Duration;
+import java.util.Optional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the outcome of the first request sent with an idempotency key for island.idempotency.ttl,
+ * in the idempotency_key table so every node sees it, and the completed ones in a small cache in
+ * front of it so the retries hitting this node don't even go to the db.
+ */
+@Slf4j
+@Service
+public class IdempotencyService {
+
+  private final IdempotencyKeyStore idempotencyKeyStore;
+
+  private final Duration ttl;
+
+  private final Duration lockTimeout;
+
+  private final Cache<String, IdempotencyRecord> completedRecords;
+
+  public IdempotencyService(IdempotencyKeyStore idempotencyKeyStore,
+      @Value("${island.idempotency.ttl:PT24H}") Duration ttl,
+      @Value("${island.idempotency.lock-timeout:PT1M}") Duration lockTimeout,
+      @Value("${island.idempotency.cache.maximum-size:10000}") long cacheMaximumSize) {
+    this.idempotencyKeyStore = idempotencyKeyStore;
+    this.ttl = ttl;
+    this.lockTimeout = lockTimeout;
+    completedRecords = Caffeine.newBuilder()
+        .maximumSize(cacheMaximumSize)
+        .expireAfterWrite(ttl)
+        .build();
+  }
+
+  /**
+   * Takes the key for a request. A request still in progress after island.idempotency.lock-timeout
+   * is assumed lost, and the key goes to whoever asks next.
+   *
+   * @return nothing if the request got the key and has to be processed, or else the record of the
+   * request that holds it, completed or still in progress
+   */
+  public Optional<IdempotencyRecord> claim(String key, String requestHash) {
+    IdempotencyRecord completed = completedRecords.getIfPresent(key);
+    if (completed != null) {
+      return Optional.of(completed);
+    }
+    if (idempotencyKeyStore.claim(key, requestHash, ttl, lockTimeout)) {
+      return Optional.empty();
+    }
+    Optional<IdempotencyRecord> record = idempotencyKeyStore.getRecord(key);
+    record.filter(IdempotencyRecord::isCompleted)
+        .ifPresent(stored -> completedRecords.put(key, stored));
+    //purged as it expired in between, it's up for grabs again on the next retry
+    return Optional.of(record.orElseGet(() -> IdempotencyRecord.builder()
+        .requestHash(requestHash)
+        .build()));
+  }
+
+  public void complete(String key, String requestHash, int status, String body) {
+    idempotencyKeyStore.complete(key, status, body);
+    completedRecords.put(key, IdempotencyRecord.builder()
+        .requestHash(requestHash)
+        .status(status)
+        .body(body)
+        .build());
+  }
+
+  public void release(String key) {
+    idempotencyKeyStore.release(key);
+  }
+
+  @Scheduled(fixedDelayString = "${island.idempotency.purge-interval:PT1H}")
+  public void purgeExpired() {
+    int purged = idempotencyKeyStore.deleteExpired(ttl);
+    if (purged > 0) {
+      log.info("Purged {} expired idempotency keys", purged);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static java.time.LocalDate.now;
+import static java.time.temporal.ChronoUnit.DAYS;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.repository.ReservationStore;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+
+/**
+ * One bit per day, from today up to the horizon, set when the default campsite is booked that day.
+ * This lets us answer its availabilities from memory; a request going past the horizon, or for
+ * another site, still goes to the db.
+ *
+ * <p>A published bitmap is never modified, writes copy it, so reads don't need any locking.
+ * Writes made on this node are applied as they happen, and the change feed brings the ones made
+ * elsewhere, along with those of this node again in the order they were committed. The periodic
+ * refresh rolls the window forward every day and catches up on anything the feed missed. The db
+ * exclusion constraint still has the final say on bookings.
+ */
+@Service
+@ConditionalOnProperty(name = "island.availability.index.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class OccupancyIndex {
+
+  private final ReservationStore reservationStore;
+
+  private final AvailabilityChangeFeed availabilityChangeFeed;
+
+  @Value("${island.availability.index.horizon-days:366}")
+  private int horizonDays;
+
+  private volatile Occupancy occupancy;
+
+  private Disposable feedSubscription;
+
+  @PostConstruct
+  public void start() {
+    refresh();
+    feedSubscription = availabilityChangeFeed.subscribe("availability index",
+        this::onReservationChanged);
+  }
+
+  @PreDestroy
+  public void stop() {
+    feedSubscription.dispose();
+  }
+
+  @Scheduled(cron = "${island.availability.index.roll-cron:0 0 0 * * *}")
+  @Scheduled(fixedDelayString = "${island.availability.index.refresh-interval:PT5M}",
+      initialDelayString = "${island.availability.index.refresh-interval:PT5M}")
+  public synchronized void refresh() {
+    LocalDate today = now();
+    BitSet days = new BitSet(horizonDays);
+    reservationStore.getReservationDates(Campsite.DEFAULT_ID, today, today.plus(horizonDays, DAYS))
+        .forEach(reservation -> mark(days, today, reservation, true));
+    occupancy = new Occupancy(today, days);
+  }
+
+  @EventListener
+  public synchronized void onReservationChanged(ReservationChangedEvent event) {
+    if (event.getSiteId() != Campsite.DEFAULT_ID) {
+      return;
+    }
+    Occupancy current = occupancy;
+    BitSet days = (BitSet) current.days.clone();
+    if (event.getPreviousDates() != null) {
+      mark(days, current.start, event.getPreviousDates(), false);
+    }
+    if (event.getNewDates() != null) {
+      mark(days, current.start, event.getNewDates(), true);
+    }
+    occupancy = new Occupancy(current.start, days);
+  }
+
+  /**
+   * @return the booked stretches overlapping the requested interval, sorted and clipped to it, or
+   * nothing if the requested interval isn't completely covered by the index.
+   */
+  public Optional<List<DateInterval>> getOccupiedIntervals(DateInterval requestedInterval) {
+    Occupancy current = occupancy;
+    long from = DAYS.between(current.start, requestedInterval.getStart());
+    long to = DAYS.between(current.start, requestedInterval.getEnd());
+    if (from < 0 || to > horizonDays) {
+      return Optional.empty();
+    }
+
+    List<DateInterval> occupiedIntervals = new ArrayList<>();
+    int day = current.days.nextSetBit((int) from);
+    while (day >= 0 && day < to) {
+      int end = (int) Math.min(current.days.nextClearBit(day), to);
+      occupiedIntervals.add(new DateInterval(current.start.plusDays(day),
+          current.start.plusDays(end)));
+      day = current.days.nextSetBit(end);
+    }
+    return Optional.of(occupiedIntervals);
+  }
+
+  private void mark(BitSet days, LocalDate start, DateInterval interval, boolean occupied) {
+    long from = Math.max(0, DAYS.between(start, interval.getStart()));
+    long to = Math.min(horizonDays, DAYS.between(start, interval.getEnd()));
+    if (from < to) {
+      days.set((int) from, (int) to, occupied);
+    }
+  }
+
+  @AllArgsConstructor
+  private static class Occupancy {
+
+    private final LocalDate start;
+    private final BitSet days;
+  }
+}
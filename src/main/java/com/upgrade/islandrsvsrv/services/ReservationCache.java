@@ -0,0 +1,120 @@
+package com.upgrade.islandrsvsrv.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * The reservations looked up by id, kept island.reservation.cache.ttl, and the ids found missing,
+ * kept island.reservation.cache.negative-ttl only since they may be booked any time. A reservation
+ * is evicted as soon as it is written, on this node or, through the change feed, on another one.
+ *
+ * <p>As in the {@link AvailabilityCache}, a load that was running when a write came in is not
+ * kept.
+ */
+@Service
+public class ReservationCache {
+
+  private final Cache<Long, Optional<Reservation>> cache;
+
+  private final AvailabilityChangeFeed availabilityChangeFeed;
+
+  private final AtomicLong writeGeneration = new AtomicLong();
+
+  private Disposable feedSubscription;
+
+  public ReservationCache(
+      @Value("${island.reservation.cache.maximum-size:10000}") long maximumSize,
+      @Value("${island.reservation.cache.ttl:PT1M}") Duration ttl,
+      @Value("${island.reservation.cache.negative-ttl:PT5S}") Duration negativeTtl,
+      AvailabilityChangeFeed availabilityChangeFeed) {
+    cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfter(new Expiry<Long, Optional<Reservation>>() {
+          @Override
+          public long expireAfterCreate(Long reservationId, Optional<Reservation> reservation,
+              long currentTime) {
+            return (reservation.isPresent() ? ttl : negativeTtl).toNanos();
+          }
+
+          @Override
+          public long expireAfterUpdate(Long reservationId, Optional<Reservation> reservation,
+              long currentTime, long currentDuration) {
+            return expireAfterCreate(reservationId, reservation, currentTime);
+          }
+
+          @Override
+          public long expireAfterRead(Long reservationId, Optional<Reservation> reservation,
+              long currentTime, long currentDuration) {
+            return currentDuration;
+          }
+        })
+        .recordStats()
+        .build();
+    this.availabilityChangeFeed = availabilityChangeFeed;
+  }
+
+  @PostConstruct
+  public void start() {
+    feedSubscription = availabilityChangeFeed.subscribe("reservation cache", this::evict);
+  }
+
+  @PreDestroy
+  public void stop() {
+    feedSubscription.dispose();
+  }
+
+  /**
+   * @param loader looks the reservation up when it isn't cached, empty if there is none
+   */
+  public Mono<Optional<Reservation>> getReservation(long reservationId,
+      Supplier<Mono<Optional<Reservation>>> loader) {
+    return Mono.defer(() -> {
+      Optional<Reservation> cached = cache.getIfPresent(reservationId);
+      if (cached != null) {
+        return Mono.just(cached);
+      }
+      long generation = writeGeneration.get();
+      return loader.get()
+          .doOnNext(reservation -> {
+            cache.put(reservationId, reservation);
+            if (writeGeneration.get() != generation) {
+              cache.invalidate(reservationId);
+            }
+          });
+    });
+  }
+
+  @EventListener
+  public void onReservationChanged(ReservationChangedEvent event) {
+    evict(event);
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  private void evict(ReservationChangedEvent event) {
+    writeGeneration.incrementAndGet();
+    if (event.getReservationId() == null) {
+      //can't tell which reservation it was
+      cache.invalidateAll();
+    } else {
+      cache.invalidate(event.getReservationId());
+    }
+  }
+}
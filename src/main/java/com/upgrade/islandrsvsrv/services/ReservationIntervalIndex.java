@@ -0,0 +1,252 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static java.time.LocalDate.now;
+import static java.time.temporal.ChronoUnit.DAYS;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.repository.ReservationStore;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+
+/**
+ * The reservations from today up to the horizon, sorted by site and start date, so a booking that
+ * surely overlaps one of them can be turned down without going to the db.
+ *
+ * <p>Writes made on this node are applied as they happen, the ones made on other nodes come
+ * through the change feed, without letting the feed undo them, see {@link #applyFromFeed}, and
+ * everything is reloaded periodically in case a notification was missed. Only reservations known
+ * to be committed are in there, so a hit is a certain conflict. A miss proves nothing (a
+ * concurrent booking may not have shown up yet) and the exclusion constraint still has the final
+ * say, as it does for dates past the horizon.
+ */
+@Service
+@ConditionalOnProperty(name = "island.reservation.conflict-index.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ReservationIntervalIndex {
+
+  private final ReservationStore reservationStore;
+
+  private final AvailabilityChangeFeed availabilityChangeFeed;
+
+  @Value("${island.reservation.conflict-index.horizon-days:45}")
+  private int horizonDays;
+
+  private volatile Bookings bookings;
+
+  /**
+   * The writes of this node, by reservation, the feed hasn't repeated yet. Only used under the
+   * index lock.
+   */
+  private final Map<Long, Echoes> unechoed = new HashMap<>();
+
+  private long generation;
+
+  private Disposable feedSubscription;
+
+  @PostConstruct
+  public void start() {
+    refresh();
+    feedSubscription = availabilityChangeFeed.subscribe("interval index", this::applyFromFeed);
+  }
+
+  @PreDestroy
+  public void stop() {
+    feedSubscription.dispose();
+  }
+
+  @Scheduled(cron = "${island.reservation.conflict-index.roll-cron:0 0 0 * * *}")
+  @Scheduled(fixedDelayString = "${island.reservation.conflict-index.refresh-interval:PT5M}",
+      initialDelayString = "${island.reservation.conflict-index.refresh-interval:PT5M}")
+  public synchronized void refresh() {
+    LocalDate today = now();
+    Bookings loaded = new Bookings(new DateInterval(today, today.plus(horizonDays, DAYS)));
+    reservationStore.getReservations(loaded.window.getStart(), loaded.window.getEnd())
+        .forEach(reservation -> loaded.add(reservation.getId(), reservation.getSiteId(),
+            reservation.getDateInterval()));
+    bookings = loaded;
+    //an echo that didn't come in a whole refresh interval was lost with its notification
+    generation++;
+    unechoed.values().removeIf(echoes -> echoes.generation < generation - 1);
+  }
+
+  /**
+   * The writes of this node are applied right away, and kept until the feed repeats them.
+   */
+  @EventListener
+  public synchronized void onReservationChanged(ReservationChangedEvent event) {
+    apply(event);
+    if (event.getReservationId() != null) {
+      Echoes echoes = unechoed.computeIfAbsent(event.getReservationId(), id -> new Echoes());
+      echoes.events.add(event);
+      echoes.generation = generation;
+    }
+  }
+
+  /**
+   * The feed has the writes of every node in the order they were committed, but repeats the ones
+   * of this node after they were applied: until the last write of this node to a reservation
+   * comes back, whatever the feed has about it is older, or a write from another node that can't
+   * be placed, and only forgets the reservation. A miss only costs a trip to the db, a stale
+   * reservation would turn down free dates.
+   */
+  private synchronized void applyFromFeed(ReservationChangedEvent event) {
+    Echoes echoes = event.getReservationId() == null ? null
+        : unechoed.get(event.getReservationId());
+    if (echoes != null) {
+      if (!echoes.events.peek().equals(event)) {
+        bookings.remove(event.getReservationId());
+        return;
+      }
+      echoes.events.poll();
+      if (!echoes.events.isEmpty()) {
+        return;
+      }
+      unechoed.remove(event.getReservationId());
+    }
+    apply(event);
+  }
+
+  private void apply(ReservationChangedEvent event) {
+    Bookings current = bookings;
+    if (event.getReservationId() == null) {
+      //can't tell which reservation it was, forget whatever was on its previous dates
+      if (event.getPreviousDates() != null) {
+        current.removeOverlapping(event.getSiteId(), event.getPreviousDates());
+      }
+      return;
+    }
+    current.remove(event.getReservationId());
+    if (event.getNewDates() != null) {
+      current.add(event.getReservationId(), event.getSiteId(), event.getNewDates());
+    }
+  }
+
+  /**
+   * @return true if a new reservation on those dates surely overlaps another one on the site,
+   * false if it doesn't or if the index can't tell
+   */
+  public boolean isBooked(long siteId, DateInterval dates) {
+    return isBooked(bookings, siteId, dates, null);
+  }
+
+  /**
+   * @return true if moving the reservation to those dates surely overlaps another one on its site,
+   * false if it doesn't or if the index can't tell, which includes not knowing the reservation
+   */
+  public boolean isBookedForMove(long reservationId, DateInterval dates) {
+    Bookings current = bookings;
+    Booking moved = current.byId.get(reservationId);
+    return moved != null && isBooked(current, moved.siteId, dates, moved.id);
+  }
+
+  private static boolean isBooked(Bookings current, long siteId, DateInterval dates,
+      Long reservationId) {
+    if (dates.getStart().isBefore(current.window.getStart()) ||
+        dates.getEnd().isAfter(current.window.getEnd())) {
+      return false;
+    }
+    // latest start first, down to the point where even the longest stay ends before the dates
+    LocalDate earliestStart = dates.getStart().minusDays(current.longestStayDays);
+    for (Booking booking : current.byStart
+        .headSet(Booking.startingOn(siteId, dates.getEnd()), false)
+        .descendingSet()) {
+      if (booking.siteId != siteId || !booking.start.isAfter(earliestStart)) {
+        break;
+      }
+      if (booking.end.isAfter(dates.getStart()) && !booking.id.equals(reservationId)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @AllArgsConstructor
+  private static class Booking {
+
+    private static final Comparator<Booking> BY_SITE_AND_START = Comparator
+        .comparingLong((Booking booking) -> booking.siteId)
+        .thenComparing(booking -> booking.start)
+        .thenComparing(booking -> booking.id);
+
+    private final Long id;
+    private final long siteId;
+    private final LocalDate start;
+    private final LocalDate end;
+
+    /**
+     * @return a booking sorted before every other one starting on that day on the site
+     */
+    static Booking startingOn(long siteId, LocalDate start) {
+      return new Booking(Long.MIN_VALUE, siteId, start, start);
+    }
+  }
+
+  private static class Echoes {
+
+    private final Deque<ReservationChangedEvent> events = new ArrayDeque<>();
+    private long generation;
+  }
+
+  /**
+   * Read without locking, only modified under the index lock.
+   */
+  private static class Bookings {
+
+    private final DateInterval window;
+    private final NavigableSet<Booking> byStart =
+        new ConcurrentSkipListSet<>(Booking.BY_SITE_AND_START);
+    private final Map<Long, Booking> byId = new ConcurrentHashMap<>();
+    private volatile long longestStayDays;
+
+    Bookings(DateInterval window) {
+      this.window = window;
+    }
+
+    void add(Long id, long siteId, DateInterval dates) {
+      if (!dates.getEnd().isAfter(window.getStart()) ||
+          !dates.getStart().isBefore(window.getEnd())) {
+        return;
+      }
+      Booking booking = new Booking(id, siteId, dates.getStart(), dates.getEnd());
+      longestStayDays = Math.max(longestStayDays, DAYS.between(booking.start, booking.end));
+      byId.put(id, booking);
+      byStart.add(booking);
+    }
+
+    void remove(Long id) {
+      Booking booking = byId.remove(id);
+      if (booking != null) {
+        byStart.remove(booking);
+      }
+    }
+
+    void removeOverlapping(long siteId, DateInterval dates) {
+      byStart.removeIf(booking -> {
+        boolean overlaps = booking.siteId == siteId && booking.start.isBefore(dates.getEnd()) &&
+            booking.end.isAfter(dates.getStart());
+        if (overlaps) {
+          byId.remove(booking.id);
+        }
+        return overlaps;
+      });
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package com.upgrade.islandrsvsrv.services;
+
+import com.upgrade.islandrsvsrv.repository.ReservationPartitionDAO;
+import java.time.LocalDate;
+import java.time.Period;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the monthly partitions of the reservations ready island.reservation.partitions.horizon
+ * ahead of today, well past how far in advance one can book, and archives the months whose stays
+ * ended island.reservation.partitions.archive-after ago. Runs on startup, then every
+ * island.reservation.partitions.maintenance-interval, on every node: the db functions lock each
+ * other out.
+ */
+@Slf4j
+@Service
+@Profile("!memory")
+public class ReservationPartitionService {
+
+  private final ReservationPartitionDAO reservationPartitionDAO;
+
+  private final Period horizon;
+
+  private final Period archiveAfter;
+
+  public ReservationPartitionService(ReservationPartitionDAO reservationPartitionDAO,
+      @Value("${island.reservation.partitions.horizon:P3M}") Period horizon,
+      @Value("${island.reservation.partitions.archive-after:P1M}") Period archiveAfter) {
+    this.reservationPartitionDAO = reservationPartitionDAO;
+    this.horizon = horizon;
+    this.archiveAfter = archiveAfter;
+  }
+
+  @Scheduled(fixedDelayString = "${island.reservation.partitions.maintenance-interval:PT6H}")
+  public void maintainPartitions() {
+    LocalDate today = LocalDate.now();
+    int created = reservationPartitionDAO.createPartitions(today, today.plus(horizon));
+    int archived = reservationPartitionDAO.archivePartitions(today.minus(archiveAfter));
+    if (created > 0 || archived > 0) {
+      log.info("Created {} and archived {} reservation partitions", created, archived);
+    }
+  }
+}
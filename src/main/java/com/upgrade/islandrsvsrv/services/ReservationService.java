@@ -1,39 +1,357 @@
 package com.upgrade.islandrsvsrv.services;
 
+import static java.util.stream.Collectors.toList;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
 import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
 import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation.Type;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
 import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
-import com.upgrade.islandrsvsrv.repository.ReservationDAO;
+import com.upgrade.islandrsvsrv.repository.ReactiveReservationDAO;
+import com.upgrade.islandrsvsrv.repository.ReadRouting;
+import com.upgrade.islandrsvsrv.repository.ReservationStore;
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Service
 @RequiredArgsConstructor
 public class ReservationService {
 
-  private final ReservationDAO reservationDAO;
+  private final ReservationStore reservationStore;
 
   private final AvailabilityService availabilityService;
 
-  public Flux<LocalDate> getAvailabilities(LocalDate dateStart, LocalDate dateEnd) {
-    return Flux
-        .fromIterable(availabilityService.findAvailabilities(new DateInterval(dateStart, dateEnd),
-            reservationDAO.getReservationDates(dateStart, dateEnd)));
+  /**
+   * Only present with the r2dbc profile, in which case availabilities are read without blocking.
+   */
+  private final Optional<ReactiveReservationDAO> reactiveReservationDAO;
+
+  /**
+   * Only present when island.availability.index.enabled is set.
+   */
+  private final Optional<OccupancyIndex> occupancyIndex;
+
+  /**
+   * Only present when island.availability.cache.enabled is set.
+   */
+  private final Optional<AvailabilityCache> availabilityCache;
+
+  /**
+   * Only present when island.reservation.conflict-index.enabled is set.
+   */
+  private final Optional<ReservationIntervalIndex> reservationIntervalIndex;
+
+  private final ApplicationEventPublisher eventPublisher;
+
+  private final BlockingScheduler blockingScheduler;
+
+  private final ReservationCache reservationCache;
+
+  /**
+   * Has the store work out the free ranges itself, so only those come back from the db, unless
+   * the occupancy index, the cache or r2dbc is there to answer.
+   */
+  @Value("${island.availability.store-free-ranges.enabled:false}")
+  private boolean storeFreeRanges;
+
+  public Flux<LocalDate> getAvailabilities(long siteId, LocalDate dateStart, LocalDate dateEnd) {
+    DateInterval requestedInterval = new DateInterval(dateStart, dateEnd);
+    if (isStoreFreeRanges()) {
+      return queryAvailableIntervals(siteId, requestedInterval)
+          .flatMapIterable(availabilityService::datesOf);
+    }
+    return getReservationDates(siteId, requestedInterval)
+        .flatMapIterable(sortedOccupiedIntervals -> availabilityService
+            .availableDates(requestedInterval, sortedOccupiedIntervals));
   }
 
-  public Long insertReservation(ReservationRequest reservationRequest)
-      throws DataIntegrityViolationException {
-    return reservationDAO.insertReservation(reservationRequest);
+  public Flux<DateInterval> getAvailabilityIntervals(long siteId, LocalDate dateStart,
+      LocalDate dateEnd) {
+    DateInterval requestedInterval = new DateInterval(dateStart, dateEnd);
+    if (isStoreFreeRanges()) {
+      return queryAvailableIntervals(siteId, requestedInterval)
+          .flatMapIterable(availableIntervals -> availableIntervals);
+    }
+    return getReservationDates(siteId, requestedInterval)
+        .flatMapIterable(sortedOccupiedIntervals -> availabilityService
+            .availableIntervals(requestedInterval, sortedOccupiedIntervals));
   }
 
-  public void updateReservation(long reservationId, ReservationModification modification) {
-    reservationDAO.updateReservation(reservationId, modification);
+  /**
+   * The free stays of the site as long as the requested one starting the closest before and after
+   * it within the search interval, read like the availabilities, see
+   * {@link AvailabilityService#nearestFreeStays}.
+   */
+  public Mono<List<DateInterval>> getNearestFreeStays(long siteId, DateInterval requestedStay,
+      DateInterval searchInterval) {
+    return getReservationDates(siteId, searchInterval)
+        .map(sortedOccupiedIntervals -> availabilityService
+            .nearestFreeStays(requestedStay, searchInterval, sortedOccupiedIntervals));
+  }
+
+  /**
+   * Served by the reservation cache, unless the read has to see the write of a consistency token.
+   *
+   * @return the reservation, empty if there is none
+   */
+  public Mono<Optional<Reservation>> getReservation(long reservationId) {
+    return Mono.subscriberContext().flatMap(context -> {
+      String consistencyToken = context.getOrDefault(ReadRouting.CONSISTENCY_TOKEN, null);
+      if (consistencyToken != null) {
+        return queryReservation(reservationId, consistencyToken, false);
+      }
+      //what a replica still has could outlive the eviction of a write in the cache
+      return reservationCache.getReservation(reservationId,
+          () -> queryReservation(reservationId, null, true));
+    });
+  }
+
+  /**
+   * Streams the reservations of the user as the store reads them, see
+   * {@link ReservationStore#forEachReservationOfUser}. With a consistency token, the reservations
+   * made up to its write are in.
+   */
+  public Flux<Reservation> getReservationsOfUser(String userEmail, LocalDate afterStart,
+      Long afterId, int limit) {
+    return Mono.subscriberContext().flatMapMany(context -> {
+      String consistencyToken = context.getOrDefault(ReadRouting.CONSISTENCY_TOKEN, null);
+      return Flux.<Reservation>create(sink -> sink.onDispose(blockingScheduler
+          .call("user-reservations", () -> ReadRouting.readingAfter(consistencyToken, () -> {
+            reservationStore.forEachReservationOfUser(userEmail, afterStart, afterId, limit,
+                sink::next);
+            return null;
+          }))
+          .subscribe(null, sink::error, sink::complete)));
+    });
+  }
+
+  /**
+   * @return CREATED with the id of the new reservation, or CONFLICT if its dates are taken
+   */
+  public ReservationOperationResult insertReservation(ReservationRequest reservationRequest) {
+    long siteId = Campsite.idOrDefault(reservationRequest.getSiteId());
+    DateInterval newDates = new DateInterval(reservationRequest.getStart(),
+        reservationRequest.getEnd());
+    if (reservationIntervalIndex.map(index -> index.isBooked(siteId, newDates)).orElse(false)) {
+      return conflict(null, newDates);
+    }
+    ReservationOperationResult result;
+    try {
+      result = reservationStore.insertReservationIfFree(reservationRequest);
+    } catch (DataIntegrityViolationException e) {
+      //lost a race the store couldn't see coming
+      return conflict(null, newDates);
+    }
+    if (result.isApplied()) {
+      eventPublisher.publishEvent(ReservationChangedEvent.builder()
+          .reservationId(result.getId())
+          .siteId(siteId)
+          .newDates(newDates)
+          .build());
+    }
+    return result;
+  }
+
+  /**
+   * @return MODIFIED, CONFLICT if the new dates are taken or NOT_FOUND
+   */
+  public ReservationOperationResult updateReservation(long reservationId,
+      ReservationModification modification) {
+    DateInterval newDates = new DateInterval(modification.getStart(), modification.getEnd());
+    if (reservationIntervalIndex.map(index -> index.isBookedForMove(reservationId, newDates))
+        .orElse(false)) {
+      return conflict(reservationId, newDates);
+    }
+    ReservationOperationResult result;
+    try {
+      result = reservationStore.updateReservationIfFree(reservationId, modification);
+    } catch (DataIntegrityViolationException e) {
+      //lost a race the store couldn't see coming
+      return conflict(reservationId, newDates);
+    }
+    if (result.isApplied()) {
+      eventPublisher.publishEvent(ReservationChangedEvent.builder()
+          .reservationId(reservationId)
+          .siteId(result.getSiteId())
+          .previousDates(result.getPreviousDates())
+          .newDates(newDates)
+          .build());
+    }
+    return result;
   }
 
   public void deleteReservation(long reservationId) {
-    reservationDAO.deleteReservation(reservationId);
+    reservationStore.deleteReservation(reservationId)
+        .ifPresent(previous -> eventPublisher.publishEvent(ReservationChangedEvent.builder()
+            .reservationId(reservationId)
+            .siteId(previous.getSiteId())
+            .previousDates(previous.getDateInterval())
+            .build()));
+  }
+
+  /**
+   * Applies the operations as a batch, falling back to one at a time if a concurrent write made the
+   * batch fail as a whole. Every operation that went through is published like a single write.
+   */
+  public List<ReservationOperationResult> applyOperations(List<ReservationOperation> operations) {
+    List<ReservationOperationResult> results;
+    try {
+      results = reservationStore.applyOperations(operations);
+    } catch (DataIntegrityViolationException e) {
+      results = operations.stream().map(this::applyOperation).collect(toList());
+    }
+    for (int i = 0; i < operations.size(); i++) {
+      ReservationOperation operation = operations.get(i);
+      ReservationOperationResult result = results.get(i);
+      if (result.isApplied()) {
+        eventPublisher.publishEvent(ReservationChangedEvent.builder()
+            .reservationId(result.getId())
+            .siteId(Campsite.idOrDefault(result.getSiteId()))
+            .previousDates(result.getPreviousDates())
+            .newDates(operation.getType() == Type.CANCEL ? null
+                : new DateInterval(operation.getStart(), operation.getEnd()))
+            .build());
+      }
+    }
+    return results;
+  }
+
+  private ReservationOperationResult applyOperation(ReservationOperation operation) {
+    try {
+      switch (operation.getType()) {
+        case CREATE:
+          return ReservationOperationResult.builder()
+              .status(Status.CREATED)
+              .id(reservationStore.insertReservation(operation.toReservationRequest()))
+              .siteId(Campsite.idOrDefault(operation.getSiteId()))
+              .build();
+        case MODIFY:
+          return applied(Status.MODIFIED, operation, reservationStore
+              .updateReservation(operation.getId(), operation.toReservationModification()));
+        case CANCEL:
+          return applied(Status.CANCELLED, operation,
+              reservationStore.deleteReservation(operation.getId()));
+        default:
+          throw new IllegalArgumentException("Unknown operation " + operation.getType());
+      }
+    } catch (DataIntegrityViolationException e) {
+      return conflict(operation.getId(),
+          new DateInterval(operation.getStart(), operation.getEnd()));
+    }
+  }
+
+  private static ReservationOperationResult conflict(Long reservationId, DateInterval dates) {
+    return ReservationOperationResult.builder()
+        .status(Status.CONFLICT)
+        .id(reservationId)
+        .message("The island is already booked somewhere between " + dates.getStart() +
+            " and " + dates.getEnd() + ".")
+        .build();
+  }
+
+  private static ReservationOperationResult applied(Status status, ReservationOperation operation,
+      Optional<Reservation> previous) {
+    return previous
+        .map(reservation -> ReservationOperationResult.builder()
+            .status(status)
+            .id(operation.getId())
+            .siteId(reservation.getSiteId())
+            .previousDates(reservation.getDateInterval())
+            .build())
+        .orElseGet(() -> ReservationOperationResult.builder()
+            .status(Status.NOT_FOUND)
+            .id(operation.getId())
+            .message("There is no reservation " + operation.getId() + ".")
+            .build());
+  }
+
+  /**
+   * A read with a consistency token in its context goes to the db, the index and the cache may
+   * not have heard of the write of the token yet.
+   */
+  private Mono<List<DateInterval>> getReservationDates(long siteId,
+      DateInterval requestedInterval) {
+    return Mono.subscriberContext().flatMap(context -> {
+      String consistencyToken = context.getOrDefault(ReadRouting.CONSISTENCY_TOKEN, null);
+      if (consistencyToken != null) {
+        return queryReservationDates(siteId, requestedInterval, consistencyToken, false);
+      }
+
+      //the occupancy index only covers the default site
+      Optional<List<DateInterval>> indexedIntervals = occupancyIndex
+          .filter(index -> siteId == Campsite.DEFAULT_ID)
+          .flatMap(index -> index.getOccupiedIntervals(requestedInterval));
+      if (indexedIntervals.isPresent()) {
+        return Mono.just(indexedIntervals.get());
+      }
+
+      //a lagging replica could put back in the cache the dates a write just evicted
+      return availabilityCache
+          .map(cache -> cache.getOccupiedIntervals(siteId, requestedInterval,
+              () -> queryReservationDates(siteId, requestedInterval, null, true)))
+          .orElseGet(() -> queryReservationDates(siteId, requestedInterval, null, false));
+    });
+  }
+
+  private boolean isStoreFreeRanges() {
+    return storeFreeRanges && occupancyIndex.isEmpty() && availabilityCache.isEmpty()
+        && reactiveReservationDAO.isEmpty();
+  }
+
+  private Mono<List<DateInterval>> queryAvailableIntervals(long siteId,
+      DateInterval requestedInterval) {
+    return Mono.subscriberContext().flatMap(context -> {
+      String consistencyToken = context.getOrDefault(ReadRouting.CONSISTENCY_TOKEN, null);
+      return blockingScheduler.call("availabilities",
+          () -> ReadRouting.readingAfter(consistencyToken,
+              () -> reservationStore.getAvailableIntervals(siteId, requestedInterval.getStart(),
+                  requestedInterval.getEnd())));
+    });
+  }
+
+  private Mono<Optional<Reservation>> queryReservation(long reservationId,
+      String consistencyToken, boolean onPrimary) {
+    return blockingScheduler.call("reservation", () -> {
+      Callable<Reservation> query = () -> reservationStore.getReservation(reservationId);
+      try {
+        return Optional.of(onPrimary ? ReadRouting.onPrimary(query)
+            : ReadRouting.readingAfter(consistencyToken, query));
+      } catch (EmptyResultDataAccessException e) {
+        return Optional.empty();
+      }
+    });
+  }
+
+  /**
+   * @param consistencyToken the write the db has to have seen, see {@link ReadRouting}
+   * @param onPrimary true to skip the replicas altogether
+   */
+  private Mono<List<DateInterval>> queryReservationDates(long siteId,
+      DateInterval requestedInterval, String consistencyToken, boolean onPrimary) {
+    LocalDate dateStart = requestedInterval.getStart();
+    LocalDate dateEnd = requestedInterval.getEnd();
+    return reactiveReservationDAO
+        .map(dao -> dao.getReservationDates(siteId, dateStart, dateEnd).collectList())
+        .orElseGet(() -> blockingScheduler.call("availabilities", () -> {
+          Callable<List<DateInterval>> query =
+              () -> reservationStore.getReservationDates(siteId, dateStart, dateEnd);
+          return onPrimary ? ReadRouting.onPrimary(query)
+              : ReadRouting.readingAfter(consistencyToken, query);
+        }));
   }
 }
@@ -0,0 +1,196 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static java.time.LocalDate.now;
+import static java.time.temporal.ChronoUnit.DAYS;
+import static java.util.stream.Collectors.toList;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.repository.CampsiteStore;
+import com.upgrade.islandrsvsrv.repository.ReservationStore;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+
+/**
+ * One bitmap per campsite, one bit per day from today up to the horizon, so "which sites are free
+ * for these dates" is answered by OR-ing the words covering the dates, 64 days at a time, instead
+ * of querying every site. Large inventories are scanned in parallel.
+ *
+ * <p>Like the {@link OccupancyIndex}, a published bitmap is never modified and reads don't lock.
+ * Changes only come from the change feed, writes of this node included, so they are applied in
+ * the order they were committed. The periodic refresh picks up new campsites and rolls the window
+ * forward.
+ */
+@Service
+@ConditionalOnProperty(name = "island.availability.site-index.enabled", havingValue = "true")
+public class SiteOccupancyIndex {
+
+  private static final int PARALLEL_THRESHOLD = 4096;
+
+  private final ReservationStore reservationStore;
+
+  private final CampsiteStore campsiteStore;
+
+  private final AvailabilityChangeFeed availabilityChangeFeed;
+
+  private final int horizonDays;
+
+  private volatile Occupancy occupancy;
+
+  private Disposable feedSubscription;
+
+  public SiteOccupancyIndex(ReservationStore reservationStore, CampsiteStore campsiteStore,
+      AvailabilityChangeFeed availabilityChangeFeed,
+      @Value("${island.availability.site-index.horizon-days:366}") int horizonDays) {
+    this.reservationStore = reservationStore;
+    this.campsiteStore = campsiteStore;
+    this.availabilityChangeFeed = availabilityChangeFeed;
+    this.horizonDays = horizonDays;
+  }
+
+  @PostConstruct
+  public void start() {
+    refresh();
+    feedSubscription = availabilityChangeFeed.subscribe("occupancy index", this::apply);
+  }
+
+  @PreDestroy
+  public void stop() {
+    feedSubscription.dispose();
+  }
+
+  @Scheduled(cron = "${island.availability.site-index.roll-cron:0 0 0 * * *}")
+  @Scheduled(fixedDelayString = "${island.availability.site-index.refresh-interval:PT5M}",
+      initialDelayString = "${island.availability.site-index.refresh-interval:PT5M}")
+  public synchronized void refresh() {
+    LocalDate today = now();
+    long[] siteIds = campsiteStore.getCampsites().stream()
+        .mapToLong(Campsite::getId)
+        .sorted()
+        .toArray();
+    long[][] days = new long[siteIds.length][words()];
+    Occupancy loaded = new Occupancy(today, siteIds, days);
+    reservationStore.getReservations(today, today.plus(horizonDays, DAYS))
+        .forEach(reservation -> {
+          int site = Arrays.binarySearch(siteIds, reservation.getSiteId());
+          if (site >= 0) {
+            mark(days[site], today, reservation.getDateInterval(), true);
+          }
+        });
+    occupancy = loaded;
+  }
+
+  private synchronized void apply(ReservationChangedEvent event) {
+    Occupancy current = occupancy;
+    int site = Arrays.binarySearch(current.siteIds, event.getSiteId());
+    if (site < 0) {
+      //a site created since the last refresh
+      current = current.withSite(-site - 1, event.getSiteId(), new long[words()]);
+      site = -site - 1;
+    }
+    long[] siteDays = current.days[site].clone();
+    if (event.getPreviousDates() != null) {
+      mark(siteDays, current.start, event.getPreviousDates(), false);
+    }
+    if (event.getNewDates() != null) {
+      mark(siteDays, current.start, event.getNewDates(), true);
+    }
+    long[][] days = current.days.clone();
+    days[site] = siteDays;
+    occupancy = new Occupancy(current.start, current.siteIds, days);
+  }
+
+  /**
+   * @return the ids of the sites without any reservation overlapping the requested interval, in
+   * order, or nothing if the requested interval isn't completely covered by the index.
+   */
+  public Optional<List<Long>> getFreeSites(DateInterval requestedInterval) {
+    Occupancy current = occupancy;
+    long from = DAYS.between(current.start, requestedInterval.getStart());
+    long to = DAYS.between(current.start, requestedInterval.getEnd());
+    if (from < 0 || to > horizonDays) {
+      return Optional.empty();
+    }
+
+    IntStream sites = IntStream.range(0, current.siteIds.length);
+    if (current.siteIds.length >= PARALLEL_THRESHOLD) {
+      sites = sites.parallel();
+    }
+    return Optional.of(sites
+        .filter(site -> isFree(current.days[site], (int) from, (int) to))
+        .mapToObj(site -> current.siteIds[site])
+        .collect(toList()));
+  }
+
+  /**
+   * @return true if none of the bits in [from,to) is set
+   */
+  static boolean isFree(long[] days, int from, int to) {
+    if (from >= to) {
+      return true;
+    }
+    int firstWord = from >>> 6;
+    int lastWord = (to - 1) >>> 6;
+    // shifts only use the low 6 bits: the first mask keeps bits from 'from' up, the last one
+    // keeps bits below 'to'
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (firstWord == lastWord) {
+      return (days[firstWord] & firstMask & lastMask) == 0;
+    }
+    long occupied = days[firstWord] & firstMask;
+    for (int word = firstWord + 1; word < lastWord; word++) {
+      occupied |= days[word];
+    }
+    occupied |= days[lastWord] & lastMask;
+    return occupied == 0;
+  }
+
+  private int words() {
+    return (horizonDays + 63) >>> 6;
+  }
+
+  private void mark(long[] days, LocalDate start, DateInterval interval, boolean occupied) {
+    long from = Math.max(0, DAYS.between(start, interval.getStart()));
+    long to = Math.min(horizonDays, DAYS.between(start, interval.getEnd()));
+    for (int day = (int) from; day < to; day++) {
+      if (occupied) {
+        days[day >>> 6] |= 1L << day;
+      } else {
+        days[day >>> 6] &= ~(1L << day);
+      }
+    }
+  }
+
+  @AllArgsConstructor
+  private static class Occupancy {
+
+    private final LocalDate start;
+    private final long[] siteIds;
+    private final long[][] days;
+
+    Occupancy withSite(int position, long siteId, long[] siteDays) {
+      long[] newSiteIds = new long[siteIds.length + 1];
+      long[][] newDays = new long[days.length + 1][];
+      System.arraycopy(siteIds, 0, newSiteIds, 0, position);
+      System.arraycopy(days, 0, newDays, 0, position);
+      newSiteIds[position] = siteId;
+      newDays[position] = siteDays;
+      System.arraycopy(siteIds, position, newSiteIds, position + 1, siteIds.length - position);
+      System.arraycopy(days, position, newDays, position + 1, days.length - position);
+      return new Occupancy(start, newSiteIds, newDays);
+    }
+  }
+}
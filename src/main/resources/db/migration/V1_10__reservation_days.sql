@@ -0,0 +1,85 @@
+-- a row per site and day booked, written by a trigger in the transaction of every write to
+-- camping_reservation. Two stays of a site sharing a day now also break the primary key, and the
+-- booked days of a period are a scan of the primary key alone, see
+-- island.reservation.day-table.enabled.
+CREATE TABLE reservation_day
+(
+    site_id        BIGINT NOT NULL,
+    day            DATE   NOT NULL,
+    reservation_id BIGINT NOT NULL,
+    PRIMARY KEY (site_id, day)
+);
+
+-- a move to another partition fires a delete then an insert, a move within one an update
+CREATE FUNCTION sync_reservation_days()
+    RETURNS trigger
+AS
+$$
+BEGIN
+    IF TG_OP <> 'INSERT' THEN
+        DELETE
+        FROM reservation_day
+        WHERE site_id = OLD.site_id
+          AND day >= lower(OLD.reservation_dates)
+          AND day < upper(OLD.reservation_dates)
+          AND reservation_id = OLD.id;
+    END IF;
+    IF TG_OP <> 'DELETE' THEN
+        INSERT INTO reservation_day(site_id, day, reservation_id)
+        SELECT NEW.site_id, day::date, NEW.id
+        FROM generate_series(lower(NEW.reservation_dates), upper(NEW.reservation_dates) - 1,
+                             interval '1 day') day;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER reservation_day_sync
+    AFTER INSERT OR UPDATE OF reservation_dates, site_id OR DELETE
+    ON camping_reservation
+    FOR EACH ROW
+EXECUTE PROCEDURE sync_reservation_days();
+
+INSERT INTO reservation_day(site_id, day, reservation_id)
+SELECT site_id, day::date, id
+FROM camping_reservation,
+     generate_series(lower(reservation_dates), upper(reservation_dates) - 1,
+                     interval '1 day') day;
+
+-- same as in V1_8, the days of an archived month go with it. The moves out of the default
+-- partition happen while it's detached, so they leave the days alone as they should.
+CREATE OR REPLACE FUNCTION archive_reservation_partitions(before date)
+    RETURNS integer
+AS
+$$
+DECLARE
+    partition text;
+    running   boolean;
+    archived  integer := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('camping_reservation_partitions'));
+    FOR partition IN SELECT c.relname
+                     FROM pg_inherits i
+                              JOIN pg_class c ON c.oid = i.inhrelid
+                     WHERE i.inhparent = 'camping_reservation'::regclass
+                       AND c.relname ~ '^camping_reservation_\d{4}_\d{2}$'
+                       AND to_date(right(c.relname, 7), 'YYYY_MM') < before
+                     ORDER BY c.relname
+        LOOP
+            -- a stay starting at the end of the month can end in the next one
+            EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE upper(reservation_dates) > $1)',
+                           partition) INTO running USING before;
+            EXIT WHEN running;
+            EXECUTE format('ALTER TABLE camping_reservation DETACH PARTITION %I', partition);
+            EXECUTE format('INSERT INTO camping_reservation_archive ' ||
+                           'SELECT * FROM %I ORDER BY lower(reservation_dates)', partition);
+            EXECUTE format('DELETE FROM reservation_day d USING %I r ' ||
+                           'WHERE d.site_id = r.site_id AND d.reservation_id = r.id ' ||
+                           'AND d.day >= lower(r.reservation_dates) ' ||
+                           'AND d.day < upper(r.reservation_dates)', partition);
+            EXECUTE format('DROP TABLE %I', partition);
+            archived := archived + 1;
+        END LOOP;
+    RETURN archived;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,58 @@
+-- reservation_day is only kept while island.reservation.day-table.enabled is set somewhere: the
+-- trigger costs every write, whether the days are read or not. A node with the flag installs it
+-- on startup with enable_reservation_days(), and it stays until disable_reservation_days() is run
+-- once no node reads the days anymore.
+DROP TRIGGER reservation_day_sync ON camping_reservation;
+
+TRUNCATE reservation_day;
+
+-- writes wait while the days are filled in, so that none is missed
+CREATE FUNCTION enable_reservation_days()
+    RETURNS boolean
+AS
+$$
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('reservation_day'));
+    IF reservation_days_enabled() THEN
+        RETURN false;
+    END IF;
+    LOCK TABLE camping_reservation IN SHARE ROW EXCLUSIVE MODE;
+    TRUNCATE reservation_day;
+    CREATE TRIGGER reservation_day_sync
+        AFTER INSERT OR UPDATE OF reservation_dates, site_id OR DELETE
+        ON camping_reservation
+        FOR EACH ROW
+    EXECUTE PROCEDURE sync_reservation_days();
+    INSERT INTO reservation_day(site_id, day, reservation_id)
+    SELECT site_id, day::date, id
+    FROM camping_reservation,
+         generate_series(lower(reservation_dates), upper(reservation_dates) - 1,
+                         interval '1 day') day;
+    RETURN true;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION disable_reservation_days()
+    RETURNS boolean
+AS
+$$
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('reservation_day'));
+    IF NOT reservation_days_enabled() THEN
+        RETURN false;
+    END IF;
+    DROP TRIGGER reservation_day_sync ON camping_reservation;
+    TRUNCATE reservation_day;
+    RETURN true;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION reservation_days_enabled()
+    RETURNS boolean
+AS
+$$
+SELECT EXISTS(SELECT 1
+              FROM pg_trigger
+              WHERE tgrelid = 'camping_reservation'::regclass
+                AND tgname = 'reservation_day_sync')
+$$ LANGUAGE sql;
@@ -0,0 +1,18 @@
+-- same free ranges as in V1_8, also bounded below on the partition key: no stay is longer than
+-- 3 nights, so the ones overlapping the period start at the earliest 3 days before it, and only
+-- the partitions of the months around the period are searched.
+CREATE OR REPLACE FUNCTION get_available_periods(site bigint, period daterange)
+    RETURNS TABLE
+            (
+                available_dates daterange
+            )
+AS
+$$
+SELECT unnest(datemultirange(period) -
+              coalesce(range_agg(reservation_dates), '{}'::datemultirange))
+FROM camping_reservation
+WHERE site_id = site
+  AND reservation_dates && period
+  AND lower(reservation_dates) < upper(period)
+  AND lower(reservation_dates) >= lower(period) - 3
+$$ LANGUAGE SQL STABLE;
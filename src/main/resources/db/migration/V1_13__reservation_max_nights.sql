@@ -0,0 +1,71 @@
+-- the queries look for the stays overlapping a period from 3 days before it on, which only holds
+-- if no stay is longer than 3 nights. The controller used to let longer ones through, and rows
+-- can be written by hand, so the longer stays are split into stays of 3 nights at most for the
+-- same camper and site, and a check keeps new ones out.
+CREATE TEMPORARY TABLE long_stay AS
+SELECT id, site_id, user_name, user_email, reservation_dates
+FROM camping_reservation
+WHERE upper(reservation_dates) - lower(reservation_dates) > 3;
+
+-- shortened first, so that the rest of the stay doesn't overlap it once inserted
+UPDATE camping_reservation
+SET reservation_dates = daterange(lower(reservation_dates), lower(reservation_dates) + 3)
+WHERE id IN (SELECT id FROM long_stay);
+
+INSERT INTO camping_reservation(site_id, user_name, user_email, reservation_dates)
+SELECT site_id, user_name, user_email,
+       daterange(day::date, least(day::date + 3, upper(reservation_dates)))
+FROM long_stay,
+     generate_series(lower(reservation_dates) + 3, upper(reservation_dates) - 1,
+                     interval '3 days') day;
+
+DROP TABLE long_stay;
+
+ALTER TABLE camping_reservation
+    ADD CONSTRAINT camping_reservation_max_nights
+        CHECK (upper(reservation_dates) - lower(reservation_dates) <= 3);
+
+-- same as in V1_8, but the new partitions take the check along, as attaching them requires
+CREATE OR REPLACE FUNCTION create_reservation_partitions(since date, through date)
+    RETURNS integer
+AS
+$$
+DECLARE
+    month     date;
+    partition text;
+    created   integer := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('camping_reservation_partitions'));
+    FOR month IN SELECT generate_series(date_trunc('month', since), through,
+                                        interval '1 month')::date
+        LOOP
+            partition := 'camping_reservation_' || to_char(month, 'YYYY_MM');
+            CONTINUE WHEN to_regclass(partition) IS NOT NULL;
+            EXECUTE format('CREATE TABLE %I (LIKE camping_reservation INCLUDING DEFAULTS ' ||
+                           'INCLUDING CONSTRAINTS)', partition);
+            EXECUTE format('ALTER TABLE %I ADD PRIMARY KEY (id), ' ||
+                           'ADD CONSTRAINT %I EXCLUDE USING gist ' ||
+                           '(site_id WITH =, reservation_dates WITH &&)',
+                           partition, partition || '_site_dates_excl');
+            IF EXISTS(SELECT 1
+                      FROM camping_reservation_default
+                      WHERE lower(reservation_dates) >= month
+                        AND lower(reservation_dates) < month + interval '1 month') THEN
+                -- detached, the default partition doesn't notify the moves as cancellations
+                ALTER TABLE camping_reservation DETACH PARTITION camping_reservation_default;
+                EXECUTE format('WITH moved AS (DELETE FROM camping_reservation_default ' ||
+                               'WHERE lower(reservation_dates) >= $1 ' ||
+                               'AND lower(reservation_dates) < $2 RETURNING *) ' ||
+                               'INSERT INTO %I SELECT * FROM moved', partition)
+                    USING month, month + interval '1 month';
+                ALTER TABLE camping_reservation
+                    ATTACH PARTITION camping_reservation_default DEFAULT;
+            END IF;
+            EXECUTE format('ALTER TABLE camping_reservation ATTACH PARTITION %I ' ||
+                           'FOR VALUES FROM (%L) TO (%L)',
+                           partition, month, month + interval '1 month');
+            created := created + 1;
+        END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
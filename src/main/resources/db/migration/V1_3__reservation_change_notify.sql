@@ -0,0 +1,27 @@
+-- lets every app node know about reservation changes made by any other node. Notifications are only
+-- delivered once the transaction commits, so a booking rejected by the exclusion constraint never shows up.
+CREATE OR REPLACE FUNCTION notify_reservation_change()
+    RETURNS trigger
+AS
+$$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('current', NEW.reservation_dates::text)::text);
+    ELSIF TG_OP = 'UPDATE' THEN
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('previous', OLD.reservation_dates::text,
+                                            'current', NEW.reservation_dates::text)::text);
+    ELSE
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('previous', OLD.reservation_dates::text)::text);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER reservation_change_notify
+    AFTER INSERT OR UPDATE OF reservation_dates OR DELETE
+    ON camping_reservation
+    FOR EACH ROW
+EXECUTE PROCEDURE notify_reservation_change();
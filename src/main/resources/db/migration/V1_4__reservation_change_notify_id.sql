@@ -0,0 +1,23 @@
+-- same notification as before, with the id of the reservation so nodes can tell which one changed.
+CREATE OR REPLACE FUNCTION notify_reservation_change()
+    RETURNS trigger
+AS
+$$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('id', NEW.id,
+                                            'current', NEW.reservation_dates::text)::text);
+    ELSIF TG_OP = 'UPDATE' THEN
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('id', NEW.id,
+                                            'previous', OLD.reservation_dates::text,
+                                            'current', NEW.reservation_dates::text)::text);
+    ELSE
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('id', OLD.id,
+                                            'previous', OLD.reservation_dates::text)::text);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
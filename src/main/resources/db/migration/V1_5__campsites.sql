@@ -0,0 +1,47 @@
+-- the island now has several campsites, each one booked independently from the others. The one
+-- campsite we had until now becomes site 1, which is also where reservations go without a site.
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
+CREATE TABLE campsite
+(
+    id   BIGSERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+INSERT INTO campsite(id, name)
+VALUES (1, 'The island');
+SELECT setval(pg_get_serial_sequence('campsite', 'id'), 1);
+
+ALTER TABLE camping_reservation
+    ADD COLUMN site_id BIGINT NOT NULL DEFAULT 1 REFERENCES campsite (id);
+
+-- reservations only exclude each other on the same site. The gist index backing the constraint
+-- also serves the lookups by site and dates, and by dates alone, so reservation_idx goes away.
+ALTER TABLE camping_reservation
+    DROP CONSTRAINT camping_reservation_reservation_dates_excl,
+    ADD CONSTRAINT camping_reservation_site_dates_excl
+        EXCLUDE USING gist (site_id WITH =, reservation_dates WITH &&);
+DROP INDEX reservation_idx;
+
+CREATE OR REPLACE FUNCTION notify_reservation_change()
+    RETURNS trigger
+AS
+$$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('id', NEW.id, 'site', NEW.site_id,
+                                            'current', NEW.reservation_dates::text)::text);
+    ELSIF TG_OP = 'UPDATE' THEN
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('id', NEW.id, 'site', NEW.site_id,
+                                            'previous', OLD.reservation_dates::text,
+                                            'current', NEW.reservation_dates::text)::text);
+    ELSE
+        PERFORM pg_notify('reservation_changes',
+                          json_build_object('id', OLD.id, 'site', OLD.site_id,
+                                            'previous', OLD.reservation_dates::text)::text);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
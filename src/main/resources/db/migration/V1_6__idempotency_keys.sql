@@ -0,0 +1,13 @@
+-- the first outcome of a request sent with an Idempotency-Key header, replayed to the retries of
+-- the same request until the key expires. The status stays null while the first request is
+-- being processed.
+CREATE TABLE idempotency_key
+(
+    idempotency_key VARCHAR(255) PRIMARY KEY,
+    request_hash    CHAR(32)    NOT NULL,
+    status          INTEGER,
+    body            TEXT,
+    created_at      TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+CREATE INDEX idempotency_key_created_at_idx ON idempotency_key (created_at);
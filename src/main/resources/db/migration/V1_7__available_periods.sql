@@ -0,0 +1,20 @@
+-- get_available_periods walked the calendar recursively, self-joined every step of it, and still
+-- returned a reservation matching the requested dates exactly as available, so the app never
+-- used it. The free ranges of a site are simply the requested range minus the union of its
+-- reservations overlapping it: range_agg builds that union in a single pass over the rows the
+-- gist index of the exclusion constraint finds, and unnest hands the gaps back in order.
+DROP FUNCTION IF EXISTS get_available_periods(daterange);
+
+CREATE FUNCTION get_available_periods(site bigint, period daterange)
+    RETURNS TABLE
+            (
+                available_dates daterange
+            )
+AS
+$$
+SELECT unnest(datemultirange(period) -
+              coalesce(range_agg(reservation_dates), '{}'::datemultirange))
+FROM camping_reservation
+WHERE site_id = site
+  AND reservation_dates && period
+$$ LANGUAGE SQL STABLE;
@@ -0,0 +1,187 @@
+-- camping_reservation is partitioned by the month stays start in, so that the exclusion checks and
+-- the range scans only go through a few small partitions, and the months long past are moved out
+-- to camping_reservation_archive. There is no primary key or exclusion constraint across the
+-- partitions: each partition has its own, and a trigger covers the stays crossing into another
+-- month. Bookings made beyond the monthly partitions go to the default one until their month gets
+-- its own partition.
+ALTER TABLE camping_reservation
+    RENAME TO camping_reservation_unpartitioned;
+
+CREATE TABLE camping_reservation
+(
+    id                BIGINT       NOT NULL DEFAULT nextval('camping_reservation_id_seq'),
+    user_name         VARCHAR(255) NOT NULL,
+    user_email        VARCHAR(255) NOT NULL,
+    reservation_dates daterange    NOT NULL,
+    site_id           BIGINT       NOT NULL DEFAULT 1 REFERENCES campsite (id)
+) PARTITION BY RANGE (lower(reservation_dates));
+
+ALTER SEQUENCE camping_reservation_id_seq OWNED BY camping_reservation.id;
+
+CREATE TABLE camping_reservation_default PARTITION OF camping_reservation DEFAULT;
+ALTER TABLE camping_reservation_default
+    ADD PRIMARY KEY (id);
+
+-- the past stays, for reporting only. They are appended a month at a time in date order, which
+-- is what a BRIN index needs to stay small and selective.
+CREATE TABLE camping_reservation_archive
+(
+    LIKE camping_reservation
+);
+CREATE INDEX camping_reservation_archive_dates_idx ON camping_reservation_archive
+    USING brin (reservation_dates);
+
+-- creates the monthly partitions missing between the months of the given dates, moving over the
+-- bookings the default partition holds for them.
+CREATE FUNCTION create_reservation_partitions(since date, through date)
+    RETURNS integer
+AS
+$$
+DECLARE
+    month     date;
+    partition text;
+    created   integer := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('camping_reservation_partitions'));
+    FOR month IN SELECT generate_series(date_trunc('month', since), through,
+                                        interval '1 month')::date
+        LOOP
+            partition := 'camping_reservation_' || to_char(month, 'YYYY_MM');
+            CONTINUE WHEN to_regclass(partition) IS NOT NULL;
+            EXECUTE format('CREATE TABLE %I (LIKE camping_reservation INCLUDING DEFAULTS)',
+                           partition);
+            EXECUTE format('ALTER TABLE %I ADD PRIMARY KEY (id), ' ||
+                           'ADD CONSTRAINT %I EXCLUDE USING gist ' ||
+                           '(site_id WITH =, reservation_dates WITH &&)',
+                           partition, partition || '_site_dates_excl');
+            IF EXISTS(SELECT 1
+                      FROM camping_reservation_default
+                      WHERE lower(reservation_dates) >= month
+                        AND lower(reservation_dates) < month + interval '1 month') THEN
+                -- detached, the default partition doesn't notify the moves as cancellations
+                ALTER TABLE camping_reservation DETACH PARTITION camping_reservation_default;
+                EXECUTE format('WITH moved AS (DELETE FROM camping_reservation_default ' ||
+                               'WHERE lower(reservation_dates) >= $1 ' ||
+                               'AND lower(reservation_dates) < $2 RETURNING *) ' ||
+                               'INSERT INTO %I SELECT * FROM moved', partition)
+                    USING month, month + interval '1 month';
+                ALTER TABLE camping_reservation
+                    ATTACH PARTITION camping_reservation_default DEFAULT;
+            END IF;
+            EXECUTE format('ALTER TABLE camping_reservation ATTACH PARTITION %I ' ||
+                           'FOR VALUES FROM (%L) TO (%L)',
+                           partition, month, month + interval '1 month');
+            created := created + 1;
+        END LOOP;
+    RETURN created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- moves the monthly partitions whose stays all ended before the given date to the archive.
+CREATE FUNCTION archive_reservation_partitions(before date)
+    RETURNS integer
+AS
+$$
+DECLARE
+    partition text;
+    running   boolean;
+    archived  integer := 0;
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('camping_reservation_partitions'));
+    FOR partition IN SELECT c.relname
+                     FROM pg_inherits i
+                              JOIN pg_class c ON c.oid = i.inhrelid
+                     WHERE i.inhparent = 'camping_reservation'::regclass
+                       AND c.relname ~ '^camping_reservation_\d{4}_\d{2}$'
+                       AND to_date(right(c.relname, 7), 'YYYY_MM') < before
+                     ORDER BY c.relname
+        LOOP
+            -- a stay starting at the end of the month can end in the next one
+            EXECUTE format('SELECT EXISTS (SELECT 1 FROM %I WHERE upper(reservation_dates) > $1)',
+                           partition) INTO running USING before;
+            EXIT WHEN running;
+            EXECUTE format('ALTER TABLE camping_reservation DETACH PARTITION %I', partition);
+            EXECUTE format('INSERT INTO camping_reservation_archive ' ||
+                           'SELECT * FROM %I ORDER BY lower(reservation_dates)', partition);
+            EXECUTE format('DROP TABLE %I', partition);
+            archived := archived + 1;
+        END LOOP;
+    RETURN archived;
+END;
+$$ LANGUAGE plpgsql;
+
+-- the months of the existing stays get their partition, whatever their age, and are archived
+-- by the app like any other.
+SELECT create_reservation_partitions(
+               least(current_date, (SELECT min(lower(reservation_dates))
+                                    FROM camping_reservation_unpartitioned)),
+               (current_date + interval '3 months')::date);
+
+INSERT INTO camping_reservation
+SELECT *
+FROM camping_reservation_unpartitioned;
+DROP TABLE camping_reservation_unpartitioned;
+
+-- the default partition takes over the name of the constraint now it's free
+ALTER TABLE camping_reservation_default
+    ADD CONSTRAINT camping_reservation_site_dates_excl
+        EXCLUDE USING gist (site_id WITH =, reservation_dates WITH &&);
+
+-- a stay only conflicts with the stays of its partition as far as the exclusion constraints go.
+-- Every write locks the months its stay covers on its site, so two writes that could conflict
+-- across months wait for each other, and the second one sees the first.
+CREATE FUNCTION check_reservation_across_months()
+    RETURNS trigger
+AS
+$$
+BEGIN
+    PERFORM pg_advisory_xact_lock(NEW.site_id::integer,
+                                  (extract(YEAR FROM month) * 12 +
+                                   extract(MONTH FROM month))::integer)
+    FROM generate_series(date_trunc('month', lower(NEW.reservation_dates)),
+                         upper(NEW.reservation_dates) - 1, interval '1 month') month
+    ORDER BY month;
+    IF EXISTS(SELECT 1
+              FROM camping_reservation
+              WHERE site_id = NEW.site_id
+                AND reservation_dates && NEW.reservation_dates
+                AND lower(reservation_dates) < upper(NEW.reservation_dates)
+                AND date_trunc('month', lower(reservation_dates)) <>
+                    date_trunc('month', lower(NEW.reservation_dates))
+                AND id <> NEW.id) THEN
+        RAISE EXCEPTION 'The stay % conflicts with another one on site %',
+            NEW.reservation_dates, NEW.site_id
+            USING ERRCODE = 'exclusion_violation';
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER reservation_check_across_months
+    BEFORE INSERT OR UPDATE OF reservation_dates, site_id
+    ON camping_reservation
+    FOR EACH ROW
+EXECUTE PROCEDURE check_reservation_across_months();
+
+CREATE TRIGGER reservation_change_notify
+    AFTER INSERT OR UPDATE OF reservation_dates OR DELETE
+    ON camping_reservation
+    FOR EACH ROW
+EXECUTE PROCEDURE notify_reservation_change();
+
+-- same free ranges as in V1_7, bounded on the partition key so only the partitions of the stays
+-- starting before the end of the period are searched.
+CREATE OR REPLACE FUNCTION get_available_periods(site bigint, period daterange)
+    RETURNS TABLE
+            (
+                available_dates daterange
+            )
+AS
+$$
+SELECT unnest(datemultirange(period) -
+              coalesce(range_agg(reservation_dates), '{}'::datemultirange))
+FROM camping_reservation
+WHERE site_id = site
+  AND reservation_dates && period
+  AND lower(reservation_dates) < upper(period)
+$$ LANGUAGE SQL STABLE;
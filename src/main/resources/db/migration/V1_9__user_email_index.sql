@@ -0,0 +1,4 @@
+-- the reservations of a user by stay start, as they are listed, a page at a time. Created on every
+-- partition, and on the ones to come when they are attached.
+CREATE INDEX camping_reservation_user_email_idx
+    ON camping_reservation (user_email, lower(reservation_dates), id);
@@ -0,0 +1,10 @@
+-- range_agg and the multiranges of V1_7 and V1_8 came with PostgreSQL 14, say so before a
+-- migration fails half way on an older server.
+DO
+$$
+    BEGIN
+        IF current_setting('server_version_num')::integer < 140000 THEN
+            RAISE EXCEPTION 'PostgreSQL 14 or later is required, this is %', version();
+        END IF;
+    END
+$$;
@@ -0,0 +1,177 @@
+package com.upgrade.islandrsvsrv.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.upgrade.islandrsvsrv.repository.ReadRouting;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplicaRoutingDataSourceTest {
+
+  private final DataSource primary = mock(DataSource.class);
+  private final DataSource replica = mock(DataSource.class);
+  private final DataSource otherReplica = mock(DataSource.class);
+  private ReplicaRoutingDataSource dataSource;
+
+  @Before
+  public void setUp() {
+    dataSource = new ReplicaRoutingDataSource(primary, List.of(replica, otherReplica),
+        Duration.ofSeconds(1));
+  }
+
+  @After
+  public void tearDown() {
+    dataSource.destroy();
+  }
+
+  @Test
+  public void testOnlyMarkedReadsGoToTheReplicas() throws Exception {
+    //given
+    replaying(replica, "0/3000000");
+    replaying(otherReplica, "0/3000000");
+    dataSource.checkReplicas();
+
+    //when
+    Object writeKey = dataSource.determineCurrentLookupKey();
+    Object readKey = ReadRouting.onReplica(dataSource::determineCurrentLookupKey);
+
+    //then
+    assertThat(writeKey).isEqualTo("primary");
+    assertThat(readKey).isIn(0, 1);
+  }
+
+  @Test
+  public void testReadsTakeTurnsOnTheReplicas() throws Exception {
+    //given
+    replaying(replica, "0/3000000");
+    replaying(otherReplica, "0/3000000");
+    dataSource.checkReplicas();
+
+    //when
+    Object firstKey = ReadRouting.onReplica(dataSource::determineCurrentLookupKey);
+    Object secondKey = ReadRouting.onReplica(dataSource::determineCurrentLookupKey);
+
+    //then
+    assertThat(List.of(firstKey, secondKey)).containsExactlyInAnyOrder(0, 1);
+  }
+
+  @Test
+  public void testReadWithATokenOnlyGoesToAReplicaThatReplayedIt() throws Exception {
+    //given
+    replaying(replica, "0/2FFFFFF");
+    replaying(otherReplica, "0/3000000");
+    dataSource.checkReplicas();
+
+    //when
+    Object firstKey = ReadRouting.readingAfter("0/3000000",
+        () -> ReadRouting.onReplica(dataSource::determineCurrentLookupKey));
+    Object secondKey = ReadRouting.readingAfter("0/3000000",
+        () -> ReadRouting.onReplica(dataSource::determineCurrentLookupKey));
+
+    //then
+    assertThat(firstKey).isEqualTo(1);
+    assertThat(secondKey).isEqualTo(1);
+  }
+
+  @Test
+  public void testReadWithATokenNoReplicaReplayedGoesToThePrimary() throws Exception {
+    //given
+    replaying(replica, "0/3000000");
+    replaying(otherReplica, "0/3000000");
+    dataSource.checkReplicas();
+
+    //when
+    Object key = ReadRouting.readingAfter("1/0",
+        () -> ReadRouting.onReplica(dataSource::determineCurrentLookupKey));
+
+    //then
+    assertThat(key).isEqualTo("primary");
+  }
+
+  @Test
+  public void testReadsOnPrimarySkipTheReplicas() throws Exception {
+    //given
+    replaying(replica, "0/3000000");
+    replaying(otherReplica, "0/3000000");
+    dataSource.checkReplicas();
+
+    //when
+    Object key = ReadRouting.onPrimary(
+        () -> ReadRouting.onReplica(dataSource::determineCurrentLookupKey));
+
+    //then
+    assertThat(key).isEqualTo("primary");
+  }
+
+  @Test
+  public void testUnreachableOrPromotedReplicasAreLeftOut() throws Exception {
+    //given
+    when(replica.getConnection()).thenThrow(new SQLException("Connection refused"));
+    replaying(otherReplica, null);
+
+    //when
+    dataSource.checkReplicas();
+
+    //then
+    assertThat(dataSource.getReplayedLsn(0)).isEqualTo(-1);
+    assertThat(dataSource.getReplayedLsn(1)).isEqualTo(-1);
+    assertThat(ReadRouting.onReplica(dataSource::determineCurrentLookupKey))
+        .isEqualTo("primary");
+  }
+
+  @Test
+  public void testReplicasAreCheckedWithoutWaitingForEachOther() throws Exception {
+    //given
+    CountDownLatch release = new CountDownLatch(1);
+    when(replica.getConnection()).thenAnswer(invocation -> {
+      release.await(5, TimeUnit.SECONDS);
+      throw new SQLException("Connection timed out");
+    });
+    replaying(otherReplica, "0/3000000");
+
+    //when
+    CompletableFuture<Void> check = CompletableFuture.runAsync(dataSource::checkReplicas);
+
+    //then
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (dataSource.getReplayedLsn(1) == -1 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(dataSource.getReplayedLsn(1)).isEqualTo(ReadRouting.parseLsn("0/3000000"));
+    assertThat(check).isNotDone();
+    release.countDown();
+    check.get(5, TimeUnit.SECONDS);
+  }
+
+  /**
+   * @param lsn what pg_last_wal_replay_lsn() returns, null when not in recovery
+   */
+  private static void replaying(DataSource replica, String lsn) throws SQLException {
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    ResultSet resultSet = mock(ResultSet.class);
+    ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+    when(replica.getConnection()).thenReturn(connection);
+    when(connection.createStatement()).thenReturn(statement);
+    when(statement.executeQuery(anyString())).thenReturn(resultSet);
+    when(resultSet.next()).thenReturn(true, false);
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(metaData.getColumnCount()).thenReturn(1);
+    when(resultSet.getString(1)).thenReturn(lsn);
+  }
+}
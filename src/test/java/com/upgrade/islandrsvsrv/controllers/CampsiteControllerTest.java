@@ -4,16 +4,24 @@ package com.upgrade.islandrsvsrv.controllers;
 import static java.time.LocalDate.now;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.services.AvailabilityChangeFeed;
+import com.upgrade.islandrsvsrv.services.CampsiteService;
 import com.upgrade.islandrsvsrv.services.ReservationService;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -21,8 +29,10 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -36,11 +46,18 @@ public class CampsiteControllerTest {
   @Mock
   private ReservationService reservationService;
 
+  @Mock
+  private CampsiteService campsiteService;
+
+  private AvailabilityChangeFeed availabilityChangeFeed;
+
   private CampsiteController campsiteController;
 
   @Before
   public void setUp() {
-    campsiteController = new CampsiteController(reservationService);
+    availabilityChangeFeed = new AvailabilityChangeFeed(16);
+    campsiteController = new CampsiteController(reservationService, availabilityChangeFeed,
+        campsiteService);
   }
 
   @Test
@@ -52,12 +69,13 @@ public class CampsiteControllerTest {
     LocalDate availabilityOne = LocalDate.parse("2019-01-01", dateFormatter);
     LocalDate availabilityTwo = LocalDate.parse("2019-01-02", dateFormatter);
     LocalDate availabilityThree = LocalDate.parse("2019-01-03", dateFormatter);
-    when(reservationService.getAvailabilities(requestStartDate, requestEndDate))
+    when(reservationService
+        .getAvailabilities(Campsite.DEFAULT_ID, requestStartDate, requestEndDate))
         .thenReturn(Flux.just(availabilityOne, availabilityTwo, availabilityThree));
 
     // when
     Flux<LocalDate> actualAvailabilities = campsiteController
-        .getAvailabilities(requestStartDate, requestEndDate);
+        .getAvailabilities(null, requestStartDate, requestEndDate);
 
     // then
     StepVerifier.create(actualAvailabilities)
@@ -68,7 +86,8 @@ public class CampsiteControllerTest {
             availabilityThree)))
         .verifyComplete();
 
-    verify(reservationService).getAvailabilities(requestStartDate, requestEndDate);
+    verify(reservationService)
+        .getAvailabilities(Campsite.DEFAULT_ID, requestStartDate, requestEndDate);
   }
 
   @Test
@@ -77,11 +96,12 @@ public class CampsiteControllerTest {
     LocalDate availabilityOne = LocalDate.parse("2019-01-01", dateFormatter);
     LocalDate availabilityTwo = LocalDate.parse("2019-01-02", dateFormatter);
     LocalDate availabilityThree = LocalDate.parse("2019-01-03", dateFormatter);
-    when(reservationService.getAvailabilities(any(), any()))
+    when(reservationService.getAvailabilities(anyLong(), any(), any()))
         .thenReturn(Flux.just(availabilityOne, availabilityTwo, availabilityThree));
 
     // when
-    Flux<LocalDate> actualAvailabilities = campsiteController.getAvailabilities(null, null);
+    Flux<LocalDate> actualAvailabilities = campsiteController
+        .getAvailabilities(null, null, null);
 
     // then
     StepVerifier.create(actualAvailabilities)
@@ -92,7 +112,160 @@ public class CampsiteControllerTest {
             availabilityThree)))
         .verifyComplete();
 
-    verify(reservationService).getAvailabilities(any(), any());
+    verify(reservationService).getAvailabilities(anyLong(), any(), any());
+  }
+
+  @Test
+  public void testReturnsAvailabilityIntervalsForCampsite() {
+    // given
+    LocalDate requestStartDate = now().plus(1, DAYS);
+    LocalDate requestEndDate = now().plus(10, DAYS);
+    DateInterval availability = new DateInterval(requestStartDate, now().plus(3, DAYS));
+    when(reservationService
+        .getAvailabilityIntervals(Campsite.DEFAULT_ID, requestStartDate, requestEndDate))
+        .thenReturn(Flux.just(availability));
+
+    // when
+    Flux<DateInterval> actualAvailabilities = campsiteController
+        .getAvailabilityIntervals(null, requestStartDate, requestEndDate);
+
+    // then
+    StepVerifier.create(actualAvailabilities)
+        .expectNext(availability)
+        .verifyComplete();
+  }
+
+  @Test
+  public void testAvailabilityIntervalsAreValidatedLikeAvailabilities() {
+    // given
+    LocalDate startDate = LocalDate.parse("2019-01-02", dateFormatter);
+    LocalDate endDate = LocalDate.parse("2019-01-01", dateFormatter);
+    expectedEx.expect(ResponseStatusException.class);
+    expectedEx.expectMessage("The end date cannot be before the start date.");
+
+    // when
+    campsiteController.getAvailabilityIntervals(null, startDate, endDate);
+
+    verify(reservationService, never()).getAvailabilityIntervals(anyLong(), any(), any());
+  }
+
+  @Test
+  public void testPushesAvailabilityChangesAsServerSentEvents() {
+    // given
+    DateInterval changedDates = new DateInterval(now().plus(1, DAYS), now().plus(3, DAYS));
+
+    // when
+    Flux<ServerSentEvent<List<DateInterval>>> changes = campsiteController
+        .getAvailabilityChanges(null);
+
+    // then
+    StepVerifier.create(changes)
+        .assertNext(event -> assertThat(event.comment(), is("heartbeat")))
+        .then(() -> availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+            .reservationId(1L)
+            .newDates(changedDates)
+            .build()))
+        .assertNext(event -> {
+          assertThat(event.event(), is("availability-changed"));
+          assertThat(event.data(), is(List.of(changedDates)));
+        })
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  public void testReturnsAvailabilitiesOfTheGivenSite() {
+    // given
+    LocalDate requestStartDate = now().plus(1, DAYS);
+    LocalDate requestEndDate = now().plus(3, DAYS);
+    when(campsiteService.exists(7L)).thenReturn(Mono.just(true));
+    when(reservationService.getAvailabilities(7L, requestStartDate, requestEndDate))
+        .thenReturn(Flux.just(requestStartDate));
+
+    // when
+    Flux<LocalDate> actualAvailabilities = campsiteController
+        .getAvailabilities(7L, requestStartDate, requestEndDate);
+
+    // then
+    StepVerifier.create(actualAvailabilities)
+        .expectNext(requestStartDate)
+        .verifyComplete();
+  }
+
+  @Test
+  public void testReturnsAvailableCampsites() {
+    // given
+    LocalDate startDate = now().plus(1, DAYS);
+    LocalDate endDate = now().plus(3, DAYS);
+    when(campsiteService.getFreeCampsites(startDate, endDate))
+        .thenReturn(Mono.just(List.of(1L, 7L)));
+
+    // when
+    Flux<Long> availableCampsites = campsiteController
+        .getAvailableCampsites(startDate, endDate);
+
+    // then
+    StepVerifier.create(availableCampsites)
+        .expectNext(1L, 7L)
+        .verifyComplete();
+  }
+
+  @Test
+  public void testAvailableCampsitesAreValidatedLikeAvailabilities() {
+    // given
+    expectedEx.expect(ResponseStatusException.class);
+    expectedEx.expectMessage("The end date cannot be before the start date.");
+
+    // when
+    campsiteController.getAvailableCampsites(now().plus(3, DAYS), now().plus(1, DAYS));
+
+    verify(campsiteService, never()).getFreeCampsites(any(), any());
+  }
+
+  @Test
+  public void testThrowsExceptionForUnknownSite() {
+    // given
+    when(campsiteService.exists(7L)).thenReturn(Mono.just(false));
+
+    // when
+    Flux<LocalDate> availabilities = campsiteController
+        .getAvailabilities(7L, now().plus(1, DAYS), now().plus(3, DAYS));
+
+    // then
+    StepVerifier.create(availabilities)
+        .expectErrorMatches(e -> e instanceof ResponseStatusException
+            && e.getMessage().contains("There is no campsite 7."))
+        .verify();
+    verify(reservationService, never()).getAvailabilities(anyLong(), any(), any());
+  }
+
+  @Test
+  public void testPushesOnlyTheAvailabilityChangesOfTheSite() {
+    // given
+    when(campsiteService.exists(7L)).thenReturn(Mono.just(true));
+    DateInterval changedDates = new DateInterval(now().plus(1, DAYS), now().plus(3, DAYS));
+
+    // when
+    Flux<ServerSentEvent<List<DateInterval>>> changes = campsiteController
+        .getAvailabilityChanges(7L);
+
+    // then
+    StepVerifier.create(changes)
+        .assertNext(event -> assertThat(event.comment(), is("heartbeat")))
+        .then(() -> {
+          availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+              .reservationId(1L)
+              .newDates(new DateInterval(now().plus(5, DAYS), now().plus(6, DAYS)))
+              .build());
+          availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+              .reservationId(2L)
+              .siteId(7L)
+              .newDates(changedDates)
+              .build());
+        })
+        .assertNext(event -> assertThat(event.data(), is(List.of(changedDates))))
+        .thenCancel()
+        .verify();
   }
 
   @Test
@@ -104,9 +277,9 @@ public class CampsiteControllerTest {
     expectedEx.expectMessage("The end date cannot be before the start date.");
 
     // when
-    campsiteController.getAvailabilities(startDate, endDate);
+    campsiteController.getAvailabilities(null, startDate, endDate);
 
-    verify(reservationService, never()).getAvailabilities(any(), any());
+    verify(reservationService, never()).getAvailabilities(anyLong(), any(), any());
   }
 
   @Test
@@ -118,9 +291,9 @@ public class CampsiteControllerTest {
     expectedEx.expectMessage("The end date cannot be in the past.");
 
     // when
-    campsiteController.getAvailabilities(startDate, endDate);
+    campsiteController.getAvailabilities(null, startDate, endDate);
 
-    verify(reservationService, never()).getAvailabilities(any(), any());
+    verify(reservationService, never()).getAvailabilities(anyLong(), any(), any());
   }
 
   @Test
@@ -132,9 +305,9 @@ public class CampsiteControllerTest {
     expectedEx.expectMessage("The start date must be in the future.");
 
     // when
-    campsiteController.getAvailabilities(startDate, endDate);
+    campsiteController.getAvailabilities(null, startDate, endDate);
 
-    verify(reservationService, never()).getAvailabilities(any(), any());
+    verify(reservationService, never()).getAvailabilities(anyLong(), any(), any());
   }
 
   @Test
@@ -146,9 +319,9 @@ public class CampsiteControllerTest {
     expectedEx.expectMessage("The start and end date must differ by at least 1 day.");
 
     // when
-    campsiteController.getAvailabilities(startDate, endDate);
+    campsiteController.getAvailabilities(null, startDate, endDate);
 
-    verify(reservationService, never()).getAvailabilities(any(), any());
+    verify(reservationService, never()).getAvailabilities(anyLong(), any(), any());
   }
 
 }
@@ -1,5 +1,7 @@
 package com.upgrade.islandrsvsrv.controllers;
 
+import static com.upgrade.islandrsvsrv.config.CodecConfig.APPLICATION_NDJSON;
+import static com.upgrade.islandrsvsrv.controllers.CampsiteController.APPLICATION_INTERVALS_JSON_VALUE;
 import static java.time.LocalDate.now;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.MONTHS;
@@ -8,7 +10,10 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import com.upgrade.islandrsvsrv.services.ReservationService;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
 import org.junit.ClassRule;
@@ -24,6 +29,8 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.testcontainers.containers.PostgreSQLContainer;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
 
 
 @RunWith(SpringRunner.class)
@@ -42,6 +49,8 @@ public class CampsiteControllerTestIT {
   private WebTestClient webTestClient;
   @Autowired
   private CampsiteController campsiteController;
+  @Autowired
+  private ReservationService reservationService;
 
   @Test
   public void testReturnsDefaultAvailabilities() throws Exception {
@@ -52,7 +61,7 @@ public class CampsiteControllerTestIT {
         .uri("/campsite/availabilities")
         .exchange()
         .expectStatus().isOk()
-        .expectHeader().contentType(MediaType.APPLICATION_JSON_UTF8)
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
         .expectBody()
         .consumeWith(response -> {
           List<LocalDate> dates = null;
@@ -84,7 +93,7 @@ public class CampsiteControllerTestIT {
             .build())
         .exchange()
         .expectStatus().isOk()
-        .expectHeader().contentType(MediaType.APPLICATION_JSON_UTF8)
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
         .expectBody()
         .consumeWith(response -> {
           List<LocalDate> dates = null;
@@ -103,6 +112,158 @@ public class CampsiteControllerTestIT {
 
   }
 
+  @Test
+  public void testStreamsAvailabilitiesAsNdjson() {
+    //given
+    LocalDate tomorrow = now().plus(1, DAYS);
+    LocalDate fourDaysFromNow = now().plus(4, DAYS);
+    //when
+    webTestClient.get()
+        .uri(uriBuilder -> uriBuilder.path("/campsite/availabilities")
+            .queryParam("startDate", tomorrow)
+            .queryParam("endDate", fourDaysFromNow)
+            .build())
+        .accept(APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(APPLICATION_NDJSON)
+        .expectBody(String.class)
+        //then
+        .isEqualTo("\"" + tomorrow + "\"\n" +
+            "\"" + tomorrow.plus(1, DAYS) + "\"\n" +
+            "\"" + tomorrow.plus(2, DAYS) + "\"\n");
+  }
+
+  @Test
+  public void testReturnsAvailabilityIntervalsWithFormatParameter() {
+    //given
+    LocalDate tomorrow = now().plus(1, DAYS);
+    LocalDate tenDaysFromNow = now().plus(10, DAYS);
+    //when
+    webTestClient.get()
+        .uri(uriBuilder -> uriBuilder.path("/campsite/availabilities")
+            .queryParam("startDate", tomorrow)
+            .queryParam("endDate", tenDaysFromNow)
+            .queryParam("format", "intervals")
+            .build())
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
+        .expectBody()
+        //then
+        .json("[{\"start\":\"" + tomorrow + "\",\"end\":\"" + tenDaysFromNow + "\"}]");
+  }
+
+  @Test
+  public void testReturnsAvailabilityIntervalsWithAcceptHeader() {
+    //given
+    LocalDate tomorrow = now().plus(1, DAYS);
+    LocalDate tenDaysFromNow = now().plus(10, DAYS);
+    //when
+    webTestClient.get()
+        .uri(uriBuilder -> uriBuilder.path("/campsite/availabilities")
+            .queryParam("startDate", tomorrow)
+            .queryParam("endDate", tenDaysFromNow)
+            .build())
+        .accept(MediaType.parseMediaType(APPLICATION_INTERVALS_JSON_VALUE))
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        //then
+        .json("[{\"start\":\"" + tomorrow + "\",\"end\":\"" + tenDaysFromNow + "\"}]");
+  }
+
+  @Test
+  public void testListsCampsitesAndReturnsTheAvailabilitiesOfOne() {
+    //given
+    LocalDate tomorrow = now().plus(1, DAYS);
+    LocalDate tenDaysFromNow = now().plus(10, DAYS);
+    //when
+    webTestClient.get()
+        .uri("/campsite/sites")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        //then
+        .json("[{\"id\":1,\"name\":\"The island\"}]");
+    webTestClient.get()
+        .uri(uriBuilder -> uriBuilder.path("/campsite/1/availabilities")
+            .queryParam("startDate", tomorrow)
+            .queryParam("endDate", tenDaysFromNow)
+            .queryParam("format", "intervals")
+            .build())
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .json("[{\"start\":\"" + tomorrow + "\",\"end\":\"" + tenDaysFromNow + "\"}]");
+  }
+
+  @Test
+  public void testReturnsTheCampsitesFreeForTheWholeInterval() {
+    //given
+    LocalDate start = now().plus(220, DAYS);
+    reservationService.insertReservation(ReservationRequest.builder()
+        .userEmail("email")
+        .userName("userName")
+        .start(start.plus(2, DAYS))
+        .end(start.plus(3, DAYS))
+        .build());
+    //when
+    webTestClient.get()
+        .uri(uriBuilder -> uriBuilder.path("/campsite/sites/available")
+            .queryParam("startDate", start)
+            .queryParam("endDate", start.plus(2, DAYS))
+            .build())
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        //then
+        .json("[1]");
+    webTestClient.get()
+        .uri(uriBuilder -> uriBuilder.path("/campsite/sites/available")
+            .queryParam("startDate", start)
+            .queryParam("endDate", start.plus(3, DAYS))
+            .build())
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .json("[]");
+  }
+
+  @Test
+  public void testUnknownCampsiteIsNotFound() {
+    webTestClient.get()
+        .uri("/campsite/404/availabilities")
+        .exchange()
+        .expectStatus().isNotFound();
+  }
+
+  @Test
+  public void testPushesChangesMadeToReservations() {
+    //given
+    LocalDate start = now().plus(200, DAYS);
+    LocalDate end = start.plus(2, DAYS);
+    Flux<String> changes = webTestClient.get()
+        .uri("/campsite/availabilities/changes")
+        .accept(MediaType.TEXT_EVENT_STREAM)
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(String.class)
+        .getResponseBody();
+
+    //when / then
+    StepVerifier.create(changes)
+        .then(() -> reservationService.insertReservation(ReservationRequest.builder()
+            .userEmail("email")
+            .userName("userName")
+            .start(start)
+            .end(end)
+            .build()))
+        .expectNextMatches(change -> change.contains("\"start\":\"" + start + "\"") &&
+            change.contains("\"end\":\"" + end + "\""))
+        .thenCancel()
+        .verify(Duration.ofSeconds(10));
+  }
 
   static class Initializer
       implements ApplicationContextInitializer<ConfigurableApplicationContext> {
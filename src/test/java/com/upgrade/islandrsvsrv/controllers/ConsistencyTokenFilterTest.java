@@ -0,0 +1,88 @@
+package com.upgrade.islandrsvsrv.controllers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.upgrade.islandrsvsrv.repository.ReservationDAO;
+import com.upgrade.islandrsvsrv.services.BlockingScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+public class ConsistencyTokenFilterTest {
+
+  private final ReservationDAO reservationDAO = mock(ReservationDAO.class);
+
+  private final BlockingScheduler blockingScheduler = new BlockingScheduler(1, 1,
+      Duration.ofSeconds(5), false, new MockEnvironment(), new SimpleMeterRegistry());
+
+  private final ConsistencyTokenFilter filter = new ConsistencyTokenFilter(reservationDAO,
+      blockingScheduler);
+
+  @After
+  public void tearDown() {
+    blockingScheduler.destroy();
+  }
+
+  @Test
+  public void testSuccessfulWriteGetsThePositionReadOffTheCallingThread() {
+    //given
+    AtomicReference<String> thread = new AtomicReference<>();
+    when(reservationDAO.getCurrentLsn()).thenAnswer(invocation -> {
+      thread.set(Thread.currentThread().getName());
+      return "0/16B3748";
+    });
+    MockServerWebExchange exchange = MockServerWebExchange
+        .from(MockServerHttpRequest.post("/reservation"));
+
+    //when
+    filter.filter(exchange, filtered -> filtered.getResponse().setComplete()).block();
+
+    //then
+    assertThat(exchange.getResponse().getHeaders()
+        .getFirst(ConsistencyTokenFilter.CONSISTENCY_TOKEN_HEADER)).isEqualTo("0/16B3748");
+    assertThat(thread.get()).startsWith("island-blocking-");
+  }
+
+  @Test
+  public void testFailedWriteGetsNoToken() {
+    //given
+    MockServerWebExchange exchange = MockServerWebExchange
+        .from(MockServerHttpRequest.post("/reservation"));
+
+    //when
+    filter.filter(exchange, filtered -> {
+      filtered.getResponse().setStatusCode(HttpStatus.BAD_REQUEST);
+      return filtered.getResponse().setComplete();
+    }).block();
+
+    //then
+    assertThat(exchange.getResponse().getHeaders()
+        .containsKey(ConsistencyTokenFilter.CONSISTENCY_TOKEN_HEADER)).isFalse();
+  }
+
+  @Test
+  public void testWriteStillAnswersWhenThePositionCantBeRead() {
+    //given
+    when(reservationDAO.getCurrentLsn()).thenThrow(new IllegalStateException("down"));
+    MockServerWebExchange exchange = MockServerWebExchange
+        .from(MockServerHttpRequest.delete("/reservation/1"));
+
+    //when
+    Mono<Void> filtered = filter.filter(exchange,
+        filteredExchange -> filteredExchange.getResponse().setComplete());
+
+    //then
+    filtered.block();
+    assertThat(exchange.getResponse().getHeaders()
+        .containsKey(ConsistencyTokenFilter.CONSISTENCY_TOKEN_HEADER)).isFalse();
+  }
+}
@@ -0,0 +1,151 @@
+package com.upgrade.islandrsvsrv.controllers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+public class RateLimitFilterTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+  private final AtomicInteger passed = new AtomicInteger();
+  private final WebFilterChain chain = exchange -> {
+    passed.incrementAndGet();
+    return Mono.empty();
+  };
+
+  //2 reads then one every 100ms, 1 write then one a second
+  private final RateLimitFilter rateLimitFilter = new RateLimitFilter(meterRegistry, "X-Api-Key",
+      Set.of("key"), 100, 2, 10, 1, 1, now::get);
+
+  @Test
+  public void testClientIsLimitedOnceItsBucketIsEmpty() {
+    //given
+    filter(read("10.0.0.1"));
+    filter(read("10.0.0.1"));
+
+    //when
+    MockServerWebExchange limited = filter(read("10.0.0.1"));
+
+    //then
+    assertThat(passed).hasValue(2);
+    assertThat(limited.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(limited.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER))
+        .isEqualTo("1");
+    assertThat(meterRegistry.counter("island.rate-limit.rejected", "route", "read").count())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void testBucketRefillsOverTime() {
+    //given
+    filter(read("10.0.0.1"));
+    filter(read("10.0.0.1"));
+
+    //when
+    now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+    MockServerWebExchange refilled = filter(read("10.0.0.1"));
+    MockServerWebExchange limited = filter(read("10.0.0.1"));
+
+    //then
+    assertThat(refilled.getResponse().getStatusCode()).isNull();
+    assertThat(limited.getResponse().getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(passed).hasValue(3);
+  }
+
+  @Test
+  public void testReadsAndWritesAndClientsHaveTheirOwnBuckets() {
+    //given
+    filter(write("10.0.0.1", null));
+
+    //when
+    MockServerWebExchange secondWrite = filter(write("10.0.0.1", null));
+    MockServerWebExchange otherClientWrite = filter(write("10.0.0.2", null));
+    MockServerWebExchange apiKeyWrite = filter(write("10.0.0.1", "key"));
+    MockServerWebExchange read = filter(read("10.0.0.1"));
+
+    //then
+    assertThat(secondWrite.getResponse().getStatusCode())
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(otherClientWrite.getResponse().getStatusCode()).isNull();
+    assertThat(apiKeyWrite.getResponse().getStatusCode()).isNull();
+    assertThat(read.getResponse().getStatusCode()).isNull();
+    assertThat(passed).hasValue(4);
+  }
+
+  @Test
+  public void testUnknownApiKeysAreLimitedByAddress() {
+    //given
+    filter(write("10.0.0.1", "random-1"));
+
+    //when
+    MockServerWebExchange otherKeyWrite = filter(write("10.0.0.1", "random-2"));
+    MockServerWebExchange knownKeyWrite = filter(write("10.0.0.1", "key"));
+
+    //then
+    assertThat(otherKeyWrite.getResponse().getStatusCode())
+        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+    assertThat(knownKeyWrite.getResponse().getStatusCode()).isNull();
+    assertThat(passed).hasValue(2);
+  }
+
+  @Test
+  public void testActuatorIsNotLimited() {
+    //given
+    MockServerHttpRequest.BaseBuilder<?> scrape = MockServerHttpRequest
+        .get("/actuator/prometheus")
+        .remoteAddress(new InetSocketAddress("10.0.0.1", 1234));
+
+    //when
+    for (int i = 0; i < 5; i++) {
+      filter(scrape);
+    }
+
+    //then
+    assertThat(passed).hasValue(5);
+  }
+
+  @Test
+  public void testTokenBucketWaitIsTheTimeUntilTheNextToken() {
+    //given
+    RateLimitFilter.TokenBucket bucket = new RateLimitFilter.TokenBucket(2, 100, 0);
+    bucket.tryAcquire(0);
+    bucket.tryAcquire(0);
+
+    //when
+    long wait = bucket.tryAcquire(30);
+
+    //then
+    assertThat(wait).isEqualTo(70);
+    assertThat(bucket.tryAcquire(100)).isZero();
+  }
+
+  private MockServerWebExchange filter(MockServerHttpRequest.BaseBuilder<?> request) {
+    MockServerWebExchange exchange = MockServerWebExchange.from(request);
+    rateLimitFilter.filter(exchange, chain).block();
+    return exchange;
+  }
+
+  private static MockServerHttpRequest.BaseBuilder<?> read(String address) {
+    return MockServerHttpRequest.get("/campsite/availabilities")
+        .remoteAddress(new InetSocketAddress(address, 1234));
+  }
+
+  private static MockServerHttpRequest.BaseBuilder<?> write(String address, String apiKey) {
+    MockServerHttpRequest.BodyBuilder request = MockServerHttpRequest.post("/reservation")
+        .remoteAddress(new InetSocketAddress(address, 1234));
+    return apiKey == null ? request : request.header("X-Api-Key", apiKey);
+  }
+}
@@ -4,16 +4,37 @@ import static java.time.LocalDate.now;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.MONTHS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.IdempotencyRecord;
+import com.upgrade.islandrsvsrv.domain.Reservation;
 import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation.Type;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
 import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import com.upgrade.islandrsvsrv.services.BlockingScheduler;
+import com.upgrade.islandrsvsrv.services.CampsiteService;
+import com.upgrade.islandrsvsrv.services.IdempotencyService;
 import com.upgrade.islandrsvsrv.services.ReservationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Optional;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -21,8 +42,13 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
-import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ReservationControllerTest {
@@ -32,18 +58,31 @@ public class ReservationControllerTest {
   public ExpectedException expectedEx = ExpectedException.none();
   @Mock
   private ReservationService reservationService;
+  @Mock
+  private CampsiteService campsiteService;
+  @Mock
+  private IdempotencyService idempotencyService;
+  private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private BlockingScheduler blockingScheduler = new BlockingScheduler(2, 10, Duration.ofSeconds(5),
+      false, new MockEnvironment(), meterRegistry);
   private ReservationController reservationController;
 
 
   @Before
   public void setUp() throws Exception {
-    reservationController = new ReservationController(reservationService);
+    reservationController = new ReservationController(reservationService, campsiteService,
+        idempotencyService, meterRegistry, blockingScheduler);
+  }
+
+  @After
+  public void tearDown() {
+    blockingScheduler.destroy();
   }
 
   @Test
   public void testInsertReservation() {
     //given
-    when(reservationService.insertReservation(any())).thenReturn(1L);
+    when(reservationService.insertReservation(any())).thenReturn(created(1L));
     ReservationRequest reservation = ReservationRequest.builder()
         .userEmail("email")
         .userName("userName")
@@ -52,16 +91,182 @@ public class ReservationControllerTest {
         .build();
 
     //when
-    Long actual = reservationController.newReservation(reservation);
+    Long actual = reservationController.newReservation(reservation, null).block();
 
     assertThat(actual).isEqualTo(1L);
   }
 
   @Test
-  public void testInsertReservationThrowsStatusExceptionOnIntegrityException() {
+  public void testGetReservation() {
+    //given
+    Reservation reservation = Reservation.builder().id(1L).userName("userName").build();
+    when(reservationService.getReservation(1L)).thenReturn(Mono.just(Optional.of(reservation)));
+
+    //when
+    Reservation actual = reservationController.getReservation(1L).block();
+
+    //then
+    assertThat(actual).isEqualTo(reservation);
+  }
+
+  @Test
+  public void testReservationsOfUserArePagedAfterAStartAndAnId() {
+    //given
+    LocalDate start = LocalDate.now().plus(1, DAYS);
+    Reservation reservation = Reservation.builder().id(2L).userEmail("email").build();
+    when(reservationService.getReservationsOfUser("email", start, 1L, 20))
+        .thenReturn(Flux.just(reservation));
+
+    //when
+    List<Reservation> actual = reservationController
+        .getReservationsOfUser("email", start, 1L, 20).collectList().block();
+
+    //then
+    assertThat(actual).containsExactly(reservation);
+    assertThatThrownBy(() -> reservationController.getReservationsOfUser("email", start, null, 20))
+        .isInstanceOfSatisfying(ResponseStatusException.class,
+            e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST));
+    assertThatThrownBy(() -> reservationController.getReservationsOfUser("email", null, null, 101))
+        .isInstanceOfSatisfying(ResponseStatusException.class,
+            e -> assertThat(e.getReason()).isEqualTo("The limit must be between 1 and 100."));
+  }
+
+  @Test
+  public void testGetUnknownReservationIsNotFound() {
+    //given
+    when(reservationService.getReservation(1L)).thenReturn(Mono.just(Optional.empty()));
+
+    //when
+    Mono<Reservation> actual = reservationController.getReservation(1L);
+
+    //then
+    assertThatThrownBy(actual::block).isInstanceOfSatisfying(ResponseStatusException.class,
+        e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.NOT_FOUND));
+  }
+
+  @Test
+  public void testFirstRequestWithAnIdempotencyKeyKeepsItsOutcome() {
+    //given
+    when(idempotencyService.claim(eq("key"), anyString())).thenReturn(Optional.empty());
+    when(reservationService.insertReservation(any())).thenReturn(created(3L));
+
+    //when
+    Long actual = reservationController.newReservation(reservation(), "key").block();
+
+    //then
+    assertThat(actual).isEqualTo(3L);
+    verify(idempotencyService).complete(eq("key"), anyString(), eq(200), eq("3"));
+  }
+
+  @Test
+  public void testRetryWithTheSameIdempotencyKeyGetsTheSameIdWithoutInserting() {
+    //given
+    when(idempotencyService.claim(eq("key"), anyString())).thenAnswer(invocation -> Optional.of(
+        IdempotencyRecord.builder()
+            .requestHash(invocation.getArgument(1))
+            .status(200)
+            .body("3")
+            .build()));
+
+    //when
+    Long actual = reservationController.newReservation(reservation(), "key").block();
+
+    //then
+    assertThat(actual).isEqualTo(3L);
+    verify(reservationService, never()).insertReservation(any());
+  }
+
+  @Test
+  public void testRetryWithTheSameIdempotencyKeyGetsTheSameError() {
+    //given
+    when(idempotencyService.claim(eq("key"), anyString())).thenAnswer(invocation -> Optional.of(
+        IdempotencyRecord.builder()
+            .requestHash(invocation.getArgument(1))
+            .status(400)
+            .body("Sorry it looks like the island is booked")
+            .build()));
+    expectedEx.expect(ResponseStatusException.class);
+    expectedEx.expectMessage("Sorry it looks like the island is booked");
+
+    //when
+    reservationController.modifyReservation(ReservationModification.builder()
+        .start(now().plus(1, DAYS))
+        .end(now().plus(2, DAYS))
+        .build(), 1L, "key").block();
+
+    verify(reservationService, never()).updateReservation(anyLong(), any());
+  }
+
+  @Test
+  public void testIdempotencyKeyOfAnotherRequestIsRejected() {
+    //given
+    when(idempotencyService.claim(eq("key"), anyString())).thenReturn(Optional.of(
+        IdempotencyRecord.builder()
+            .requestHash("0123456789abcdef0123456789abcdef")
+            .status(200)
+            .body("3")
+            .build()));
+    expectedEx.expect(ResponseStatusException.class);
+    expectedEx.expectMessage("The Idempotency-Key was already used for another request.");
+
+    //when
+    reservationController.newReservation(reservation(), "key").block();
+  }
+
+  @Test
+  public void testWriteFailingWithoutAnOutcomeGivesTheIdempotencyKeyUp() {
     //given
+    when(idempotencyService.claim(eq("key"), anyString())).thenReturn(Optional.empty());
     when(reservationService.insertReservation(any()))
-        .thenThrow(new DataIntegrityViolationException(""));
+        .thenThrow(new DataAccessResourceFailureException("db down"));
+
+    //when
+    assertThatThrownBy(() -> reservationController.newReservation(reservation(), "key").block())
+        .isInstanceOf(DataAccessResourceFailureException.class);
+
+    //then
+    verify(idempotencyService).release("key");
+    verify(idempotencyService, never()).complete(any(), any(), anyInt(), any());
+  }
+
+  @Test
+  public void testConflictsAreCounted() {
+    //given
+    when(reservationService.insertReservation(any())).thenReturn(result(Status.CONFLICT));
+
+    //when
+    assertThatThrownBy(() -> reservationController.newReservation(reservation(), null).block())
+        .isInstanceOf(ResponseStatusException.class);
+
+    //then
+    assertThat(meterRegistry.counter("island.reservation.conflicts", "operation", "create")
+        .count()).isEqualTo(1);
+  }
+
+  @Test
+  public void testInsertReservationOnUnknownSiteThrowsStatusException() {
+    //given
+    when(campsiteService.existsBlocking(7L)).thenReturn(false);
+    ReservationRequest reservation = ReservationRequest.builder()
+        .siteId(7L)
+        .userEmail("email")
+        .userName("userName")
+        .start(LocalDate.now().plus(1, DAYS))
+        .end(LocalDate.now().plus(3, DAYS))
+        .build();
+    expectedEx.expect(ResponseStatusException.class);
+    expectedEx.expectMessage("There is no campsite 7.");
+
+    //when
+    reservationController.newReservation(reservation, null).block();
+
+    verify(reservationService, never()).insertReservation(any());
+  }
+
+  @Test
+  public void testInsertReservationThrowsStatusExceptionOnConflict() {
+    //given
+    when(reservationService.insertReservation(any())).thenReturn(result(Status.CONFLICT));
     LocalDate start = LocalDate.now().plus(1, DAYS);
     LocalDate end = LocalDate.now().plus(3, DAYS);
     ReservationRequest reservation = ReservationRequest.builder()
@@ -78,13 +283,63 @@ public class ReservationControllerTest {
         " Please try another time slot.");
 
     //when
-    reservationController.newReservation(reservation);
+    reservationController.newReservation(reservation, null).block();
 
     //then
     //exception is asserted above
 
   }
 
+  @Test
+  public void testConflictSuggestsTheNearestFreeStays() {
+    //given
+    ReflectionTestUtils.setField(reservationController, "conflictAlternatives", true);
+    ReservationRequest reservation = reservation();
+    List<DateInterval> alternatives = List.of(
+        new DateInterval(reservation.getStart().plus(3, DAYS),
+            reservation.getEnd().plus(3, DAYS)));
+    when(reservationService.insertReservation(any())).thenReturn(result(Status.CONFLICT));
+    when(reservationService.getNearestFreeStays(eq(Campsite.DEFAULT_ID),
+        eq(new DateInterval(reservation.getStart(), reservation.getEnd())), any()))
+        .thenReturn(Mono.just(alternatives));
+
+    //when
+    Mono<Long> actual = reservationController.newReservation(reservation, null);
+
+    //then
+    assertThatThrownBy(actual::block).isInstanceOfSatisfying(ReservationConflictException.class,
+        e -> {
+          assertThat(e.getStatus()).isEqualTo(HttpStatus.BAD_REQUEST);
+          assertThat(e.getAlternatives()).isEqualTo(alternatives);
+        });
+    assertThat(meterRegistry.counter("island.reservation.conflicts", "operation", "create")
+        .count()).isEqualTo(1);
+  }
+
+  @Test
+  public void testModifyUnknownReservationIsNotFound() {
+    //given
+    when(reservationService.updateReservation(eq(9L), any())).thenReturn(
+        ReservationOperationResult.builder()
+            .status(Status.NOT_FOUND)
+            .id(9L)
+            .message("There is no reservation 9.")
+            .build());
+
+    //when
+    Mono<Void> actual = reservationController.modifyReservation(ReservationModification.builder()
+        .start(now().plus(1, DAYS))
+        .end(now().plus(2, DAYS))
+        .build(), 9L, null);
+
+    //then
+    assertThatThrownBy(actual::block).isInstanceOfSatisfying(ResponseStatusException.class,
+        e -> {
+          assertThat(e.getStatus()).isEqualTo(HttpStatus.NOT_FOUND);
+          assertThat(e.getReason()).isEqualTo("There is no reservation 9.");
+        });
+  }
+
   @Test
   public void testThrowsExceptionWhenEndDateIsBeforeStartDate() {
     // given
@@ -102,7 +357,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("The end date cannot be before the start date.");
 
     // when
-    reservationController.newReservation(reservation);
+    reservationController.newReservation(reservation, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -122,7 +377,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("The end date cannot be in the past.");
 
     // when
-    reservationController.newReservation(reservation);
+    reservationController.newReservation(reservation, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -142,7 +397,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("The start date must be in the future.");
 
     // when
-    reservationController.newReservation(reservation);
+    reservationController.newReservation(reservation, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -162,7 +417,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("Reservation can only be for 3 days at a time.");
 
     // when
-    reservationController.newReservation(reservation);
+    reservationController.newReservation(reservation, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -180,7 +435,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("Reservation can only be for 3 days at a time.");
 
     // when
-    reservationController.modifyReservation(reservation, 1L);
+    reservationController.modifyReservation(reservation, 1L, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -200,7 +455,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("The end date cannot be before the start date.");
 
     // when
-    reservationController.modifyReservation(reservation, 1L);
+    reservationController.modifyReservation(reservation, 1L, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -218,7 +473,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("The end date cannot be in the past.");
 
     // when
-    reservationController.modifyReservation(reservation, 1L);
+    reservationController.modifyReservation(reservation, 1L, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -236,7 +491,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("The start date must be in the future.");
 
     // when
-    reservationController.modifyReservation(reservation, 1L);
+    reservationController.modifyReservation(reservation, 1L, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -254,7 +509,7 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("The start and end date must differ by at least 1 day.");
 
     // when
-    reservationController.modifyReservation(reservation, 1L);
+    reservationController.modifyReservation(reservation, 1L, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
@@ -272,8 +527,57 @@ public class ReservationControllerTest {
     expectedEx.expectMessage("Reservations can only be made up to 1 month in advance.");
 
     // when
-    reservationController.modifyReservation(reservation, 1L);
+    reservationController.modifyReservation(reservation, 1L, null).block();
 
     verify(reservationService, never()).insertReservation(any());
   }
+
+  @Test
+  public void testBatchOnlyAppliesValidOperationsAndKeepsTheirOrder() {
+    // given
+    LocalDate start = now().plus(1, DAYS);
+    ReservationOperation tooLong = ReservationOperation.builder()
+        .type(Type.CREATE).start(start).end(start.plus(5, DAYS))
+        .build();
+    ReservationOperation create = ReservationOperation.builder()
+        .type(Type.CREATE).start(start).end(start.plus(2, DAYS))
+        .build();
+    ReservationOperation cancelWithoutId = ReservationOperation.builder()
+        .type(Type.CANCEL)
+        .build();
+    ReservationOperation cancel = ReservationOperation.builder()
+        .type(Type.CANCEL).id(4L)
+        .build();
+    when(reservationService.applyOperations(List.of(create, cancel))).thenReturn(List.of(
+        ReservationOperationResult.builder().status(Status.CREATED).id(7L).build(),
+        ReservationOperationResult.builder().status(Status.CANCELLED).id(4L).build()));
+
+    // when
+    List<ReservationOperationResult> results = reservationController
+        .applyOperations(List.of(tooLong, create, cancelWithoutId, cancel)).block();
+
+    // then
+    assertThat(results).extracting(ReservationOperationResult::getStatus)
+        .containsExactly(Status.INVALID, Status.CREATED, Status.INVALID, Status.CANCELLED);
+    assertThat(results.get(0).getMessage())
+        .isEqualTo("Reservation can only be for 3 days at a time.");
+    assertThat(results.get(2).getMessage()).isEqualTo("The id of the reservation is required.");
+  }
+
+  private static ReservationOperationResult created(long reservationId) {
+    return ReservationOperationResult.builder().status(Status.CREATED).id(reservationId).build();
+  }
+
+  private static ReservationOperationResult result(Status status) {
+    return ReservationOperationResult.builder().status(status).build();
+  }
+
+  private static ReservationRequest reservation() {
+    return ReservationRequest.builder()
+        .userEmail("email")
+        .userName("userName")
+        .start(now().plus(1, DAYS))
+        .end(now().plus(3, DAYS))
+        .build();
+  }
 }
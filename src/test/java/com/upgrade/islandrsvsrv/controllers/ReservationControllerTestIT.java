@@ -6,12 +6,18 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
 import com.upgrade.islandrsvsrv.domain.Reservation;
 import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation.Type;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
 import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
 import com.upgrade.islandrsvsrv.repository.ReservationDAO;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.List;
 import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
@@ -23,6 +29,7 @@ import org.springframework.boot.test.util.TestPropertyValues;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
@@ -64,11 +71,11 @@ public class ReservationControllerTestIT {
     //when
     webTestClient.post()
         .uri("/reservation")
-        .accept(MediaType.APPLICATION_JSON_UTF8)
+        .accept(MediaType.APPLICATION_JSON)
         .body(Mono.just(reservation), ReservationRequest.class)
         .exchange()
         .expectStatus().isOk()
-        .expectHeader().contentType(MediaType.APPLICATION_JSON_UTF8)
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
         .expectBody()
         .consumeWith(response -> {
           Long reservationId = null;
@@ -100,21 +107,22 @@ public class ReservationControllerTestIT {
     //when
     webTestClient.post()
         .uri("/reservation")
-        .accept(MediaType.APPLICATION_JSON_UTF8)
+        .accept(MediaType.APPLICATION_JSON)
         .body(Mono.just(reservation), ReservationRequest.class)
         .exchange()
         .expectStatus().isOk()
-        .expectHeader().contentType(MediaType.APPLICATION_JSON_UTF8)
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
         .expectBody();
 
     webTestClient.post()
         .uri("/reservation")
-        .accept(MediaType.APPLICATION_JSON_UTF8)
+        .accept(MediaType.APPLICATION_JSON)
         .body(Mono.just(reservation), ReservationRequest.class)
         .exchange()
         .expectStatus().is4xxClientError()
-        .expectHeader().contentType(MediaType.APPLICATION_JSON_UTF8)
+        .expectHeader().contentType(MediaType.APPLICATION_JSON)
         .expectBody()
+        .jsonPath("$.alternatives").isArray()
         .jsonPath("$.message", "" +
             "Sorry it looks like the island is booked somewhere between " +
             startDate + "and " +
@@ -128,7 +136,7 @@ public class ReservationControllerTestIT {
     //given
     ReservationRequest build = ReservationRequest.builder()
         .start(now().plus(10, DAYS))
-        .end(now().plus(15, DAYS))
+        .end(now().plus(13, DAYS))
         .userEmail("email")
         .userName("username")
         .build();
@@ -144,7 +152,7 @@ public class ReservationControllerTestIT {
     //when
     webTestClient.put()
         .uri("/reservation/{id}", reservationId)
-        .accept(MediaType.APPLICATION_JSON_UTF8)
+        .accept(MediaType.APPLICATION_JSON)
         .body(Mono.just(modification), ReservationModification.class)
         .exchange()
         .expectStatus().isOk();
@@ -160,7 +168,7 @@ public class ReservationControllerTestIT {
     //given
     ReservationRequest build = ReservationRequest.builder()
         .start(now().plus(23, DAYS))
-        .end(now().plus(27, DAYS))
+        .end(now().plus(26, DAYS))
         .userEmail("email")
         .userName("username")
         .build();
@@ -169,7 +177,7 @@ public class ReservationControllerTestIT {
     //when
     webTestClient.delete()
         .uri("/reservation/{id}", reservationId)
-        .accept(MediaType.APPLICATION_JSON_UTF8)
+        .accept(MediaType.APPLICATION_JSON)
         .exchange()
         .expectStatus().isOk();
 
@@ -179,6 +187,128 @@ public class ReservationControllerTestIT {
     reservationDAO.getReservation(reservationId);
   }
 
+  @Test
+  public void testGetReservationFollowsItsChanges() {
+    //given
+    LocalDate start = now().plus(28, DAYS);
+    Long reservationId = reservationDAO.insertReservation(ReservationRequest.builder()
+        .start(start)
+        .end(start.plus(1, DAYS))
+        .userEmail("email")
+        .userName("username")
+        .build());
+    webTestClient.get()
+        .uri("/reservation/{id}", reservationId)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.id").isEqualTo(reservationId)
+        .jsonPath("$.userName").isEqualTo("username")
+        .jsonPath("$.dateInterval.start").isEqualTo(start.toString());
+
+    //when
+    webTestClient.put()
+        .uri("/reservation/{id}", reservationId)
+        .body(Mono.just(ReservationModification.builder()
+            .start(start.minus(1, DAYS))
+            .end(start)
+            .build()), ReservationModification.class)
+        .exchange()
+        .expectStatus().isOk();
+
+    //then
+    webTestClient.get()
+        .uri("/reservation/{id}", reservationId)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.dateInterval.start").isEqualTo(start.minus(1, DAYS).toString());
+    webTestClient.delete()
+        .uri("/reservation/{id}", reservationId)
+        .exchange()
+        .expectStatus().isOk();
+    webTestClient.get()
+        .uri("/reservation/{id}", reservationId)
+        .exchange()
+        .expectStatus().isNotFound();
+  }
+
+  @Test
+  public void testAppliesBatchOfOperations() {
+    //given
+    LocalDate start = now().plus(4, DAYS);
+    Long reservationId = reservationDAO.insertReservation(ReservationRequest.builder()
+        .start(start)
+        .end(start.plus(2, DAYS))
+        .userEmail("email")
+        .userName("username")
+        .build());
+    List<ReservationOperation> operations = List.of(
+        ReservationOperation.builder().type(Type.CREATE).userEmail("email").userName("username")
+            .start(start.plus(1, DAYS)).end(start.plus(3, DAYS)).build(),
+        ReservationOperation.builder().type(Type.MODIFY).id(reservationId)
+            .start(start.plus(4, DAYS)).end(start.plus(5, DAYS)).build(),
+        ReservationOperation.builder().type(Type.CREATE).userEmail("email").userName("username")
+            .start(start).end(start.plus(2, DAYS)).build());
+
+    //when
+    List<ReservationOperationResult> results = webTestClient.post()
+        .uri("/reservation/batch")
+        .accept(MediaType.APPLICATION_JSON)
+        .bodyValue(operations)
+        .exchange()
+        .expectStatus().isOk()
+        .expectBodyList(ReservationOperationResult.class)
+        .returnResult()
+        .getResponseBody();
+
+    //then
+    assertThat(results).extracting(ReservationOperationResult::getStatus)
+        .containsExactly(Status.CONFLICT, Status.MODIFIED, Status.CREATED);
+    assertThat(reservationDAO.getReservation(reservationId).getDateInterval())
+        .isEqualTo(new DateInterval(start.plus(4, DAYS), start.plus(5, DAYS)));
+    assertThat(reservationDAO.getReservation(results.get(2).getId()).getDateInterval())
+        .isEqualTo(new DateInterval(start, start.plus(2, DAYS)));
+  }
+
+  @Test
+  public void testRetriedReservationWithIdempotencyKeyIsBookedOnce() {
+    //given
+    ReservationRequest reservation = ReservationRequest.builder()
+        .start(now().plus(28, DAYS))
+        .end(now().plus(29, DAYS))
+        .userEmail("email")
+        .userName("username")
+        .build();
+    Long reservationId = postReservation(reservation, "retried-booking")
+        .expectStatus().isOk()
+        .expectBody(Long.class)
+        .returnResult()
+        .getResponseBody();
+
+    //when
+    Long retriedReservationId = postReservation(reservation, "retried-booking")
+        .expectStatus().isOk()
+        .expectBody(Long.class)
+        .returnResult()
+        .getResponseBody();
+
+    //then
+    assertThat(retriedReservationId).isEqualTo(reservationId);
+    postReservation(reservation.toBuilder().userName("someone else").build(), "retried-booking")
+        .expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+  }
+
+  private WebTestClient.ResponseSpec postReservation(ReservationRequest reservation,
+      String idempotencyKey) {
+    return webTestClient.post()
+        .uri("/reservation")
+        .accept(MediaType.APPLICATION_JSON)
+        .header(ReservationController.IDEMPOTENCY_KEY_HEADER, idempotencyKey)
+        .bodyValue(reservation)
+        .exchange();
+  }
+
   static class Initializer
       implements ApplicationContextInitializer<ConfigurableApplicationContext> {
 
@@ -0,0 +1,21 @@
+package com.upgrade.islandrsvsrv.domain;
+
+import static java.time.LocalDate.now;
+import static java.time.temporal.ChronoUnit.DAYS;
+
+import java.time.LocalDate;
+
+/**
+ * Date intervals for the tests, in days from the day the tests started.
+ */
+public final class DateIntervals {
+
+  private static final LocalDate TODAY = now();
+
+  private DateIntervals() {
+  }
+
+  public static DateInterval interval(int startOffset, int endOffset) {
+    return new DateInterval(TODAY.plus(startOffset, DAYS), TODAY.plus(endOffset, DAYS));
+  }
+}
@@ -0,0 +1,55 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import java.time.LocalDate;
+import org.junit.Test;
+
+public class DateRangeCodecTest {
+
+  @Test
+  public void testDecodesCanonicalDateRange() {
+    //when
+    DateInterval dates = DateRangeCodec.decode("[2019-10-01,2019-10-04)");
+
+    //then
+    assertThat(dates).isEqualTo(
+        new DateInterval(LocalDate.of(2019, 10, 1), LocalDate.of(2019, 10, 4)));
+  }
+
+  @Test
+  public void testTurnsOtherBoundsIntoInclusiveStartAndExclusiveEnd() {
+    //when
+    DateInterval dates = DateRangeCodec.decode("(2019-12-30,2019-12-31]");
+
+    //then
+    assertThat(dates).isEqualTo(
+        new DateInterval(LocalDate.of(2019, 12, 31), LocalDate.of(2020, 1, 1)));
+  }
+
+  @Test
+  public void testDecodesEmptyRangeAsNull() {
+    //when
+    DateInterval dates = DateRangeCodec.decode("empty");
+
+    //then
+    assertThat(dates).isNull();
+  }
+
+  @Test
+  public void testRejectsUnboundedRange() {
+    //when / then
+    assertThatThrownBy(() -> DateRangeCodec.decode("[2019-10-01,)"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("[2019-10-01,)");
+  }
+
+  @Test
+  public void testRejectsMalformedDates() {
+    //when / then
+    assertThatThrownBy(() -> DateRangeCodec.decode("[2019-1O-01,2019-10-04)"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
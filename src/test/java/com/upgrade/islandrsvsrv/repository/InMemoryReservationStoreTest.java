@@ -0,0 +1,271 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import static com.upgrade.islandrsvsrv.domain.DateIntervals.interval;
+import static java.time.temporal.ChronoUnit.DAYS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation.Type;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
+import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import com.upgrade.islandrsvsrv.services.AvailabilityChangeFeed;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+public class InMemoryReservationStoreTest {
+
+  private static final LocalDate NOW = LocalDate.now();
+
+  @Rule
+  public ExpectedException expectedEx = ExpectedException.none();
+
+  private final InMemoryReservationStore reservationStore = new InMemoryReservationStore(
+      new String[]{"The island", "The beach"}, new AvailabilityChangeFeed(16), true);
+
+  @Test
+  public void testReturnsReservationDatesOfTheSiteInOrder() {
+    //given
+    insert(1L, 6, 8);
+    insert(1L, 2, 4);
+    insert(2L, 4, 6);
+
+    //when
+    List<DateInterval> reservationDates = reservationStore
+        .getReservationDates(Campsite.DEFAULT_ID, NOW.plus(3, DAYS), NOW.plus(6, DAYS));
+
+    //then
+    assertThat(reservationDates).containsExactly(interval(2, 4), interval(6, 8));
+  }
+
+  @Test
+  public void testReturnsTheGapsBetweenTheReservationsOfTheSite() {
+    //given
+    insert(1L, 0, 2);
+    insert(1L, 3, 5);
+    insert(1L, 8, 12);
+    insert(2L, 5, 8);
+
+    //when
+    List<DateInterval> availableIntervals = reservationStore
+        .getAvailableIntervals(Campsite.DEFAULT_ID, NOW.plus(1, DAYS), NOW.plus(10, DAYS));
+
+    //then
+    assertThat(availableIntervals).containsExactly(interval(2, 3), interval(5, 8));
+  }
+
+  @Test
+  public void testOverlappingReservationOnTheSameSiteIsRejected() {
+    //given
+    insert(1L, 2, 5);
+    insert(2L, 2, 5);
+    expectedEx.expect(DataIntegrityViolationException.class);
+
+    //when
+    insert(null, 4, 6);
+  }
+
+  @Test
+  public void testReservationCanMoveOverItsOwnDates() {
+    //given
+    long id = insert(1L, 2, 5);
+    insert(1L, 6, 7);
+
+    //when
+    Optional<Reservation> previous = reservationStore.updateReservation(id,
+        ReservationModification.builder()
+            .start(NOW.plus(3, DAYS))
+            .end(NOW.plus(6, DAYS))
+            .build());
+
+    //then
+    assertThat(previous).contains(Reservation.builder()
+        .id(id)
+        .siteId(1L)
+        .dateInterval(interval(2, 5))
+        .build());
+    assertThat(reservationStore.getReservation(id).getDateInterval()).isEqualTo(interval(3, 6));
+  }
+
+  @Test
+  public void testConflictingMoveKeepsTheReservation() {
+    //given
+    long id = insert(1L, 2, 5);
+    insert(1L, 6, 8);
+
+    //when
+    try {
+      reservationStore.updateReservation(id, ReservationModification.builder()
+          .start(NOW.plus(4, DAYS))
+          .end(NOW.plus(7, DAYS))
+          .build());
+    } catch (DataIntegrityViolationException expected) {
+      //then
+      assertThat(reservationStore.getReservationDates(1L, NOW, NOW.plus(10, DAYS)))
+          .containsExactly(interval(2, 5), interval(6, 8));
+      return;
+    }
+    throw new AssertionError("The move should have conflicted");
+  }
+
+  @Test
+  public void testTakenDatesAreReportedAsConflictsWithoutException() {
+    //given
+    long id = insert(1L, 2, 5);
+    insert(1L, 6, 8);
+
+    //when
+    ReservationOperationResult taken = reservationStore.insertReservationIfFree(
+        ReservationRequest.builder()
+            .start(NOW.plus(4, DAYS))
+            .end(NOW.plus(6, DAYS))
+            .build());
+    ReservationOperationResult movedOverOther = reservationStore.updateReservationIfFree(id,
+        ReservationModification.builder()
+            .start(NOW.plus(4, DAYS))
+            .end(NOW.plus(7, DAYS))
+            .build());
+    ReservationOperationResult moved = reservationStore.updateReservationIfFree(id,
+        ReservationModification.builder()
+            .start(NOW.plus(3, DAYS))
+            .end(NOW.plus(6, DAYS))
+            .build());
+
+    //then
+    assertThat(taken.getStatus()).isEqualTo(Status.CONFLICT);
+    assertThat(movedOverOther.getStatus()).isEqualTo(Status.CONFLICT);
+    assertThat(moved.getStatus()).isEqualTo(Status.MODIFIED);
+    assertThat(moved.getPreviousDates()).isEqualTo(interval(2, 5));
+    assertThat(reservationStore.updateReservationIfFree(42L, ReservationModification.builder()
+        .start(NOW).end(NOW.plus(1, DAYS)).build()).getStatus()).isEqualTo(Status.NOT_FOUND);
+    assertThat(reservationStore.getReservationDates(1L, NOW, NOW.plus(10, DAYS)))
+        .containsExactly(interval(3, 6), interval(6, 8));
+  }
+
+  @Test
+  public void testListsTheReservationsOfAUserByStartThenIdAPageAtATime() {
+    //given
+    long third = insert(1L, 5, 6);
+    long first = insert(1L, 0, 2);
+    long second = insert(2L, 0, 1);
+    reservationStore.insertReservation(ReservationRequest.builder()
+        .userName("other")
+        .userEmail("other")
+        .start(NOW.plus(3, DAYS))
+        .end(NOW.plus(4, DAYS))
+        .build());
+
+    //when
+    List<Long> firstPage = new ArrayList<>();
+    reservationStore.forEachReservationOfUser("email", null, null, 2,
+        reservation -> firstPage.add(reservation.getId()));
+    List<Long> secondPage = new ArrayList<>();
+    reservationStore.forEachReservationOfUser("email", NOW, second, 2,
+        reservation -> secondPage.add(reservation.getId()));
+
+    //then
+    assertThat(firstPage).containsExactly(first, second);
+    assertThat(secondPage).containsExactly(third);
+  }
+
+  @Test
+  public void testDeletedReservationIsGone() {
+    //given
+    long id = insert(1L, 2, 5);
+    expectedEx.expect(EmptyResultDataAccessException.class);
+
+    //when
+    Optional<Reservation> deleted = reservationStore.deleteReservation(id);
+
+    //then
+    assertThat(deleted).isPresent();
+    assertThat(reservationStore.deleteReservation(id)).isEmpty();
+    assertThat(reservationStore.getFreeCampsites(NOW.plus(2, DAYS), NOW.plus(5, DAYS)))
+        .containsExactly(1L, 2L);
+    reservationStore.getReservation(id);
+  }
+
+  @Test
+  public void testBatchOperationsSeeTheEarlierOnes() {
+    //given
+    long id = insert(1L, 2, 5);
+
+    //when
+    List<ReservationOperationResult> results = reservationStore.applyOperations(List.of(
+        ReservationOperation.builder().type(Type.CANCEL).id(id).build(),
+        operation(Type.CREATE, null, 3, 4),
+        operation(Type.CREATE, null, 3, 5),
+        operation(Type.MODIFY, 42L, 8, 9)));
+
+    //then
+    assertThat(results).extracting(ReservationOperationResult::getStatus)
+        .containsExactly(Status.CANCELLED, Status.CREATED, Status.CONFLICT, Status.NOT_FOUND);
+    assertThat(results.get(0).getPreviousDates()).isEqualTo(interval(2, 5));
+  }
+
+  @Test
+  public void testConcurrentBookingsOfTheSameDatesOnlyLetOneThrough() throws Exception {
+    //given
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Callable<Boolean>> bookings = new ArrayList<>();
+    for (int i = 0; i < threads * 10; i++) {
+      int offset = i % 3;
+      bookings.add(() -> {
+        try {
+          insert(1L, 2 + offset, 5 + offset);
+          return true;
+        } catch (DataIntegrityViolationException e) {
+          return false;
+        }
+      });
+    }
+
+    //when
+    int booked = 0;
+    for (Future<Boolean> booking : executor.invokeAll(bookings)) {
+      booked += booking.get() ? 1 : 0;
+    }
+    executor.shutdown();
+
+    //then
+    assertThat(booked).isEqualTo(1);
+    assertThat(reservationStore.getReservations(NOW, NOW.plus(10, DAYS))).hasSize(1);
+  }
+
+  private long insert(Long siteId, int startDays, int endDays) {
+    return reservationStore.insertReservation(ReservationRequest.builder()
+        .siteId(siteId)
+        .userName("name")
+        .userEmail("email")
+        .start(NOW.plus(startDays, DAYS))
+        .end(NOW.plus(endDays, DAYS))
+        .build());
+  }
+
+  private static ReservationOperation operation(Type type, Long id, int startDays, int endDays) {
+    return ReservationOperation.builder()
+        .type(type)
+        .id(id)
+        .userName("name")
+        .userEmail("email")
+        .start(NOW.plus(startDays, DAYS))
+        .end(NOW.plus(endDays, DAYS))
+        .build();
+  }
+}
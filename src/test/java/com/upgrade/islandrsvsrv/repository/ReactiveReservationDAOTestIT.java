@@ -0,0 +1,85 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import static java.time.temporal.ChronoUnit.DAYS;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.testcontainers.containers.PostgreSQLContainer;
+import reactor.test.StepVerifier;
+
+@RunWith(SpringRunner.class)
+@ContextConfiguration(initializers = {ReactiveReservationDAOTestIT.Initializer.class})
+@SpringBootTest
+@ActiveProfiles("r2dbc")
+public class ReactiveReservationDAOTestIT {
+
+  private static final LocalDate NOW = LocalDate.now();
+  @ClassRule
+  public static PostgreSQLContainer postgres = new PostgreSQLContainer<>("postgres:latest")
+      .withDatabaseName("island_resort_test")
+      .withUsername("upgrade")
+      .withPassword("upgrade");
+  @Autowired
+  private ReactiveReservationDAO reservationDAO;
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Test
+  public void testReturnsReservationDatesInOrder() {
+    //given
+    LocalDate firstReservationStart = NOW.plus(1, DAYS);
+    LocalDate firstReservationEnd = firstReservationStart.plus(1, DAYS);
+    LocalDate secondReservationStart = NOW.plus(2, DAYS);
+    LocalDate secondReservationEnd = secondReservationStart.plus(1, DAYS);
+
+    ReservationDAO writes = new ReservationDAO(jdbcTemplate, new SimpleMeterRegistry());
+    writes.insertReservation(ReservationRequest.builder()
+        .userEmail("emailhere")
+        .userName("fullnamehere")
+        .start(secondReservationStart)
+        .end(secondReservationEnd)
+        .build());
+    writes.insertReservation(ReservationRequest.builder()
+        .userEmail("emailhere")
+        .userName("fullnamehere")
+        .start(firstReservationStart)
+        .end(firstReservationEnd)
+        .build());
+
+    // when / then
+    StepVerifier.create(reservationDAO
+        .getReservationDates(Campsite.DEFAULT_ID, NOW, NOW.plus(10, DAYS)))
+        .expectNext(new DateInterval(firstReservationStart, firstReservationEnd))
+        .expectNext(new DateInterval(secondReservationStart, secondReservationEnd))
+        .verifyComplete();
+  }
+
+  static class Initializer
+      implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    public void initialize(ConfigurableApplicationContext configurableApplicationContext) {
+      TestPropertyValues.of(
+          "spring.datasource.url=" + postgres.getJdbcUrl(),
+          "spring.datasource.username=" + postgres.getUsername(),
+          "spring.datasource.password=" + postgres.getPassword(),
+          "r2dbc.url=r2dbc:pool:postgresql://" + postgres.getContainerIpAddress() + ":" +
+              postgres.getFirstMappedPort() + "/" + postgres.getDatabaseName()
+      ).applyTo(configurableApplicationContext.getEnvironment());
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+
+public class ReadRoutingTest {
+
+  @Test
+  public void testParsesPostgresLsn() {
+    //when
+    long lsn = ReadRouting.parseLsn("16/B374D848");
+
+    //then
+    assertThat(lsn).isEqualTo(0x16B374D848L);
+    assertThat(ReadRouting.formatLsn(lsn)).isEqualTo("16/B374D848");
+  }
+
+  @Test
+  public void testRejectsWhatIsNotAnLsn() {
+    assertThatThrownBy(() -> ReadRouting.parseLsn("16B374D848"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ReadRouting.parseLsn("-1/0"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ReadRouting.parseLsn("0/123456789"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testRoutingOnlyLastsForTheReads() throws Exception {
+    //when
+    boolean replicaRead = ReadRouting.onReplica(ReadRouting::isReplicaRead);
+    long minimumLsn = ReadRouting.readingAfter("0/10", ReadRouting::minimumLsn);
+
+    //then
+    assertThat(replicaRead).isTrue();
+    assertThat(minimumLsn).isEqualTo(16);
+    assertThat(ReadRouting.isReplicaRead()).isFalse();
+    assertThat(ReadRouting.minimumLsn()).isEqualTo(0);
+  }
+}
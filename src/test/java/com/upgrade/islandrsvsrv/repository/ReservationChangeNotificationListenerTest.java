@@ -0,0 +1,72 @@
+package com.upgrade.islandrsvsrv.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.services.AvailabilityChangeFeed;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.Disposable;
+
+public class ReservationChangeNotificationListenerTest {
+
+  private ReservationChangeNotificationListener listener;
+
+  @Before
+  public void setUp() {
+    listener = new ReservationChangeNotificationListener(null, null, new ObjectMapper());
+  }
+
+  @Test
+  public void testParsesUpdatePayload() throws Exception {
+    // when
+    ReservationChangedEvent change = listener.parseChange("{\"id\" : 12, " +
+        "\"previous\" : \"[2030-01-01,2030-01-03)\", \"current\" : \"[2030-02-01,2030-02-02)\"}");
+
+    // then
+    assertThat(change).isEqualTo(ReservationChangedEvent.builder()
+        .reservationId(12L)
+        .previousDates(new DateInterval(LocalDate.of(2030, 1, 1), LocalDate.of(2030, 1, 3)))
+        .newDates(new DateInterval(LocalDate.of(2030, 2, 1), LocalDate.of(2030, 2, 2)))
+        .build());
+  }
+
+  @Test
+  public void testChangeAfterABadOneIsStillPublished() {
+    //given
+    AvailabilityChangeFeed availabilityChangeFeed = new AvailabilityChangeFeed(2);
+    listener = new ReservationChangeNotificationListener(null, availabilityChangeFeed,
+        new ObjectMapper());
+    List<ReservationChangedEvent> published = new ArrayList<>();
+    Disposable subscription = availabilityChangeFeed.reservationChanges()
+        .subscribe(published::add);
+
+    //when
+    listener.publish("{\"id\" : 2, \"current\" : \"[2030-02-01,)\"}");
+    listener.publish("{\"id\" : ");
+    listener.publish("{\"id\" : 3, \"current\" : \"[2030-02-01,2030-02-02)\"}");
+
+    //then
+    assertThat(published).extracting(ReservationChangedEvent::getReservationId)
+        .containsExactly(3L);
+    subscription.dispose();
+  }
+
+  @Test
+  public void testParsesInsertPayload() throws Exception {
+    // when
+    ReservationChangedEvent change = listener
+        .parseChange("{\"id\" : 3, \"site\" : 7, \"current\" : \"[2030-02-01,2030-02-02)\"}");
+
+    // then
+    assertThat(change.getReservationId()).isEqualTo(3L);
+    assertThat(change.getSiteId()).isEqualTo(7L);
+    assertThat(change.getChangedDates()).containsExactly(
+        new DateInterval(LocalDate.of(2030, 2, 1), LocalDate.of(2030, 2, 2)));
+  }
+}
@@ -4,20 +4,26 @@ import static java.time.LocalDate.now;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.upgrade.islandrsvsrv.domain.Campsite;
 import com.upgrade.islandrsvsrv.domain.DateInterval;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Date;
+import java.sql.ResultSet;
 import java.time.LocalDate;
 import java.util.List;
-import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ReservationDAOTest {
@@ -29,24 +35,35 @@ public class ReservationDAOTest {
 
   @Before
   public void setUp() throws Exception {
-    reservationDAO = new ReservationDAO(jdbcTemplate);
+    reservationDAO = new ReservationDAO(jdbcTemplate, new SimpleMeterRegistry());
   }
 
   @Test
-  public void testReturnsReservationDates() {
+  public void testReturnsReservationDates() throws Exception {
     // given
     LocalDate start = now();
     LocalDate end = now().plus(10, DAYS);
     DateInterval expected = new DateInterval(start, end.minus(1, DAYS));
-    when(jdbcTemplate.query(any(String.class), any(RowMapper.class), any(), any()))
-        .thenReturn(List.of(Optional.of(expected)));
+    ResultSet resultSet = mock(ResultSet.class);
+    when(resultSet.getString(1)).thenReturn("[" + start + "," + end.minus(1, DAYS) + ")", "empty");
+    doAnswer(invocation -> {
+      RowCallbackHandler handler = invocation.getArgument(1);
+      handler.processRow(resultSet);
+      handler.processRow(resultSet);
+      return null;
+    }).when(jdbcTemplate)
+        .query(any(String.class), any(RowCallbackHandler.class), any(), any(), any(), any(),
+            any());
 
     // when
-    List<DateInterval> reservationDates = reservationDAO.getReservationDates(start, end);
+    List<DateInterval> reservationDates = reservationDAO
+        .getReservationDates(Campsite.DEFAULT_ID, start, end);
 
     // then
     assertThat(reservationDates).containsExactly(expected);
 
-    verify(jdbcTemplate).query(any(String.class), any(RowMapper.class), any(), any());
+    verify(jdbcTemplate)
+        .query(any(String.class), any(RowCallbackHandler.class), any(), any(), any(), any(),
+            eq(Date.valueOf(start.minus(3, DAYS))));
   }
 }
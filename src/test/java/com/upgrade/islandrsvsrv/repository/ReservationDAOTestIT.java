@@ -3,14 +3,25 @@ package com.upgrade.islandrsvsrv.repository;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.time.temporal.ChronoUnit.MONTHS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertTrue;
 
+import com.upgrade.islandrsvsrv.domain.Campsite;
 import com.upgrade.islandrsvsrv.domain.DateInterval;
 import com.upgrade.islandrsvsrv.domain.Reservation;
 import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation.Type;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
 import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Date;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
@@ -27,6 +38,7 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.testcontainers.containers.PostgreSQLContainer;
 
 @RunWith(SpringRunner.class)
@@ -50,7 +62,7 @@ public class ReservationDAOTestIT {
 
   @Before
   public void setUp() {
-    reservationDAO = new ReservationDAO(jdbcTemplate);
+    reservationDAO = new ReservationDAO(jdbcTemplate, new SimpleMeterRegistry());
   }
 
   @Test
@@ -69,7 +81,7 @@ public class ReservationDAOTestIT {
 
     // when
     List<DateInterval> reservationsDates = reservationDAO
-        .getReservationDates(START_DATE_WINDOW, END_DATE_WINDOW);
+        .getReservationDates(Campsite.DEFAULT_ID, START_DATE_WINDOW, END_DATE_WINDOW);
 
     // then
     DateInterval expected = new DateInterval(reservationStart, reservationEnd);
@@ -84,7 +96,7 @@ public class ReservationDAOTestIT {
         .userEmail("email")
         .userName("userName")
         .start(LocalDate.now().plus(3, MONTHS))
-        .end(LocalDate.now().plus(4, MONTHS))
+        .end(LocalDate.now().plus(3, MONTHS).plus(3, DAYS))
         .build();
     // when
     Long reservationId = reservationDAO.insertReservation(reservation);
@@ -97,24 +109,24 @@ public class ReservationDAOTestIT {
   public void testInsertReservationThrowsExceptionIfItOverlapsWithExistingReservations() {
     //given
     DateInterval dateInterval = new DateInterval(LocalDate.now().plus(6, MONTHS),
-        LocalDate.now().plus(7, MONTHS));
+        LocalDate.now().plus(6, MONTHS).plus(3, DAYS));
     ReservationRequest reservation = ReservationRequest.builder()
         .userEmail("email")
         .userName("userName")
         .start(LocalDate.now().plus(6, MONTHS))
-        .end(LocalDate.now().plus(7, MONTHS))
+        .end(LocalDate.now().plus(6, MONTHS).plus(3, DAYS))
         .build();
     expectedEx.expect(DataIntegrityViolationException.class);
     expectedEx.expectMessage(
         "PreparedStatementCallback; ERROR: conflicting key value violates exclusion " +
-            "constraint \"camping_reservation_reservation_dates_excl\"\n" +
-            "  Detail: Key (reservation_dates)=(" + dateInterval + ") conflicts with " +
-            "existing key (reservation_dates)=(" + dateInterval + ").; " +
+            "constraint \"camping_reservation_site_dates_excl\"\n" +
+            "  Detail: Key (site_id, reservation_dates)=(1, " + dateInterval + ") conflicts " +
+            "with existing key (site_id, reservation_dates)=(1, " + dateInterval + ").; " +
             "nested exception is org.postgresql.util.PSQLException: ERROR: " +
             "conflicting key value violates exclusion constraint " +
-            "\"camping_reservation_reservation_dates_excl\"\n" +
-            "  Detail: Key (reservation_dates)=(" + dateInterval + ") " +
-            "conflicts with existing key (reservation_dates)=(" + dateInterval + ").");
+            "\"camping_reservation_site_dates_excl\"\n" +
+            "  Detail: Key (site_id, reservation_dates)=(1, " + dateInterval + ") conflicts " +
+            "with existing key (site_id, reservation_dates)=(1, " + dateInterval + ").");
 
     // when
     reservationDAO.insertReservation(reservation);
@@ -132,7 +144,7 @@ public class ReservationDAOTestIT {
         .userEmail("email")
         .userName("userName")
         .start(LocalDate.now().plus(8, MONTHS))
-        .end(LocalDate.now().plus(9, MONTHS))
+        .end(LocalDate.now().plus(8, MONTHS).plus(3, DAYS))
         .build();
     Long reservationId = reservationDAO.insertReservation(reservation);
 
@@ -151,6 +163,365 @@ public class ReservationDAOTestIT {
     assertThat(actualReservation.getDateInterval().getEnd()).isEqualTo(expectedEnd);
   }
 
+  @Test
+  public void testUpdateReservationReturnsPreviousDates() {
+    //given
+    LocalDate start = LocalDate.now().plus(12, MONTHS);
+    LocalDate end = start.plus(2, DAYS);
+    Long reservationId = reservationDAO.insertReservation(ReservationRequest.builder()
+        .userEmail("email")
+        .userName("userName")
+        .start(start)
+        .end(end)
+        .build());
+
+    //when
+    Optional<Reservation> previous = reservationDAO.updateReservation(reservationId,
+        ReservationModification.builder()
+            .start(start.plus(10, DAYS))
+            .end(end.plus(10, DAYS))
+            .build());
+
+    //then
+    assertThat(previous.map(Reservation::getDateInterval)).contains(new DateInterval(start, end));
+    assertThat(previous.map(Reservation::getSiteId)).contains(Campsite.DEFAULT_ID);
+  }
+
+  @Test
+  public void testUpdateUnknownReservationReturnsNothing() {
+    //when
+    Optional<Reservation> previous = reservationDAO.updateReservation(-1L,
+        ReservationModification.builder()
+            .start(LocalDate.now().plus(13, MONTHS))
+            .end(LocalDate.now().plus(14, MONTHS))
+            .build());
+
+    //then
+    assertThat(previous).isEmpty();
+  }
+
+  @Test
+  public void testDeleteReservationReturnsItsDates() {
+    //given
+    LocalDate start = LocalDate.now().plus(15, MONTHS);
+    LocalDate end = start.plus(2, DAYS);
+    Long reservationId = reservationDAO.insertReservation(ReservationRequest.builder()
+        .userEmail("email")
+        .userName("userName")
+        .start(start)
+        .end(end)
+        .build());
+
+    //when
+    Optional<Reservation> deleted = reservationDAO.deleteReservation(reservationId);
+
+    //then
+    assertThat(deleted.map(Reservation::getDateInterval)).contains(new DateInterval(start, end));
+    assertThat(reservationDAO.deleteReservation(reservationId)).isEmpty();
+  }
+
+  @Test
+  public void testAppliesOperationsWithResultPerOperation() {
+    //given
+    LocalDate start = LocalDate.now().plus(20, MONTHS);
+    DateInterval first = new DateInterval(start, start.plus(3, DAYS));
+    DateInterval second = new DateInterval(start.plus(10, DAYS), start.plus(12, DAYS));
+    Long firstId = reservationDAO.insertReservation(request(first));
+    Long secondId = reservationDAO.insertReservation(request(second));
+
+    //when
+    List<ReservationOperationResult> results = reservationDAO.applyOperations(List.of(
+        create(start.plus(1, DAYS), start.plus(2, DAYS)),
+        create(start.plus(5, DAYS), start.plus(7, DAYS)),
+        create(start.plus(6, DAYS), start.plus(8, DAYS)),
+        modify(secondId, start.plus(2, DAYS), start.plus(4, DAYS)),
+        ReservationOperation.builder().type(Type.CANCEL).id(firstId).build(),
+        create(start, start.plus(2, DAYS)),
+        modify(-1L, start.plus(14, DAYS), start.plus(15, DAYS)),
+        modify(secondId, start.plus(20, DAYS), start.plus(22, DAYS))));
+
+    //then
+    assertThat(results).extracting(ReservationOperationResult::getStatus).containsExactly(
+        Status.CONFLICT, Status.CREATED, Status.CONFLICT, Status.CONFLICT, Status.CANCELLED,
+        Status.CREATED, Status.NOT_FOUND, Status.MODIFIED);
+    assertThat(results.get(4).getPreviousDates()).isEqualTo(first);
+    assertThat(results.get(7).getPreviousDates()).isEqualTo(second);
+    assertThat(reservationDAO
+        .getReservationDates(Campsite.DEFAULT_ID, start, start.plus(30, DAYS))).containsExactly(
+        new DateInterval(start, start.plus(2, DAYS)),
+        new DateInterval(start.plus(5, DAYS), start.plus(7, DAYS)),
+        new DateInterval(start.plus(20, DAYS), start.plus(22, DAYS)));
+    assertThat(reservationDAO.getReservation(results.get(1).getId()).getDateInterval())
+        .isEqualTo(new DateInterval(start.plus(5, DAYS), start.plus(7, DAYS)));
+  }
+
+  @Test
+  public void testSitesAreBookedIndependently() {
+    //given
+    long siteId = campsite("The lighthouse");
+    LocalDate start = LocalDate.now().plus(16, MONTHS);
+    DateInterval dates = new DateInterval(start, start.plus(3, DAYS));
+    reservationDAO.insertReservation(request(dates));
+
+    //when
+    Long reservationId = reservationDAO.insertReservation(request(dates).toBuilder()
+        .siteId(siteId)
+        .build());
+
+    //then
+    assertThat(reservationDAO.getReservation(reservationId).getSiteId()).isEqualTo(siteId);
+    assertThat(reservationDAO.getReservationDates(siteId, start, start.plus(10, DAYS)))
+        .containsExactly(dates);
+    assertThat(reservationDAO.getReservationDates(Campsite.DEFAULT_ID, start,
+        start.plus(10, DAYS))).containsExactly(dates);
+  }
+
+  @Test
+  public void testBatchOnlyConflictsWithinASite() {
+    //given
+    long siteId = campsite("The beach");
+    LocalDate start = LocalDate.now().plus(18, MONTHS);
+    Long defaultSiteReservationId = reservationDAO.insertReservation(
+        request(new DateInterval(start, start.plus(2, DAYS))));
+    Long otherSiteReservationId = reservationDAO.insertReservation(
+        request(new DateInterval(start.plus(4, DAYS), start.plus(6, DAYS))).toBuilder()
+            .siteId(siteId)
+            .build());
+
+    //when
+    List<ReservationOperationResult> results = reservationDAO.applyOperations(List.of(
+        create(start, start.plus(1, DAYS)).toBuilder().siteId(siteId).build(),
+        create(start.plus(4, DAYS), start.plus(5, DAYS)),
+        modify(defaultSiteReservationId, start.plus(7, DAYS), start.plus(9, DAYS)),
+        modify(otherSiteReservationId, start, start.plus(2, DAYS))));
+
+    //then
+    assertThat(results).extracting(ReservationOperationResult::getStatus).containsExactly(
+        Status.CREATED, Status.CREATED, Status.MODIFIED, Status.CONFLICT);
+    assertThat(results).extracting(ReservationOperationResult::getSiteId).containsExactly(
+        siteId, Campsite.DEFAULT_ID, Campsite.DEFAULT_ID, null);
+  }
+
+  @Test
+  public void testReturnsTheFreeRangesOfTheSite() {
+    //given
+    long siteId = campsite("The cove");
+    LocalDate start = LocalDate.now().plus(22, MONTHS);
+    reservationDAO.insertReservation(request(new DateInterval(start.minus(2, DAYS),
+        start.plus(1, DAYS))).toBuilder().siteId(siteId).build());
+    reservationDAO.insertReservation(request(new DateInterval(start.plus(3, DAYS),
+        start.plus(5, DAYS))).toBuilder().siteId(siteId).build());
+    reservationDAO.insertReservation(request(new DateInterval(start.plus(8, DAYS),
+        start.plus(11, DAYS))).toBuilder().siteId(siteId).build());
+
+    //when
+    List<DateInterval> availableIntervals = reservationDAO
+        .getAvailableIntervals(siteId, start, start.plus(10, DAYS));
+
+    //then
+    assertThat(availableIntervals).containsExactly(
+        new DateInterval(start.plus(1, DAYS), start.plus(3, DAYS)),
+        new DateInterval(start.plus(5, DAYS), start.plus(8, DAYS)));
+    assertThat(reservationDAO.getAvailableIntervals(siteId, start.plus(3, DAYS),
+        start.plus(5, DAYS))).isEmpty();
+    assertThat(reservationDAO.getAvailableIntervals(Campsite.DEFAULT_ID, start,
+        start.plus(10, DAYS))).containsExactly(new DateInterval(start, start.plus(10, DAYS)));
+  }
+
+  @Test
+  public void testListsTheReservationsOfAUserByStartThenIdAPageAtATime() {
+    //given
+    long siteId = campsite("The grove");
+    LocalDate start = LocalDate.now().plus(26, MONTHS);
+    ReservationRequest request = request(new DateInterval(start, start.plus(1, DAYS)))
+        .toBuilder().userEmail("camper@island").build();
+    Long third = reservationDAO.insertReservation(request.toBuilder()
+        .start(start.plus(5, DAYS)).end(start.plus(6, DAYS)).build());
+    Long first = reservationDAO.insertReservation(request.toBuilder()
+        .end(start.plus(2, DAYS)).build());
+    Long second = reservationDAO.insertReservation(request.toBuilder().siteId(siteId).build());
+    reservationDAO.insertReservation(request.toBuilder().userEmail("other@island")
+        .start(start.plus(3, DAYS)).end(start.plus(4, DAYS)).build());
+
+    //when
+    List<Reservation> firstPage = new ArrayList<>();
+    reservationDAO.forEachReservationOfUser("camper@island", null, null, 2, firstPage::add);
+    List<Reservation> secondPage = new ArrayList<>();
+    reservationDAO.forEachReservationOfUser("camper@island", start, second, 2, secondPage::add);
+
+    //then
+    assertThat(firstPage).extracting(Reservation::getId).containsExactly(first, second);
+    assertThat(firstPage.get(1).getSiteId()).isEqualTo(siteId);
+    assertThat(secondPage).extracting(Reservation::getId).containsExactly(third);
+    assertThat(secondPage.get(0).getDateInterval())
+        .isEqualTo(new DateInterval(start.plus(5, DAYS), start.plus(6, DAYS)));
+  }
+
+  @Test
+  public void testTakenDatesAreReportedAsConflictsWithoutException() {
+    //given
+    long siteId = campsite("The cliffs");
+    LocalDate month = LocalDate.now().plus(3, MONTHS).withDayOfMonth(1);
+    ReservationRequest request = request(new DateInterval(month.minus(1, DAYS),
+        month.plus(1, DAYS))).toBuilder().siteId(siteId).build();
+    ReservationOperationResult created = reservationDAO.insertReservationIfFree(request);
+    Long other = reservationDAO.insertReservation(request.toBuilder()
+        .start(month.plus(5, DAYS)).end(month.plus(7, DAYS)).build());
+
+    //when
+    ReservationOperationResult sameDates = reservationDAO.insertReservationIfFree(request);
+    ReservationOperationResult acrossMonths = reservationDAO.insertReservationIfFree(
+        request.toBuilder().start(month).end(month.plus(2, DAYS)).build());
+    ReservationOperationResult movedOverOther = reservationDAO.updateReservationIfFree(
+        created.getId(), ReservationModification.builder()
+            .start(month.plus(4, DAYS)).end(month.plus(6, DAYS)).build());
+    ReservationOperationResult moved = reservationDAO.updateReservationIfFree(
+        created.getId(), ReservationModification.builder()
+            .start(month).end(month.plus(3, DAYS)).build());
+    ReservationOperationResult unknown = reservationDAO.updateReservationIfFree(-1L,
+        ReservationModification.builder().start(month).end(month.plus(1, DAYS)).build());
+
+    //then
+    assertThat(created.getStatus()).isEqualTo(Status.CREATED);
+    assertThat(created.getSiteId()).isEqualTo(siteId);
+    assertThat(sameDates.getStatus()).isEqualTo(Status.CONFLICT);
+    assertThat(acrossMonths.getStatus()).isEqualTo(Status.CONFLICT);
+    assertThat(movedOverOther.getStatus()).isEqualTo(Status.CONFLICT);
+    assertThat(moved.getStatus()).isEqualTo(Status.MODIFIED);
+    assertThat(moved.getPreviousDates())
+        .isEqualTo(new DateInterval(month.minus(1, DAYS), month.plus(1, DAYS)));
+    assertThat(unknown.getStatus()).isEqualTo(Status.NOT_FOUND);
+    assertThat(reservationDAO.getReservationDates(siteId, month.minus(1, DAYS),
+        month.plus(10, DAYS))).containsExactly(new DateInterval(month, month.plus(3, DAYS)),
+        reservationDAO.getReservation(other).getDateInterval());
+  }
+
+  @Test
+  public void testReservationDaysFollowTheWritesOfTheSite() {
+    //given
+    long siteId = campsite("The meadow");
+    LocalDate month = LocalDate.now().plus(30, MONTHS).withDayOfMonth(1);
+    ReservationRequest request = request(new DateInterval(month, month.plus(2, DAYS)))
+        .toBuilder().siteId(siteId).build();
+    reservationDAO.insertReservation(request);
+    Long moved = reservationDAO.insertReservation(request.toBuilder()
+        .start(month.plus(5, DAYS)).end(month.plus(7, DAYS)).build());
+    Long deleted = reservationDAO.insertReservation(request.toBuilder()
+        .start(month.plus(9, DAYS)).end(month.plus(10, DAYS)).build());
+    Integer daysWithoutTheTable = jdbcTemplate.queryForObject(
+        "SELECT count(*) FROM reservation_day", Integer.class);
+    ReflectionTestUtils.setField(reservationDAO, "dayTable", true);
+    reservationDAO.syncDayTable();
+
+    try {
+      //when
+      reservationDAO.updateReservation(moved, ReservationModification.builder()
+          .start(month.plus(2, DAYS)).end(month.plus(4, DAYS)).build());
+      reservationDAO.deleteReservation(deleted);
+
+      //then
+      assertThat(daysWithoutTheTable).isZero();
+      assertThat(reservationDAO.getReservationDates(siteId, month.plus(1, DAYS),
+          month.plus(10, DAYS))).containsExactly(
+          new DateInterval(month.plus(1, DAYS), month.plus(4, DAYS)));
+      assertThatThrownBy(() -> jdbcTemplate.update("INSERT INTO reservation_day(site_id, day,"
+          + " reservation_id) VALUES (?, ?, ?)", siteId, month.plus(3, DAYS), deleted))
+          .isInstanceOf(DataIntegrityViolationException.class);
+    } finally {
+      jdbcTemplate.queryForObject("SELECT disable_reservation_days()", Boolean.class);
+    }
+  }
+
+  @Test
+  public void testInsertReservationThrowsExceptionIfItOverlapsWithAStayFromTheMonthBefore() {
+    //given
+    long siteId = campsite("The dunes");
+    LocalDate month = LocalDate.now().plus(2, MONTHS).withDayOfMonth(1);
+    reservationDAO.insertReservation(request(new DateInterval(month.minus(2, DAYS),
+        month.plus(1, DAYS))).toBuilder().siteId(siteId).build());
+    expectedEx.expect(DataIntegrityViolationException.class);
+    expectedEx.expectMessage("conflicts with another one on site " + siteId);
+
+    //when
+    reservationDAO.insertReservation(request(new DateInterval(month, month.plus(2, DAYS)))
+        .toBuilder().siteId(siteId).build());
+
+    //then
+    //exception is asserted above
+  }
+
+  @Test
+  public void testPastMonthsGetTheirPartitionAndAreArchivedOnceTheirStaysEnded() {
+    //given
+    ReservationPartitionDAO reservationPartitionDAO = new ReservationPartitionDAO(jdbcTemplate);
+    long siteId = campsite("The marsh");
+    LocalDate month = LocalDate.now().minus(4, MONTHS).withDayOfMonth(1);
+    Long reservationId = reservationDAO.insertReservation(request(new DateInterval(
+        month.plus(1, DAYS), month.plus(3, DAYS))).toBuilder().siteId(siteId).build());
+
+    //when
+    int created = reservationPartitionDAO.createPartitions(month, LocalDate.now());
+    String partition = jdbcTemplate.queryForObject(
+        "SELECT tableoid::regclass::text FROM camping_reservation WHERE id = ?", String.class,
+        reservationId);
+    int archived = reservationPartitionDAO.archivePartitions(month.plus(1, MONTHS));
+
+    //then
+    assertThat(created).isEqualTo(4);
+    assertThat(partition).isEqualTo(
+        "camping_reservation_" + month.format(DateTimeFormatter.ofPattern("yyyy_MM")));
+    assertThat(archived).isEqualTo(1);
+    assertThat(jdbcTemplate.queryForObject(
+        "SELECT site_id FROM camping_reservation_archive WHERE id = ?", Long.class,
+        reservationId)).isEqualTo(siteId);
+    expectedEx.expect(EmptyResultDataAccessException.class);
+    reservationDAO.getReservation(reservationId);
+  }
+
+  @Test
+  public void testStaysLongerThanTheMaximumAreRejected() {
+    //given
+    LocalDate start = LocalDate.now().plus(14, MONTHS);
+    ReservationRequest request = request(new DateInterval(start,
+        start.plus(Reservation.MAX_NIGHTS + 1, DAYS)));
+    expectedEx.expect(DataIntegrityViolationException.class);
+    expectedEx.expectMessage("camping_reservation_max_nights");
+
+    //when
+    reservationDAO.insertReservation(request);
+
+    //then
+    //exception is asserted above
+  }
+
+  @Test
+  public void testRangeQueriesOnlySearchThePartitionsOfTheMonthsTheyCover() {
+    //given
+    ReservationPartitionDAO reservationPartitionDAO = new ReservationPartitionDAO(jdbcTemplate);
+    long siteId = campsite("The reef");
+    LocalDate month = LocalDate.now().plus(40, MONTHS).withDayOfMonth(1);
+    reservationPartitionDAO.createPartitions(month.minus(3, MONTHS), month);
+    Date start = Date.valueOf(month.plus(10, DAYS));
+    Date end = Date.valueOf(month.plus(15, DAYS));
+    Date earliestStart = Date.valueOf(month.plus(10 - Reservation.MAX_NIGHTS, DAYS));
+
+    //when
+    String availabilitiesPlan = plan(ReservationDAO.GET_AVAILABILITIES_QUERY, siteId, start, end,
+        end, earliestStart);
+    String reservationsPlan = plan(ReservationDAO.GET_RESERVATIONS_QUERY, start, end, end,
+        earliestStart);
+    String periodsPlan = plan("SELECT * FROM get_available_periods(?, daterange(?, ?))", siteId,
+        start, end);
+
+    //then
+    for (String queryPlan : List.of(availabilitiesPlan, reservationsPlan, periodsPlan)) {
+      assertThat(queryPlan).contains(partition(month))
+          .doesNotContain(partition(month.minus(1, MONTHS)))
+          .doesNotContain(partition(month.minus(2, MONTHS)))
+          .doesNotContain("camping_reservation_default");
+    }
+  }
+
   @Test
   public void testDeleteReservation() {
     //given
@@ -158,7 +529,7 @@ public class ReservationDAOTestIT {
         .userEmail("email")
         .userName("userName")
         .start(LocalDate.now().plus(10, MONTHS))
-        .end(LocalDate.now().plus(11, MONTHS))
+        .end(LocalDate.now().plus(10, MONTHS).plus(3, DAYS))
         .build();
     Long reservationId = reservationDAO.insertReservation(reservation);
 
@@ -200,7 +571,7 @@ public class ReservationDAOTestIT {
 
     // when
     List<DateInterval> reservationsDates = reservationDAO
-        .getReservationDates(START_DATE_WINDOW, END_DATE_WINDOW);
+        .getReservationDates(Campsite.DEFAULT_ID, START_DATE_WINDOW, END_DATE_WINDOW);
 
     // then
     DateInterval expectedFirstReservation = new DateInterval(firstReservationStart,
@@ -212,6 +583,48 @@ public class ReservationDAOTestIT {
         expectedSecondReservation);
   }
 
+  private String plan(String query, Object... args) {
+    return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + query, String.class, args));
+  }
+
+  private static String partition(LocalDate month) {
+    return "camping_reservation_" + month.format(DateTimeFormatter.ofPattern("yyyy_MM"));
+  }
+
+  private long campsite(String name) {
+    return jdbcTemplate.queryForObject("INSERT INTO campsite(name) VALUES (?) RETURNING id",
+        Long.class, name);
+  }
+
+  private static ReservationRequest request(DateInterval dates) {
+    return ReservationRequest.builder()
+        .userEmail("email")
+        .userName("userName")
+        .start(dates.getStart())
+        .end(dates.getEnd())
+        .build();
+  }
+
+  private static ReservationOperation create(LocalDate start, LocalDate end) {
+    return ReservationOperation.builder()
+        .type(Type.CREATE)
+        .userEmail("email")
+        .userName("userName")
+        .start(start)
+        .end(end)
+        .build();
+  }
+
+  private static ReservationOperation modify(Long reservationId, LocalDate start,
+      LocalDate end) {
+    return ReservationOperation.builder()
+        .type(Type.MODIFY)
+        .id(reservationId)
+        .start(start)
+        .end(end)
+        .build();
+  }
+
   static class Initializer
       implements ApplicationContextInitializer<ConfigurableApplicationContext> {
 
@@ -0,0 +1,165 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static com.upgrade.islandrsvsrv.domain.DateIntervals.interval;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+public class AvailabilityCacheTest {
+
+  private AvailabilityCache availabilityCache;
+
+  private AtomicInteger loads;
+
+  private final AvailabilityChangeFeed availabilityChangeFeed = new AvailabilityChangeFeed(2);
+
+  @Before
+  public void setUp() {
+    availabilityCache = new AvailabilityCache(100, Duration.ofMinutes(1),
+        availabilityChangeFeed);
+    availabilityCache.start();
+    loads = new AtomicInteger();
+  }
+
+  @After
+  public void tearDown() {
+    availabilityCache.stop();
+  }
+
+  @Test
+  public void testSecondLookupIsServedFromCache() {
+    //given
+    List<DateInterval> occupied = List.of(interval(2, 4));
+
+    //when
+    List<DateInterval> first = lookup(interval(0, 10), occupied);
+    List<DateInterval> second = lookup(interval(0, 10), occupied);
+
+    //then
+    assertThat(first).isEqualTo(occupied);
+    assertThat(second).isEqualTo(occupied);
+    assertThat(loads).hasValue(1);
+    assertThat(availabilityCache.stats().hitCount()).isEqualTo(1);
+    assertThat(availabilityCache.stats().missCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testWriteEvictsOverlappingRangesOnly() {
+    //given
+    lookup(interval(0, 10), List.of());
+    lookup(interval(20, 30), List.of());
+
+    //when
+    availabilityCache.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .newDates(interval(8, 11))
+        .build());
+    lookup(interval(0, 10), List.of(interval(8, 10)));
+    lookup(interval(20, 30), List.of());
+
+    //then
+    assertThat(loads).hasValue(3);
+    assertThat(availabilityCache.invalidationCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSitesAreCachedAndEvictedSeparately() {
+    //given
+    lookup(interval(0, 10), List.of());
+    lookup(7L, interval(0, 10), List.of());
+
+    //when
+    availabilityCache.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .siteId(7L)
+        .newDates(interval(2, 4))
+        .build());
+    lookup(interval(0, 10), List.of());
+    lookup(7L, interval(0, 10), List.of(interval(2, 4)));
+
+    //then
+    assertThat(loads).hasValue(3);
+    assertThat(availabilityCache.invalidationCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testWriteOfAnotherNodeEvictsOverlappingRanges() {
+    //given
+    lookup(interval(0, 10), List.of());
+
+    //when
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .newDates(interval(2, 4))
+        .build());
+    List<DateInterval> occupied = lookup(interval(0, 10), List.of(interval(2, 4)));
+
+    //then
+    assertThat(occupied).containsExactly(interval(2, 4));
+    assertThat(loads).hasValue(2);
+    assertThat(availabilityCache.invalidationCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testWriteEvictsRangesOverlappingPreviousDates() {
+    //given
+    lookup(interval(0, 10), List.of(interval(1, 3)));
+
+    //when
+    availabilityCache.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(interval(1, 3))
+        .newDates(interval(40, 42))
+        .build());
+    List<DateInterval> occupied = lookup(interval(0, 10), List.of());
+
+    //then
+    assertThat(occupied).isEmpty();
+    assertThat(loads).hasValue(2);
+  }
+
+  @Test
+  public void testLoadRacingWithWriteIsNotCached() {
+    //given
+    Mono<List<DateInterval>> racingLoad = Mono.fromCallable(() -> {
+      loads.incrementAndGet();
+      availabilityCache.onReservationChanged(ReservationChangedEvent.builder()
+          .reservationId(1L)
+          .newDates(interval(1, 2))
+          .build());
+      return List.<DateInterval>of();
+    });
+
+    //when
+    availabilityCache
+        .getOccupiedIntervals(Campsite.DEFAULT_ID, interval(0, 10), () -> racingLoad).block();
+    List<DateInterval> occupied = lookup(interval(0, 10), List.of(interval(1, 2)));
+
+    //then
+    assertThat(occupied).containsExactly(interval(1, 2));
+    assertThat(loads).hasValue(2);
+  }
+
+  private List<DateInterval> lookup(DateInterval requestedInterval,
+      List<DateInterval> occupiedIntervals) {
+    return lookup(Campsite.DEFAULT_ID, requestedInterval, occupiedIntervals);
+  }
+
+  private List<DateInterval> lookup(long siteId, DateInterval requestedInterval,
+      List<DateInterval> occupiedIntervals) {
+    return availabilityCache.getOccupiedIntervals(siteId, requestedInterval,
+        () -> Mono.fromCallable(() -> {
+          loads.incrementAndGet();
+          return occupiedIntervals;
+        })).block();
+  }
+}
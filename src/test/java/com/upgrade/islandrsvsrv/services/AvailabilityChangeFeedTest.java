@@ -0,0 +1,116 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static com.upgrade.islandrsvsrv.domain.DateIntervals.interval;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.test.StepVerifier;
+
+public class AvailabilityChangeFeedTest {
+
+  private AvailabilityChangeFeed availabilityChangeFeed;
+
+  @Before
+  public void setUp() {
+    availabilityChangeFeed = new AvailabilityChangeFeed(2);
+  }
+
+  @Test
+  public void testEverySubscriberGetsTheChanges() {
+    StepVerifier.create(availabilityChangeFeed.changes(Campsite.DEFAULT_ID))
+        .then(() -> availabilityChangeFeed.publish(change(interval(1, 2))))
+        .expectNext(List.of(interval(1, 2)))
+        .then(() -> availabilityChangeFeed.publish(change(interval(3, 4))))
+        .expectNext(List.of(interval(3, 4)))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  public void testSubscribersOnlyGetTheChangesOfTheirSite() {
+    StepVerifier.create(availabilityChangeFeed.changes(7L))
+        .then(() -> {
+          availabilityChangeFeed.publish(change(interval(1, 2)));
+          availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+              .siteId(7L)
+              .newDates(interval(3, 4))
+              .build());
+        })
+        .expectNext(List.of(interval(3, 4)))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  public void testSlowSubscriberLosesOldestChangesWithoutBlockingOthers() {
+    StepVerifier.create(availabilityChangeFeed.changes(Campsite.DEFAULT_ID), 0)
+        .then(() -> {
+          StepVerifier.create(availabilityChangeFeed.changes(Campsite.DEFAULT_ID))
+              .then(() -> {
+                availabilityChangeFeed.publish(change(interval(1, 2)));
+                availabilityChangeFeed.publish(change(interval(2, 3)));
+                availabilityChangeFeed.publish(change(interval(3, 4)));
+              })
+              .expectNextCount(3)
+              .thenCancel()
+              .verify();
+        })
+        .thenRequest(3)
+        .expectNext(List.of(interval(2, 3)))
+        .expectNext(List.of(interval(3, 4)))
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  public void testReservationChangesAreNotBuffered() {
+    //given
+    ReservationChangedEvent change = ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(interval(1, 2))
+        .newDates(interval(3, 4))
+        .build();
+
+    //when / then
+    StepVerifier.create(availabilityChangeFeed.reservationChanges())
+        .then(() -> availabilityChangeFeed.publish(change))
+        .expectNext(change)
+        .thenCancel()
+        .verify();
+  }
+
+  @Test
+  public void testSubscriberFailingOnAChangeKeepsGettingTheNextOnes() {
+    //given
+    List<ReservationChangedEvent> applied = new ArrayList<>();
+    List<ReservationChangedEvent> appliedByOther = new ArrayList<>();
+    Disposable failing = availabilityChangeFeed.subscribe("failing subscriber", change -> {
+      if (change.equals(change(interval(1, 2)))) {
+        throw new IllegalStateException("broken");
+      }
+      applied.add(change);
+    });
+    Disposable other = availabilityChangeFeed.subscribe("other subscriber", appliedByOther::add);
+
+    //when
+    availabilityChangeFeed.publish(change(interval(1, 2)));
+    availabilityChangeFeed.publish(change(interval(3, 4)));
+
+    //then
+    assertThat(applied).containsExactly(change(interval(3, 4)));
+    assertThat(appliedByOther).containsExactly(change(interval(1, 2)), change(interval(3, 4)));
+    failing.dispose();
+    other.dispose();
+  }
+
+  private static ReservationChangedEvent change(DateInterval newDates) {
+    return ReservationChangedEvent.builder().newDates(newDates).build();
+  }
+}
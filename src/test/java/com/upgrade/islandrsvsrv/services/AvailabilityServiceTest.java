@@ -7,8 +7,10 @@ import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import com.upgrade.islandrsvsrv.domain.DateInterval;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
@@ -16,11 +18,12 @@ import org.junit.Test;
 
 public class AvailabilityServiceTest {
 
+  private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
   private AvailabilityService availabilityService;
 
   @Before
   public void setUp() throws Exception {
-    availabilityService = new AvailabilityService();
+    availabilityService = new AvailabilityService(meterRegistry);
   }
 
   @Test
@@ -222,4 +225,163 @@ public class AvailabilityServiceTest {
     assertThat(availableDates).containsExactlyElementsOf(expected);
 
   }
+
+  @Test
+  public void testAvailableDatesMatchFindAvailabilities() {
+
+    //given
+    LocalDate now = now();
+    LocalDate tenDaysFromNow = now.plus(10, DAYS);
+    List<DateInterval> reservations = List.of(
+        new DateInterval(now.minus(1, DAYS), now.plus(1, DAYS)),
+        new DateInterval(now.plus(3, DAYS), now.plus(4, DAYS)),
+        new DateInterval(now.plus(4, DAYS), now.plus(6, DAYS)),
+        new DateInterval(now.plus(9, DAYS), now.plus(12, DAYS)));
+    DateInterval requestedInterval = new DateInterval(now, tenDaysFromNow);
+
+    //when
+    Iterable<LocalDate> availableDates = availabilityService
+        .availableDates(requestedInterval, reservations);
+
+    //then
+    assertThat(availableDates).containsExactlyElementsOf(
+        availabilityService.findAvailabilities(requestedInterval, reservations));
+    assertThat(availableDates).containsExactly(now.plus(1, DAYS), now.plus(2, DAYS),
+        now.plus(6, DAYS), now.plus(7, DAYS), now.plus(8, DAYS));
+  }
+
+  @Test
+  public void testAvailableDatesAreProducedLazily() {
+
+    //given
+    LocalDate now = now();
+    DateInterval hugeInterval = new DateInterval(now, LocalDate.MAX.minus(1, DAYS));
+
+    //when
+    Iterator<LocalDate> availableDates = availabilityService
+        .availableDates(hugeInterval, emptyList())
+        .iterator();
+
+    //then
+    assertThat(availableDates.next()).isEqualTo(now);
+    assertThat(availableDates.next()).isEqualTo(now.plus(1, DAYS));
+  }
+
+  @Test
+  public void testAvailableIntervalsAreTheGapsBetweenReservations() {
+
+    //given
+    LocalDate now = now();
+    LocalDate tenDaysFromNow = now.plus(10, DAYS);
+    List<DateInterval> reservations = List.of(
+        new DateInterval(now.minus(1, DAYS), now.plus(1, DAYS)),
+        new DateInterval(now.plus(3, DAYS), now.plus(4, DAYS)),
+        new DateInterval(now.plus(4, DAYS), now.plus(6, DAYS)),
+        new DateInterval(now.plus(9, DAYS), now.plus(12, DAYS)));
+
+    //when
+    Iterable<DateInterval> availableIntervals = availabilityService
+        .availableIntervals(new DateInterval(now, tenDaysFromNow), reservations);
+
+    //then
+    assertThat(availableIntervals).containsExactly(
+        new DateInterval(now.plus(1, DAYS), now.plus(3, DAYS)),
+        new DateInterval(now.plus(6, DAYS), now.plus(9, DAYS)));
+  }
+
+  @Test
+  public void testAvailableIntervalIsTheWholeRequestWhenNoReservations() {
+
+    //given
+    LocalDate now = now();
+    DateInterval requestedInterval = new DateInterval(now, now.plus(10, DAYS));
+
+    //when
+    Iterable<DateInterval> availableIntervals = availabilityService
+        .availableIntervals(requestedInterval, emptyList());
+
+    //then
+    assertThat(availableIntervals).containsExactly(requestedInterval);
+  }
+
+  @Test
+  public void testNearestFreeStaysAreTheClosestOnesLongEnoughBeforeAndAfter() {
+
+    //given
+    LocalDate now = now();
+    List<DateInterval> reservations = List.of(
+        new DateInterval(now.plus(2, DAYS), now.plus(4, DAYS)),
+        new DateInterval(now.plus(6, DAYS), now.plus(11, DAYS)),
+        new DateInterval(now.plus(12, DAYS), now.plus(13, DAYS)));
+
+    //when
+    List<DateInterval> stays = availabilityService.nearestFreeStays(
+        new DateInterval(now.plus(8, DAYS), now.plus(10, DAYS)),
+        new DateInterval(now, now.plus(20, DAYS)), reservations);
+
+    //then
+    assertThat(stays).containsExactly(
+        new DateInterval(now.plus(4, DAYS), now.plus(6, DAYS)),
+        new DateInterval(now.plus(13, DAYS), now.plus(15, DAYS)));
+  }
+
+  @Test
+  public void testNearestFreeStaysCanOverlapTheRequestedOne() {
+
+    //given
+    LocalDate now = now();
+    List<DateInterval> reservations = List.of(
+        new DateInterval(now.plus(7, DAYS), now.plus(8, DAYS)));
+
+    //when
+    List<DateInterval> stays = availabilityService.nearestFreeStays(
+        new DateInterval(now.plus(5, DAYS), now.plus(8, DAYS)),
+        new DateInterval(now, now.plus(12, DAYS)), reservations);
+
+    //then
+    assertThat(stays).containsExactly(
+        new DateInterval(now.plus(4, DAYS), now.plus(7, DAYS)),
+        new DateInterval(now.plus(8, DAYS), now.plus(11, DAYS)));
+  }
+
+  @Test
+  public void testNoNearestFreeStayWithoutRoomInTheSearchInterval() {
+
+    //given
+    LocalDate now = now();
+    List<DateInterval> reservations = List.of(
+        new DateInterval(now.plus(1, DAYS), now.plus(3, DAYS)),
+        new DateInterval(now.plus(4, DAYS), now.plus(6, DAYS)));
+
+    //when
+    List<DateInterval> stays = availabilityService.nearestFreeStays(
+        new DateInterval(now.plus(1, DAYS), now.plus(3, DAYS)),
+        new DateInterval(now, now.plus(7, DAYS)), reservations);
+
+    //then
+    assertThat(stays).isEmpty();
+  }
+
+  @Test
+  public void testRecordsOccupiedIntervalsAndAvailableDates() {
+
+    //given
+    LocalDate now = now();
+    List<DateInterval> reservations = List.of(
+        new DateInterval(now.plus(1, DAYS), now.plus(3, DAYS)),
+        new DateInterval(now.plus(5, DAYS), now.plus(6, DAYS)));
+
+    //when
+    List<LocalDate> availableDates = availabilityService
+        .findAvailabilities(new DateInterval(now, now.plus(10, DAYS)), reservations);
+
+    //then
+    assertThat(availableDates).hasSize(7);
+    assertThat(meterRegistry.summary("island.availability.occupied.intervals").totalAmount())
+        .isEqualTo(2);
+    assertThat(meterRegistry.summary("island.availability.results", "result", "dates")
+        .totalAmount()).isEqualTo(7);
+    assertThat(meterRegistry.summary("island.availability.results", "result", "intervals")
+        .count()).isEqualTo(0);
+  }
 }
@@ -0,0 +1,93 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+public class BlockingSchedulerTest {
+
+  private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private BlockingScheduler blockingScheduler = new BlockingScheduler(1, 1, Duration.ofSeconds(5),
+      false, new MockEnvironment(), meterRegistry);
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    blockingScheduler.destroy();
+  }
+
+  @Test
+  public void testCallsRunOffTheCallingThread() {
+    //when
+    String thread = blockingScheduler.call("read", () -> Thread.currentThread().getName()).block();
+
+    //then
+    assertThat(thread).startsWith("island-blocking-");
+  }
+
+  @Test
+  public void testCallsPastTheQueueAreRejectedRightAway() throws Exception {
+    //given
+    CountDownLatch started = new CountDownLatch(1);
+    Disposable running = blockingScheduler.call("write", () -> {
+      started.countDown();
+      return release.await(5, TimeUnit.SECONDS);
+    }).subscribe();
+    started.await(5, TimeUnit.SECONDS);
+    Disposable queued = blockingScheduler.call("write", () -> true).subscribe();
+
+    //when
+    Mono<Boolean> rejected = blockingScheduler.call("write", () -> true);
+
+    //then
+    assertThatThrownBy(rejected::block)
+        .isInstanceOfSatisfying(DatabaseBusyException.class,
+            e -> assertThat(e.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+    assertThat(meterRegistry.get("island.blocking.queued").gauge().value()).isEqualTo(1);
+    assertThat(meterRegistry.get("island.blocking.active").gauge().value()).isEqualTo(1);
+    assertThat(meterRegistry.counter("island.blocking.rejected", "operation", "write").count())
+        .isEqualTo(1);
+    running.dispose();
+    queued.dispose();
+  }
+
+  @Test
+  public void testCallsTimeOutPerOperationAndFreeTheirPlaceInTheQueue() throws Exception {
+    //given
+    blockingScheduler.destroy();
+    //the gauges only hold the scheduler that registered them weakly, it may be collected by now
+    meterRegistry = new SimpleMeterRegistry();
+    blockingScheduler = new BlockingScheduler(1, 1, Duration.ofSeconds(5), false,
+        new MockEnvironment().withProperty("island.blocking.timeout.write", "PT0.1S"),
+        meterRegistry);
+    blockingScheduler.call("read", () -> release.await(5, TimeUnit.SECONDS)).subscribe();
+    AtomicInteger calls = new AtomicInteger();
+
+    //when
+    Mono<Integer> timedOut = blockingScheduler.call("write", calls::incrementAndGet);
+
+    //then
+    assertThatThrownBy(timedOut::block).isInstanceOf(DatabaseBusyException.class)
+        .hasMessageContaining("took too long");
+    assertThat(meterRegistry.counter("island.blocking.timeouts", "operation", "write").count())
+        .isEqualTo(1);
+    assertThat(meterRegistry.get("island.blocking.queued").gauge().value()).isEqualTo(0);
+    release.countDown();
+    assertThat(blockingScheduler.call("read", () -> true).block()).isTrue();
+    assertThat(calls).hasValue(0);
+  }
+}
@@ -0,0 +1,69 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.upgrade.islandrsvsrv.repository.CampsiteStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class CampsiteServiceTest {
+
+  private final CampsiteStore campsiteStore = mock(CampsiteStore.class);
+
+  private final BlockingScheduler blockingScheduler = new BlockingScheduler(1, 1,
+      Duration.ofSeconds(5), false, new MockEnvironment(), new SimpleMeterRegistry());
+
+  private final CampsiteService campsiteService = new CampsiteService(campsiteStore,
+      Optional.empty(), blockingScheduler, Duration.ofMinutes(1));
+
+  @After
+  public void tearDown() {
+    blockingScheduler.destroy();
+  }
+
+  @Test
+  public void testSiteIsLookedUpOffTheCallingThread() {
+    //given
+    AtomicReference<String> thread = new AtomicReference<>();
+    when(campsiteStore.exists(7L)).thenAnswer(invocation -> {
+      thread.set(Thread.currentThread().getName());
+      return true;
+    });
+
+    //when
+    Boolean exists = campsiteService.exists(7L).block();
+
+    //then
+    assertThat(exists).isTrue();
+    assertThat(thread.get()).startsWith("island-blocking-");
+  }
+
+  @Test
+  public void testSitesAreLookedUpOnceWhetherTheyExistOrNot() {
+    //given
+    when(campsiteStore.exists(1L)).thenReturn(true);
+    when(campsiteStore.exists(7L)).thenReturn(false);
+
+    //when
+    campsiteService.exists(1L).block();
+    campsiteService.exists(7L).block();
+    Boolean known = campsiteService.exists(1L).block();
+    Boolean unknown = campsiteService.exists(7L).block();
+
+    //then
+    assertThat(known).isTrue();
+    assertThat(unknown).isFalse();
+    assertThat(campsiteService.existsBlocking(7L)).isFalse();
+    verify(campsiteStore, times(1)).exists(1L);
+    verify(campsiteStore, times(1)).exists(7L);
+  }
+}
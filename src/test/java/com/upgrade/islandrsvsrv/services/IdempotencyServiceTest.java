@@ -0,0 +1,98 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.upgrade.islandrsvsrv.domain.IdempotencyRecord;
+import com.upgrade.islandrsvsrv.repository.IdempotencyKeyStore;
+import java.time.Duration;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class IdempotencyServiceTest {
+
+  private static final Duration TTL = Duration.ofHours(24);
+  private static final Duration LOCK_TIMEOUT = Duration.ofMinutes(1);
+
+  @Mock
+  private IdempotencyKeyStore idempotencyKeyStore;
+  private IdempotencyService idempotencyService;
+
+  @Before
+  public void setUp() {
+    idempotencyService = new IdempotencyService(idempotencyKeyStore, TTL, LOCK_TIMEOUT, 100);
+  }
+
+  @Test
+  public void testFirstRequestGetsTheKey() {
+    //given
+    when(idempotencyKeyStore.claim("key", "hash", TTL, LOCK_TIMEOUT)).thenReturn(true);
+
+    //when
+    Optional<IdempotencyRecord> first = idempotencyService.claim("key", "hash");
+
+    //then
+    assertThat(first).isEmpty();
+  }
+
+  @Test
+  public void testRetryGetsTheStoredOutcome() {
+    //given
+    IdempotencyRecord stored = IdempotencyRecord.builder()
+        .requestHash("hash")
+        .status(200)
+        .body("3")
+        .build();
+    when(idempotencyKeyStore.claim("key", "hash", TTL, LOCK_TIMEOUT)).thenReturn(false);
+    when(idempotencyKeyStore.getRecord("key")).thenReturn(Optional.of(stored));
+
+    //when
+    Optional<IdempotencyRecord> first = idempotencyService.claim("key", "hash");
+
+    //then
+    assertThat(first).contains(stored);
+  }
+
+  @Test
+  public void testRetryOfACompletedRequestDoesNotGoToTheDatabase() {
+    //given
+    idempotencyService.complete("key", "hash", 400, "Sorry");
+
+    //when
+    Optional<IdempotencyRecord> first = idempotencyService.claim("key", "hash");
+
+    //then
+    assertThat(first).contains(IdempotencyRecord.builder()
+        .requestHash("hash")
+        .status(400)
+        .body("Sorry")
+        .build());
+    verify(idempotencyKeyStore).complete("key", 400, "Sorry");
+    verify(idempotencyKeyStore, never()).claim(anyString(), anyString(), any(), any());
+  }
+
+  @Test
+  public void testKeyPurgedInBetweenLooksInProgress() {
+    //given
+    when(idempotencyKeyStore.claim("key", "hash", TTL, LOCK_TIMEOUT)).thenReturn(false);
+    when(idempotencyKeyStore.getRecord("key")).thenReturn(Optional.empty());
+
+    //when
+    Optional<IdempotencyRecord> first = idempotencyService.claim("key", "hash");
+
+    //then
+    assertThat(first).hasValueSatisfying(record -> {
+      assertThat(record.getRequestHash()).isEqualTo("hash");
+      assertThat(record.isCompleted()).isFalse();
+    });
+  }
+}
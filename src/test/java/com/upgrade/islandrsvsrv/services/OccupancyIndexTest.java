@@ -0,0 +1,144 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static com.upgrade.islandrsvsrv.domain.DateIntervals.interval;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.repository.ReservationStore;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OccupancyIndexTest {
+
+  @Mock
+  private ReservationStore reservationStore;
+
+  private final AvailabilityChangeFeed availabilityChangeFeed = new AvailabilityChangeFeed(2);
+
+  private OccupancyIndex occupancyIndex;
+
+  @Before
+  public void setUp() {
+    occupancyIndex = new OccupancyIndex(reservationStore, availabilityChangeFeed);
+    ReflectionTestUtils.setField(occupancyIndex, "horizonDays", 30);
+  }
+
+  @Test
+  public void testReturnsOccupiedIntervalsClippedToRequestedInterval() {
+    //given
+    when(reservationStore.getReservationDates(eq(Campsite.DEFAULT_ID), any(), any()))
+        .thenReturn(List.of(
+        interval(1, 4),
+        interval(6, 8)));
+    occupancyIndex.refresh();
+
+    //when
+    Optional<List<DateInterval>> occupied = occupancyIndex.getOccupiedIntervals(interval(2, 7));
+
+    //then
+    assertThat(occupied).contains(List.of(interval(2, 4), interval(6, 7)));
+  }
+
+  @Test
+  public void testMergesAdjacentReservations() {
+    //given
+    when(reservationStore.getReservationDates(eq(Campsite.DEFAULT_ID), any(), any()))
+        .thenReturn(List.of(
+        interval(1, 3),
+        interval(3, 5)));
+    occupancyIndex.refresh();
+
+    //when
+    Optional<List<DateInterval>> occupied = occupancyIndex.getOccupiedIntervals(interval(0, 10));
+
+    //then
+    assertThat(occupied).contains(List.of(interval(1, 5)));
+  }
+
+  @Test
+  public void testReturnsNothingPastTheHorizon() {
+    //given
+    when(reservationStore.getReservationDates(eq(Campsite.DEFAULT_ID), any(), any()))
+        .thenReturn(List.of());
+    occupancyIndex.refresh();
+
+    //when
+    Optional<List<DateInterval>> occupied = occupancyIndex.getOccupiedIntervals(interval(20, 40));
+
+    //then
+    assertThat(occupied).isEmpty();
+  }
+
+  @Test
+  public void testAppliesReservationChanges() {
+    //given
+    when(reservationStore.getReservationDates(eq(Campsite.DEFAULT_ID), any(), any()))
+        .thenReturn(List.of(interval(1, 3)));
+    occupancyIndex.refresh();
+
+    //when
+    occupancyIndex.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(interval(1, 3))
+        .newDates(interval(5, 7))
+        .build());
+    occupancyIndex.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(2L)
+        .newDates(interval(10, 12))
+        .build());
+
+    //then
+    assertThat(occupancyIndex.getOccupiedIntervals(interval(0, 30)))
+        .contains(List.of(interval(5, 7), interval(10, 12)));
+  }
+
+  @Test
+  public void testAppliesTheChangesOfOtherNodes() {
+    //given
+    when(reservationStore.getReservationDates(eq(Campsite.DEFAULT_ID), any(), any()))
+        .thenReturn(List.of(interval(1, 3)));
+    occupancyIndex.start();
+
+    //when
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(interval(1, 3))
+        .newDates(interval(5, 7))
+        .build());
+
+    //then
+    assertThat(occupancyIndex.getOccupiedIntervals(interval(0, 30)))
+        .contains(List.of(interval(5, 7)));
+    occupancyIndex.stop();
+  }
+
+  @Test
+  public void testIgnoresOtherSites() {
+    //given
+    when(reservationStore.getReservationDates(eq(Campsite.DEFAULT_ID), any(), any()))
+        .thenReturn(List.of());
+    occupancyIndex.refresh();
+
+    //when
+    occupancyIndex.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .siteId(7L)
+        .newDates(interval(5, 7))
+        .build());
+
+    //then
+    assertThat(occupancyIndex.getOccupiedIntervals(interval(0, 30))).contains(List.of());
+  }
+}
@@ -0,0 +1,205 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static com.upgrade.islandrsvsrv.domain.DateIntervals.interval;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.repository.ReservationStore;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReservationIntervalIndexTest {
+
+  @Mock
+  private ReservationStore reservationStore;
+
+  private AvailabilityChangeFeed availabilityChangeFeed;
+
+  private ReservationIntervalIndex reservationIntervalIndex;
+
+  @Before
+  public void setUp() {
+    availabilityChangeFeed = new AvailabilityChangeFeed(16);
+    reservationIntervalIndex = new ReservationIntervalIndex(reservationStore,
+        availabilityChangeFeed);
+    ReflectionTestUtils.setField(reservationIntervalIndex, "horizonDays", 30);
+    when(reservationStore.getReservations(any(), any())).thenReturn(List.of(
+        reservation(1L, interval(2, 4)),
+        reservation(2L, interval(10, 20))));
+    reservationIntervalIndex.start();
+  }
+
+  @After
+  public void tearDown() {
+    reservationIntervalIndex.stop();
+  }
+
+  @Test
+  public void testOverlappingDatesAreBooked() {
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(3, 5))).isTrue();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(1, 3))).isTrue();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(18, 19))).isTrue();
+  }
+
+  @Test
+  public void testAdjacentDatesAreNotBooked() {
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(4, 6))).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(0, 2))).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(20, 22))).isFalse();
+  }
+
+  @Test
+  public void testReservationDoesNotConflictWithItself() {
+    assertThat(reservationIntervalIndex.isBookedForMove(1L, interval(3, 5))).isFalse();
+  }
+
+  @Test
+  public void testOnlyReservationsOfTheSameSiteConflict() {
+    //given
+    reservationIntervalIndex.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(3L)
+        .siteId(7L)
+        .newDates(interval(6, 8))
+        .build());
+
+    //when / then
+    assertThat(reservationIntervalIndex.isBooked(7L, interval(3, 5))).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(7L, interval(7, 9))).isTrue();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(7, 9))).isFalse();
+    assertThat(reservationIntervalIndex.isBookedForMove(1L, interval(6, 8))).isFalse();
+    assertThat(reservationIntervalIndex.isBookedForMove(3L, interval(3, 5))).isFalse();
+  }
+
+  @Test
+  public void testMoveOfUnknownReservationIsLeftToTheDatabase() {
+    assertThat(reservationIntervalIndex.isBookedForMove(9L, interval(3, 5))).isFalse();
+  }
+
+  @Test
+  public void testDatesPastHorizonAreLeftToTheDatabase() {
+    //given
+    reservationIntervalIndex.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(3L)
+        .newDates(interval(28, 29))
+        .build());
+
+    //when / then
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(28, 29))).isTrue();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(28, 31))).isFalse();
+  }
+
+  @Test
+  public void testWritesOfThisNodeAreApplied() {
+    //when
+    reservationIntervalIndex.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(interval(2, 4))
+        .newDates(interval(6, 7))
+        .build());
+
+    //then
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(2, 4))).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(6, 7))).isTrue();
+  }
+
+  @Test
+  public void testWritesOfOtherNodesComeThroughTheFeed() {
+    //when
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .reservationId(2L)
+        .previousDates(interval(10, 20))
+        .build());
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .reservationId(4L)
+        .newDates(interval(24, 25))
+        .build());
+
+    //then
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(12, 13))).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(23, 25))).isTrue();
+  }
+
+  @Test
+  public void testLateReplayOfAnInsertDoesNotBringBackTheDeletedReservation() {
+    //given
+    ReservationChangedEvent insert = ReservationChangedEvent.builder()
+        .reservationId(3L)
+        .newDates(interval(6, 8))
+        .build();
+    ReservationChangedEvent delete = ReservationChangedEvent.builder()
+        .reservationId(3L)
+        .previousDates(interval(6, 8))
+        .build();
+    reservationIntervalIndex.onReservationChanged(insert);
+    reservationIntervalIndex.onReservationChanged(delete);
+
+    //when
+    availabilityChangeFeed.publish(insert);
+    boolean bookedAfterReplay = reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID,
+        interval(6, 8));
+    availabilityChangeFeed.publish(delete);
+
+    //then
+    assertThat(bookedAfterReplay).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(6, 8))).isFalse();
+  }
+
+  @Test
+  public void testFeedOnlyAppliesWhatComesAfterTheLastWriteOfThisNode() {
+    //given
+    ReservationChangedEvent move = ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(interval(2, 4))
+        .newDates(interval(6, 7))
+        .build();
+    reservationIntervalIndex.onReservationChanged(move);
+
+    //when
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .newDates(interval(2, 4))
+        .build());
+    boolean oldDatesBooked = reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID,
+        interval(2, 4));
+    availabilityChangeFeed.publish(move);
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(interval(6, 7))
+        .newDates(interval(8, 9))
+        .build());
+
+    //then
+    assertThat(oldDatesBooked).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(6, 7))).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(8, 9))).isTrue();
+  }
+
+  @Test
+  public void testChangeOfUnknownReservationForgetsItsPreviousDates() {
+    //when
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .previousDates(interval(3, 4))
+        .newDates(interval(25, 26))
+        .build());
+
+    //then
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(2, 3))).isFalse();
+    assertThat(reservationIntervalIndex.isBooked(Campsite.DEFAULT_ID, interval(25, 26))).isFalse();
+  }
+
+  private static Reservation reservation(Long id, DateInterval dates) {
+    return Reservation.builder().id(id).siteId(Campsite.DEFAULT_ID).dateInterval(dates).build();
+  }
+}
@@ -4,35 +4,76 @@ import static java.time.LocalDate.now;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.util.Collections.emptyList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.domain.api.ReservationModification;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperation.Type;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult;
+import com.upgrade.islandrsvsrv.domain.api.ReservationOperationResult.Status;
 import com.upgrade.islandrsvsrv.domain.api.ReservationRequest;
-import com.upgrade.islandrsvsrv.repository.ReservationDAO;
+import com.upgrade.islandrsvsrv.repository.ReactiveReservationDAO;
+import com.upgrade.islandrsvsrv.repository.ReadRouting;
+import com.upgrade.islandrsvsrv.repository.ReservationStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.junit.After;
 import org.junit.Before;
-import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
 import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
+import reactor.util.context.Context;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ReservationServiceTest {
 
-  @Rule
-  public ExpectedException expectedEx = ExpectedException.none();
   @Mock
-  private ReservationDAO reservationDAO;
+  private ReservationStore reservationStore;
+  @Mock
+  private ApplicationEventPublisher eventPublisher;
   private ReservationService reservationService;
-  private AvailabilityService availabilityService = new AvailabilityService();
+  private AvailabilityService availabilityService = new AvailabilityService(new SimpleMeterRegistry());
+  private BlockingScheduler blockingScheduler = new BlockingScheduler(2, 10, Duration.ofSeconds(5),
+      false, new MockEnvironment(), new SimpleMeterRegistry());
+  private ReservationCache reservationCache = new ReservationCache(100, Duration.ofMinutes(1),
+      Duration.ofSeconds(5), new AvailabilityChangeFeed(16));
 
   @Before
   public void setUp() throws Exception {
-    reservationService = new ReservationService(reservationDAO, availabilityService);
+    reservationService = new ReservationService(reservationStore, availabilityService,
+        Optional.empty(), Optional.empty(),
+        Optional.empty(), Optional.empty(), eventPublisher, blockingScheduler,
+        reservationCache);
+  }
+
+  @After
+  public void tearDown() {
+    blockingScheduler.destroy();
   }
 
   @Test
@@ -40,10 +81,12 @@ public class ReservationServiceTest {
     //given
     LocalDate start = now();
     LocalDate end = start.plus(10, DAYS);
-    when(reservationDAO.getReservationDates(start, end)).thenReturn(emptyList());
+    when(reservationStore.getReservationDates(Campsite.DEFAULT_ID, start, end))
+        .thenReturn(emptyList());
 
     //when
-    Flux<LocalDate> availabilities = reservationService.getAvailabilities(start, end);
+    Flux<LocalDate> availabilities = reservationService
+        .getAvailabilities(Campsite.DEFAULT_ID, start, end);
 
     //then
     StepVerifier.create(availabilities)
@@ -61,6 +104,143 @@ public class ReservationServiceTest {
         .verify();
   }
 
+  @Test
+  public void getAvailabilitiesReadsFromReactiveDAOWhenPresent() {
+    //given
+    LocalDate start = now();
+    LocalDate end = start.plus(3, DAYS);
+    ReactiveReservationDAO reactiveReservationDAO = mock(ReactiveReservationDAO.class);
+    when(reactiveReservationDAO.getReservationDates(Campsite.DEFAULT_ID, start, end))
+        .thenReturn(Flux.just(new DateInterval(start.plus(1, DAYS), start.plus(2, DAYS))));
+    reservationService = new ReservationService(reservationStore, availabilityService,
+        Optional.of(reactiveReservationDAO), Optional.empty(),
+        Optional.empty(), Optional.empty(), eventPublisher, blockingScheduler,
+        reservationCache);
+
+    //when
+    Flux<LocalDate> availabilities = reservationService
+        .getAvailabilities(Campsite.DEFAULT_ID, start, end);
+
+    //then
+    StepVerifier.create(availabilities)
+        .expectNext(start)
+        .expectNext(start.plus(2, DAYS))
+        .expectComplete()
+        .verify();
+    verify(reservationStore, never()).getReservationDates(anyLong(), any(), any());
+  }
+
+  @Test
+  public void getAvailabilitiesGetsTheFreeRangesFromTheStoreWhenEnabled() {
+    //given
+    LocalDate start = now();
+    LocalDate end = start.plus(5, DAYS);
+    ReflectionTestUtils.setField(reservationService, "storeFreeRanges", true);
+    when(reservationStore.getAvailableIntervals(Campsite.DEFAULT_ID, start, end))
+        .thenReturn(List.of(new DateInterval(start, start.plus(2, DAYS)),
+            new DateInterval(start.plus(4, DAYS), end)));
+
+    //when
+    Flux<LocalDate> availabilities = reservationService
+        .getAvailabilities(Campsite.DEFAULT_ID, start, end);
+    Flux<DateInterval> availabilityIntervals = reservationService
+        .getAvailabilityIntervals(Campsite.DEFAULT_ID, start, end);
+
+    //then
+    StepVerifier.create(availabilities)
+        .expectNext(start, start.plus(1, DAYS), start.plus(4, DAYS))
+        .expectComplete()
+        .verify();
+    StepVerifier.create(availabilityIntervals)
+        .expectNext(new DateInterval(start, start.plus(2, DAYS)),
+            new DateInterval(start.plus(4, DAYS), end))
+        .expectComplete()
+        .verify();
+    verify(reservationStore, never()).getReservationDates(anyLong(), any(), any());
+  }
+
+  @Test
+  public void getAvailabilitiesReadsFromOccupancyIndexWhenItCoversTheInterval() {
+    //given
+    LocalDate start = now();
+    LocalDate end = start.plus(3, DAYS);
+    OccupancyIndex occupancyIndex = mock(OccupancyIndex.class);
+    when(occupancyIndex.getOccupiedIntervals(new DateInterval(start, end)))
+        .thenReturn(Optional.of(List.of(new DateInterval(start, start.plus(2, DAYS)))));
+    reservationService = new ReservationService(reservationStore, availabilityService,
+        Optional.empty(), Optional.of(occupancyIndex),
+        Optional.empty(), Optional.empty(), eventPublisher, blockingScheduler,
+        reservationCache);
+
+    //when
+    Flux<LocalDate> availabilities = reservationService
+        .getAvailabilities(Campsite.DEFAULT_ID, start, end);
+
+    //then
+    StepVerifier.create(availabilities)
+        .expectNext(start.plus(2, DAYS))
+        .expectComplete()
+        .verify();
+    verify(reservationStore, never()).getReservationDates(anyLong(), any(), any());
+  }
+
+  @Test
+  public void getAvailabilitiesWithAConsistencyTokenReadsAfterItsWrite() {
+    //given
+    LocalDate start = now();
+    LocalDate end = start.plus(3, DAYS);
+    OccupancyIndex occupancyIndex = mock(OccupancyIndex.class);
+    List<Long> minimumLsns = new ArrayList<>();
+    when(reservationStore.getReservationDates(Campsite.DEFAULT_ID, start, end))
+        .thenAnswer(invocation -> {
+          minimumLsns.add(ReadRouting.minimumLsn());
+          return List.of(new DateInterval(start, start.plus(2, DAYS)));
+        });
+    reservationService = new ReservationService(reservationStore, availabilityService,
+        Optional.empty(), Optional.of(occupancyIndex),
+        Optional.empty(), Optional.empty(), eventPublisher, blockingScheduler,
+        reservationCache);
+
+    //when
+    Flux<LocalDate> availabilities = reservationService
+        .getAvailabilities(Campsite.DEFAULT_ID, start, end)
+        .subscriberContext(Context.of(ReadRouting.CONSISTENCY_TOKEN, "16/B374D848"));
+
+    //then
+    StepVerifier.create(availabilities)
+        .expectNext(start.plus(2, DAYS))
+        .expectComplete()
+        .verify();
+    assertThat(minimumLsns).containsExactly(ReadRouting.parseLsn("16/B374D848"));
+    verify(occupancyIndex, never()).getOccupiedIntervals(any());
+  }
+
+  @Test
+  public void getAvailabilitiesFallsBackToDAOWhenOutsideOccupancyIndex() {
+    //given
+    LocalDate start = now();
+    LocalDate end = start.plus(2, DAYS);
+    OccupancyIndex occupancyIndex = mock(OccupancyIndex.class);
+    when(occupancyIndex.getOccupiedIntervals(any())).thenReturn(Optional.empty());
+    when(reservationStore.getReservationDates(Campsite.DEFAULT_ID, start, end))
+        .thenReturn(emptyList());
+    reservationService = new ReservationService(reservationStore, availabilityService,
+        Optional.empty(), Optional.of(occupancyIndex),
+        Optional.empty(), Optional.empty(), eventPublisher, blockingScheduler,
+        reservationCache);
+
+    //when
+    Flux<LocalDate> availabilities = reservationService
+        .getAvailabilities(Campsite.DEFAULT_ID, start, end);
+
+    //then
+    StepVerifier.create(availabilities)
+        .expectNext(start)
+        .expectNext(start.plus(1, DAYS))
+        .expectComplete()
+        .verify();
+  }
+
   @Test
   public void testInsertReservation() {
 
@@ -73,18 +253,282 @@ public class ReservationServiceTest {
         .start(start)
         .end(end)
         .build();
-    when(reservationDAO.insertReservation(reservation)).thenReturn(1L);
+    when(reservationStore.insertReservationIfFree(reservation))
+        .thenReturn(created(1L, Campsite.DEFAULT_ID));
 
     //when
-    Long reservationId = reservationService.insertReservation(reservation);
+    ReservationOperationResult result = reservationService.insertReservation(reservation);
 
     //then
-    assertThat(reservationId).isEqualTo(1L);
+    assertThat(result.getStatus()).isEqualTo(Status.CREATED);
+    assertThat(result.getId()).isEqualTo(1L);
+    verify(eventPublisher).publishEvent(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .newDates(new DateInterval(start, end))
+        .build());
+  }
 
+  @Test
+  public void testInsertReservationOnASitePublishesItsSite() {
+    //given
+    LocalDate start = now();
+    LocalDate end = now().plus(2, DAYS);
+    ReservationRequest reservation = ReservationRequest.builder()
+        .siteId(7L)
+        .userEmail("email")
+        .userName("userName")
+        .start(start)
+        .end(end)
+        .build();
+    when(reservationStore.insertReservationIfFree(reservation)).thenReturn(created(1L, 7L));
+
+    //when
+    reservationService.insertReservation(reservation);
+
+    //then
+    verify(eventPublisher).publishEvent(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .siteId(7L)
+        .newDates(new DateInterval(start, end))
+        .build());
   }
 
   @Test
-  public void testInsertReservationBubblesUpException() {
+  public void getAvailabilitiesOfAnotherSiteDoesNotUseTheOccupancyIndex() {
+    //given
+    LocalDate start = now();
+    LocalDate end = start.plus(2, DAYS);
+    OccupancyIndex occupancyIndex = mock(OccupancyIndex.class);
+    when(reservationStore.getReservationDates(7L, start, end))
+        .thenReturn(List.of(new DateInterval(start, start.plus(1, DAYS))));
+    reservationService = new ReservationService(reservationStore, availabilityService,
+        Optional.empty(), Optional.of(occupancyIndex),
+        Optional.empty(), Optional.empty(), eventPublisher, blockingScheduler,
+        reservationCache);
+
+    //when
+    Flux<LocalDate> availabilities = reservationService.getAvailabilities(7L, start, end);
+
+    //then
+    StepVerifier.create(availabilities)
+        .expectNext(start.plus(1, DAYS))
+        .expectComplete()
+        .verify();
+    verify(occupancyIndex, never()).getOccupiedIntervals(any());
+  }
+
+  @Test
+  public void testUpdateReservationPublishesPreviousAndNewDates() {
+    //given
+    LocalDate start = now();
+    DateInterval previousDates = new DateInterval(start, start.plus(2, DAYS));
+    ReservationModification modification = ReservationModification.builder()
+        .start(start.plus(5, DAYS))
+        .end(start.plus(7, DAYS))
+        .build();
+    when(reservationStore.updateReservationIfFree(1L, modification))
+        .thenReturn(ReservationOperationResult.builder()
+            .status(Status.MODIFIED)
+            .id(1L)
+            .siteId(Campsite.DEFAULT_ID)
+            .previousDates(previousDates)
+            .build());
+
+    //when
+    reservationService.updateReservation(1L, modification);
+
+    //then
+    verify(eventPublisher).publishEvent(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(previousDates)
+        .newDates(new DateInterval(start.plus(5, DAYS), start.plus(7, DAYS)))
+        .build());
+  }
+
+  @Test
+  public void testDeleteUnknownReservationPublishesNothing() {
+    //given
+    when(reservationStore.deleteReservation(1L)).thenReturn(Optional.empty());
+
+    //when
+    reservationService.deleteReservation(1L);
+
+    //then
+    verify(eventPublisher, never()).publishEvent(any(Object.class));
+  }
+
+  @Test
+  public void testGetReservationIsReadOnThePrimaryOnceThenServedFromTheCache() {
+    //given
+    Reservation reservation = Reservation.builder()
+        .id(1L)
+        .siteId(Campsite.DEFAULT_ID)
+        .dateInterval(new DateInterval(now().plus(1, DAYS), now().plus(3, DAYS)))
+        .build();
+    List<Long> minimumLsns = new ArrayList<>();
+    when(reservationStore.getReservation(1L)).thenAnswer(invocation -> {
+      minimumLsns.add(ReadRouting.minimumLsn());
+      return reservation;
+    });
+
+    //when
+    Optional<Reservation> first = reservationService.getReservation(1L).block();
+    Optional<Reservation> second = reservationService.getReservation(1L).block();
+
+    //then
+    assertThat(first).contains(reservation);
+    assertThat(second).contains(reservation);
+    assertThat(minimumLsns).containsExactly(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testGetReservationsOfUserStreamsWhatTheStoreReads() {
+    //given
+    LocalDate start = now().plus(1, DAYS);
+    Reservation first = Reservation.builder().id(1L).userEmail("email").build();
+    Reservation second = Reservation.builder().id(2L).userEmail("email").build();
+    doAnswer(invocation -> {
+      Consumer<Reservation> action = invocation.getArgument(4);
+      action.accept(first);
+      action.accept(second);
+      return null;
+    }).when(reservationStore).forEachReservationOfUser(eq("email"), eq(start), eq(7L), eq(2),
+        any());
+
+    //when
+    Flux<Reservation> reservations = reservationService
+        .getReservationsOfUser("email", start, 7L, 2);
+
+    //then
+    StepVerifier.create(reservations)
+        .expectNext(first, second)
+        .expectComplete()
+        .verify();
+  }
+
+  @Test
+  public void testMissingReservationIsCachedUntilItIsBooked() {
+    //given
+    Reservation reservation = Reservation.builder().id(2L).build();
+    when(reservationStore.getReservation(2L))
+        .thenThrow(new EmptyResultDataAccessException(1))
+        .thenReturn(reservation);
+    Optional<Reservation> missing = reservationService.getReservation(2L).block();
+    Optional<Reservation> stillMissing = reservationService.getReservation(2L).block();
+
+    //when
+    reservationCache.onReservationChanged(ReservationChangedEvent.builder()
+        .reservationId(2L)
+        .newDates(new DateInterval(now().plus(1, DAYS), now().plus(3, DAYS)))
+        .build());
+    Optional<Reservation> booked = reservationService.getReservation(2L).block();
+
+    //then
+    assertThat(missing).isEmpty();
+    assertThat(stillMissing).isEmpty();
+    assertThat(booked).contains(reservation);
+    verify(reservationStore, times(2)).getReservation(2L);
+  }
+
+  @Test
+  public void testAppliedOperationsArePublished() {
+    //given
+    LocalDate start = now().plus(1, DAYS);
+    DateInterval previousDates = new DateInterval(start, start.plus(2, DAYS));
+    List<ReservationOperation> operations = List.of(
+        ReservationOperation.builder().type(Type.CREATE).start(start).end(start.plus(1, DAYS))
+            .build(),
+        ReservationOperation.builder().type(Type.CREATE).start(start).end(start.plus(1, DAYS))
+            .build(),
+        ReservationOperation.builder().type(Type.CANCEL).id(3L).build());
+    when(reservationStore.applyOperations(operations)).thenReturn(List.of(
+        ReservationOperationResult.builder().status(Status.CREATED).id(5L).build(),
+        ReservationOperationResult.builder().status(Status.CONFLICT).build(),
+        ReservationOperationResult.builder().status(Status.CANCELLED).id(3L)
+            .previousDates(previousDates).build()));
+
+    //when
+    List<ReservationOperationResult> results = reservationService.applyOperations(operations);
+
+    //then
+    assertThat(results).extracting(ReservationOperationResult::getStatus)
+        .containsExactly(Status.CREATED, Status.CONFLICT, Status.CANCELLED);
+    verify(eventPublisher).publishEvent(ReservationChangedEvent.builder()
+        .reservationId(5L)
+        .newDates(new DateInterval(start, start.plus(1, DAYS)))
+        .build());
+    verify(eventPublisher).publishEvent(ReservationChangedEvent.builder()
+        .reservationId(3L)
+        .previousDates(previousDates)
+        .build());
+    verify(eventPublisher, times(2)).publishEvent(any(Object.class));
+  }
+
+  @Test
+  public void testOperationsAreAppliedOneAtATimeWhenBatchFails() {
+    //given
+    LocalDate start = now().plus(1, DAYS);
+    ReservationOperation create = ReservationOperation.builder()
+        .type(Type.CREATE).userName("userName").userEmail("email")
+        .start(start).end(start.plus(1, DAYS))
+        .build();
+    ReservationOperation modify = ReservationOperation.builder()
+        .type(Type.MODIFY).id(2L)
+        .start(start.plus(2, DAYS)).end(start.plus(3, DAYS))
+        .build();
+    when(reservationStore.applyOperations(List.of(create, modify)))
+        .thenThrow(new DataIntegrityViolationException("concurrent write"));
+    when(reservationStore.insertReservation(create.toReservationRequest()))
+        .thenThrow(new DataIntegrityViolationException("overlap"));
+    when(reservationStore.updateReservation(2L, modify.toReservationModification()))
+        .thenReturn(Optional.of(Reservation.builder()
+            .id(2L)
+            .siteId(Campsite.DEFAULT_ID)
+            .dateInterval(new DateInterval(start, start.plus(1, DAYS)))
+            .build()));
+
+    //when
+    List<ReservationOperationResult> results = reservationService
+        .applyOperations(List.of(create, modify));
+
+    //then
+    assertThat(results).extracting(ReservationOperationResult::getStatus)
+        .containsExactly(Status.CONFLICT, Status.MODIFIED);
+    verify(eventPublisher).publishEvent(ReservationChangedEvent.builder()
+        .reservationId(2L)
+        .previousDates(new DateInterval(start, start.plus(1, DAYS)))
+        .newDates(new DateInterval(start.plus(2, DAYS), start.plus(3, DAYS)))
+        .build());
+  }
+
+  @Test
+  public void testBookedDatesAreRejectedWithoutGoingToTheDatabase() {
+    //given
+    LocalDate start = now().plus(1, DAYS);
+    ReservationIntervalIndex reservationIntervalIndex = mock(ReservationIntervalIndex.class);
+    when(reservationIntervalIndex
+        .isBookedForMove(4L, new DateInterval(start, start.plus(2, DAYS))))
+        .thenReturn(true);
+    reservationService = new ReservationService(reservationStore, availabilityService,
+        Optional.empty(), Optional.empty(),
+        Optional.empty(), Optional.of(reservationIntervalIndex), eventPublisher, blockingScheduler,
+        reservationCache);
+
+    //when
+    ReservationOperationResult result = reservationService.updateReservation(4L,
+        ReservationModification.builder()
+            .start(start)
+            .end(start.plus(2, DAYS))
+            .build());
+
+    //then
+    assertThat(result.getStatus()).isEqualTo(Status.CONFLICT);
+    verify(reservationStore, never()).updateReservationIfFree(anyLong(), any());
+    verify(eventPublisher, never()).publishEvent(any());
+  }
+
+  @Test
+  public void testInsertReservationLosingARaceToTheDatabaseIsAConflict() {
 
     //given
     LocalDate start = now();
@@ -95,14 +539,42 @@ public class ReservationServiceTest {
         .start(start)
         .end(end)
         .build();
-    when(reservationDAO.insertReservation(reservation))
+    when(reservationStore.insertReservationIfFree(reservation))
         .thenThrow(new DataIntegrityViolationException("error"));
 
-    expectedEx.expect(DataIntegrityViolationException.class);
-    expectedEx.expectMessage("error");
+    //when
+    ReservationOperationResult result = reservationService.insertReservation(reservation);
+
+    //then
+    assertThat(result.getStatus()).isEqualTo(Status.CONFLICT);
+    assertThat(result.getMessage())
+        .isEqualTo("The island is already booked somewhere between " + start + " and " + end + ".");
+    verify(eventPublisher, never()).publishEvent(any());
+  }
+
+  @Test
+  public void testUpdateOfUnknownReservationPublishesNothing() {
+    //given
+    ReservationModification modification = ReservationModification.builder()
+        .start(now())
+        .end(now().plus(1, DAYS))
+        .build();
+    when(reservationStore.updateReservationIfFree(9L, modification))
+        .thenReturn(ReservationOperationResult.builder().status(Status.NOT_FOUND).id(9L).build());
 
     //when
-    reservationService.insertReservation(reservation);
+    ReservationOperationResult result = reservationService.updateReservation(9L, modification);
 
+    //then
+    assertThat(result.getStatus()).isEqualTo(Status.NOT_FOUND);
+    verify(eventPublisher, never()).publishEvent(any());
+  }
+
+  private static ReservationOperationResult created(long reservationId, long siteId) {
+    return ReservationOperationResult.builder()
+        .status(Status.CREATED)
+        .id(reservationId)
+        .siteId(siteId)
+        .build();
   }
 }
@@ -0,0 +1,108 @@
+package com.upgrade.islandrsvsrv.services;
+
+import static com.upgrade.islandrsvsrv.domain.DateIntervals.interval;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import com.upgrade.islandrsvsrv.domain.Campsite;
+import com.upgrade.islandrsvsrv.domain.DateInterval;
+import com.upgrade.islandrsvsrv.domain.Reservation;
+import com.upgrade.islandrsvsrv.domain.ReservationChangedEvent;
+import com.upgrade.islandrsvsrv.repository.CampsiteStore;
+import com.upgrade.islandrsvsrv.repository.ReservationStore;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SiteOccupancyIndexTest {
+
+  @Mock
+  private ReservationStore reservationStore;
+
+  @Mock
+  private CampsiteStore campsiteStore;
+
+  private AvailabilityChangeFeed availabilityChangeFeed;
+
+  private SiteOccupancyIndex siteOccupancyIndex;
+
+  @Before
+  public void setUp() {
+    availabilityChangeFeed = new AvailabilityChangeFeed(16);
+    siteOccupancyIndex = new SiteOccupancyIndex(reservationStore, campsiteStore,
+        availabilityChangeFeed, 200);
+    when(campsiteStore.getCampsites()).thenReturn(List.of(campsite(3L), campsite(1L),
+        campsite(2L)));
+    when(reservationStore.getReservations(any(), any())).thenReturn(List.of(
+        reservation(1L, 1L, interval(2, 4)),
+        reservation(2L, 2L, interval(60, 70)),
+        reservation(3L, 3L, interval(130, 131))));
+    siteOccupancyIndex.start();
+  }
+
+  @After
+  public void tearDown() {
+    siteOccupancyIndex.stop();
+  }
+
+  @Test
+  public void testReturnsSitesFreeForTheWholeInterval() {
+    assertThat(siteOccupancyIndex.getFreeSites(interval(0, 10))).contains(List.of(2L, 3L));
+    assertThat(siteOccupancyIndex.getFreeSites(interval(4, 60))).contains(List.of(1L, 2L, 3L));
+    assertThat(siteOccupancyIndex.getFreeSites(interval(69, 71))).contains(List.of(1L, 3L));
+    assertThat(siteOccupancyIndex.getFreeSites(interval(0, 200))).contains(List.of());
+  }
+
+  @Test
+  public void testReturnsNothingPastTheHorizon() {
+    assertThat(siteOccupancyIndex.getFreeSites(interval(190, 210))).isEmpty();
+  }
+
+  @Test
+  public void testChangesComeThroughTheFeed() {
+    //when
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .reservationId(1L)
+        .previousDates(interval(2, 4))
+        .newDates(interval(63, 65))
+        .build());
+    availabilityChangeFeed.publish(ReservationChangedEvent.builder()
+        .reservationId(4L)
+        .siteId(5L)
+        .newDates(interval(8, 9))
+        .build());
+
+    //then
+    assertThat(siteOccupancyIndex.getFreeSites(interval(0, 10))).contains(List.of(1L, 2L, 3L));
+    assertThat(siteOccupancyIndex.getFreeSites(interval(5, 10))).contains(List.of(1L, 2L, 3L));
+    assertThat(siteOccupancyIndex.getFreeSites(interval(8, 9))).contains(List.of(1L, 2L, 3L));
+    assertThat(siteOccupancyIndex.getFreeSites(interval(64, 65))).contains(List.of(3L, 5L));
+  }
+
+  @Test
+  public void testChecksTheBitsAcrossWords() {
+    long[] days = {0, 1L << 63, 0, 1L};
+
+    assertThat(SiteOccupancyIndex.isFree(days, 0, 127)).isTrue();
+    assertThat(SiteOccupancyIndex.isFree(days, 0, 128)).isFalse();
+    assertThat(SiteOccupancyIndex.isFree(days, 128, 192)).isTrue();
+    assertThat(SiteOccupancyIndex.isFree(days, 127, 128)).isFalse();
+    assertThat(SiteOccupancyIndex.isFree(days, 128, 256)).isFalse();
+    assertThat(SiteOccupancyIndex.isFree(days, 193, 256)).isTrue();
+    assertThat(SiteOccupancyIndex.isFree(days, 5, 5)).isTrue();
+  }
+
+  private static Campsite campsite(Long id) {
+    return Campsite.builder().id(id).name("site " + id).build();
+  }
+
+  private static Reservation reservation(Long id, Long siteId, DateInterval dates) {
+    return Reservation.builder().id(id).siteId(siteId).dateInterval(dates).build();
+  }
+}